@@ -0,0 +1,23 @@
+@echo off
+rem Build maptool.jar and a static AppCDS archive for fast HttpServerMain startup
+set SRC=src
+set OUT=out
+if exist %OUT% rmdir /s /q %OUT%
+mkdir %OUT%
+
+javac -encoding UTF-8 -d %OUT% %SRC%\com\david\tool\*.java
+if errorlevel 1 (
+  echo Compilation failed.
+  exit /b 1
+)
+jar cf maptool.jar -C %OUT% com
+
+rem 1) training run: records every class loaded while serving representative requests
+java -XX:DumpLoadedClassList=maptool.classlist -cp maptool.jar com.david.tool.HttpServerMain --train
+if errorlevel 1 exit /b 1
+rem 2) dump the archive (classpath must be identical at runtime)
+java -Xshare:dump -XX:SharedClassListFile=maptool.classlist -XX:SharedArchiveFile=maptool.jsa -cp maptool.jar
+if errorlevel 1 exit /b 1
+
+echo Run with:
+echo   java -XX:SharedArchiveFile=maptool.jsa -XX:TieredStopAtLevel=1 -cp maptool.jar com.david.tool.HttpServerMain
@@ -0,0 +1,16 @@
+#!/bin/sh
+# Build maptool.jar and a static AppCDS archive for fast HttpServerMain startup
+set -e
+SRC=src
+OUT=out
+rm -rf "$OUT" && mkdir -p "$OUT"
+javac -encoding UTF-8 -d "$OUT" "$SRC"/com/david/tool/*.java
+jar cf maptool.jar -C "$OUT" com
+
+# 1) training run: records every class loaded while serving representative requests
+java -XX:DumpLoadedClassList=maptool.classlist -cp maptool.jar com.david.tool.HttpServerMain --train
+# 2) dump the archive (classpath must be identical at runtime)
+java -Xshare:dump -XX:SharedClassListFile=maptool.classlist -XX:SharedArchiveFile=maptool.jsa -cp maptool.jar
+
+echo "Run with:"
+echo "  java -XX:SharedArchiveFile=maptool.jsa -XX:TieredStopAtLevel=1 -cp maptool.jar com.david.tool.HttpServerMain"
@@ -0,0 +1,393 @@
+package com.david.game;
+
+import com.david.game.NeonConquest.Cell;
+import com.david.game.NeonConquest.Owner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * 电脑对手：在模拟副本上推演候选出兵，选出推演结束时局面评估最好的一手。
+ * <p>
+ * 候选手为己方兵力最多的 {@value #MAX_SOURCES} 个兵营，各向最近的 {@value #MAX_TARGETS} 个非己方兵营（进攻）
+ * 与最近的 {@value #MAX_REINFORCE} 个更弱的己方兵营（增援）拖拽出兵、向最近的 {@value #MAX_ALL_IN} 个非己方兵营全军出击，外加“不动”。每个候选在副本上执行后推进 {@link #HORIZON_TICKS} 步，
+ * 行程时间、在途箭头、发送器与再生都由 {@link Simulation} 本身结算，
+ * 再按兵营数、驻军、在途兵力与实力占比评估。
+ * <p>
+ * 难度即搜索深度：深度 d 为己方与对手交替的 d 手（间隔 {@link #PLY_TICKS} 步），对手一手取对己方最不利的应对；
+ * 每手推演全部候选，只对最好的 {@value #BEAM} 个继续向下搜索。逐层加深，每次决策有严格的时间预算
+ * （推演中每 {@value #BUDGET_CHECK_TICKS} 步检查一次，超出量不超过这么多步），
+ * 超时则放弃未完成的一层，返回已完成的最深一层的结果。预算不触发时结果只取决于局面，
+ * 无界面自我对战（{@link #play}）因此可复现。
+ * <p>
+ * 界面中用 {@link #planAsync} 在后台线程规划（调用线程只拍一次快照），取回结果后在 EDT 上 {@link #apply}；
+ * 同一个 AiPlayer 同时只应有一次规划在进行。
+ */
+public final class AiPlayer {
+    /** 难度：搜索深度 */
+    public enum Difficulty {
+        EASY(1), NORMAL(2), HARD(3);
+
+        public final int depth;
+
+        Difficulty(int depth) {
+            this.depth = depth;
+        }
+    }
+
+    /** 决策间隔：每秒一手 */
+    public static final int DECISION_TICKS = Simulation.TICKS_PER_SECOND;
+    /** 搜索中相邻两手的间隔 */
+    static final int PLY_TICKS = 2 * Simulation.TICKS_PER_SECOND;
+    /** 每条线路最后一手之后的推演时长 */
+    static final int HORIZON_TICKS = 10 * Simulation.TICKS_PER_SECOND;
+    static final int MAX_SOURCES = 4;
+    static final int MAX_TARGETS = 6;
+    static final int MAX_REINFORCE = 2;
+    static final int MAX_ALL_IN = 2;
+    static final int BEAM = 3;
+    /** 兵力少于此值的兵营不出兵 */
+    static final int MIN_SEND_FORCE = 4;
+    /** 每个兵营在评估中折合的兵力（占有即每秒再生） */
+    static final int CELL_VALUE = 20;
+    /** 实力占比在评估中的权重 */
+    static final double SHARE_WEIGHT = 200;
+    private static final double WIN = 1e9;
+    private static final Expired EXPIRED = new Expired();
+    /** 推演中检查预算的间隔（步） */
+    static final int BUDGET_CHECK_TICKS = 5;
+    /** 默认每次决策的时间预算 */
+    public static final long DEFAULT_BUDGET_NANOS = 30_000_000L;
+
+    public final Owner side;
+    public final int depth;
+    public final long budgetNanos;
+
+    // 推演用副本与近邻查询缓冲，只在规划线程上使用
+    private Simulation source;
+    private Simulation scratch;
+    private final List<Cell> window = new ArrayList<>();
+    private final List<Cell> found = new ArrayList<>();
+    private ExecutorService executor;
+    private boolean shutdown;
+    private Line partial; // 第 1 层未完成时已推演候选中最好的
+    private long searchStart; // 本次决策的开始时刻（System.nanoTime）
+
+    // 统计
+    private long decisions;
+    private long rollouts;
+    private long totalNanos;
+    private long maxNanos;
+    private int lastDepth;
+
+    /**
+     * 一手：从 source 向 target 出兵（兵营 id），allIn 为 true 时全军出击，否则拖拽派出一半；
+     * score 为所在线路的评估，depth 为完成的搜索深度
+     */
+    public static final class Move {
+        public final int source;
+        public final int target;
+        public final boolean allIn;
+        public final double score;
+        public final int depth;
+
+        Move(int source, int target, boolean allIn, double score, int depth) {
+            this.source = source;
+            this.target = target;
+            this.allIn = allIn;
+            this.score = score;
+            this.depth = depth;
+        }
+    }
+
+    /** 一手候选：来源与目标 id、执行并推进 PLY_TICKS 后的状态（继续展开用，已分出胜负为 null）与线路值 */
+    private static final class Line {
+        final int source;
+        final int target;
+        final boolean allIn;
+        byte[] state;
+        double score;
+
+        Line(int[] move) {
+            this.source = move[0];
+            this.target = move[1];
+            this.allIn = move[2] != 0;
+        }
+    }
+
+    public AiPlayer(Owner side, Difficulty difficulty) {
+        this(side, difficulty.depth, DEFAULT_BUDGET_NANOS);
+    }
+
+    public AiPlayer(Owner side, int depth, long budgetNanos) {
+        if (side == Owner.NEUTRAL) throw new IllegalArgumentException("AI must play RED or BLUE");
+        if (depth < 1) throw new IllegalArgumentException("depth must be >= 1: " + depth);
+        this.side = side;
+        this.depth = depth;
+        this.budgetNanos = budgetNanos;
+    }
+
+    /** 同步决策（在持有 sim 的线程上调用）；返回 null 表示这一手不动 */
+    public Move decide(Simulation sim) {
+        prepare(sim);
+        return search(sim.snapshot());
+    }
+
+    /** 后台决策：在调用线程上拍快照，推演在 AI 线程上进行，sim 可以继续推进；{@link #shutdown()} 之后返回 null */
+    public synchronized Future<Move> planAsync(Simulation sim) {
+        if (shutdown) return null;
+        prepare(sim);
+        byte[] root = sim.snapshot();
+        if (executor == null) {
+            executor = Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, "ai-" + side);
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        return executor.submit(() -> search(root));
+    }
+
+    /** 停止后台线程（对局结束时调用），之后不再接受规划 */
+    public synchronized void shutdown() {
+        shutdown = true;
+        if (executor != null) executor.shutdownNow();
+    }
+
+    /** 在 sim 上执行 move；规划期间局面可能已变化，来源不再属于己方或兵力不足时放弃，返回是否执行 */
+    public boolean apply(Simulation sim, Move move) {
+        if (move == null || sim.isOver()) return false;
+        Cell s = sim.cells.get(move.source), t = sim.cells.get(move.target);
+        if (s.owner != side || s.force < MIN_SEND_FORCE) return false;
+        send(sim, s, t, move.allIn);
+        return true;
+    }
+
+    /**
+     * 无界面对战：每个 AI 每 {@link #DECISION_TICKS} 步决策一次（各方在间隔内错开），
+     * 直到分出胜负或达到 maxTicks，返回胜者（未分胜负为 null）。
+     */
+    public static Owner play(Simulation sim, long maxTicks, AiPlayer... players) {
+        while (!sim.isOver() && sim.tick() < maxTicks) {
+            long phase = sim.tick() % DECISION_TICKS;
+            for (int i = 0; i < players.length; i++) {
+                if (phase == (long) i * DECISION_TICKS / players.length) players[i].apply(sim, players[i].decide(sim));
+            }
+            sim.step();
+        }
+        return sim.winner();
+    }
+
+    public long decisions() { return decisions; }
+
+    public long rollouts() { return rollouts; }
+
+    public double averageDecisionMillis() { return decisions == 0 ? 0 : totalNanos / 1e6 / decisions; }
+
+    public double maxDecisionMillis() { return maxNanos / 1e6; }
+
+    /** 最近一次决策完成的搜索深度（预算不足时可能小于 depth） */
+    public int lastDepth() { return lastDepth; }
+
+    // ---- 搜索 ----
+
+    private void prepare(Simulation sim) {
+        if (sim == source && scratch != null) return;
+        source = sim;
+        scratch = sim.copy();
+    }
+
+    private Move search(byte[] root) {
+        long start = System.nanoTime();
+        searchStart = start;
+        partial = null;
+        Line best = null;
+        int done = 0;
+        // 逐层加深：一层没有在预算内完成就放弃，沿用上一层的结果
+        for (int d = 1; d <= depth; d++) {
+            try {
+                best = node(root, 0, d);
+                done = d;
+            } catch (Expired e) {
+                if (d == 1) best = partial; // 第 1 层也没完成时，取已推演候选中最好的
+                break;
+            }
+        }
+
+        long nanos = System.nanoTime() - start;
+        decisions++;
+        totalNanos += nanos;
+        maxNanos = Math.max(maxNanos, nanos);
+        lastDepth = done;
+        if (best == null || best.source < 0) return null;
+        return new Move(best.source, best.target, best.allIn, best.score, done);
+    }
+
+    /** 预算用尽（只用于跳出递归） */
+    private static final class Expired extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        Expired() {
+            super(null, null, false, false);
+        }
+    }
+
+    /**
+     * 从 state 起第 ply 手（偶数为己方，奇数为对手）展开，搜索到第 maxPly 手为止，返回这一手中最好的一条
+     * （score 为己方视角的线路值：己方取最大、对手取最小）。每手先推演全部候选，只对最好的 BEAM 个继续向下搜索。
+     */
+    private Line node(byte[] state, int ply, int maxPly) {
+        boolean mine = (ply & 1) == 0;
+        boolean leaf = ply == maxPly - 1;
+        scratch.restore(state);
+        List<int[]> moves = candidates(mine ? side : opponent());
+        List<Line> children = new ArrayList<>(moves.size());
+        for (int[] m : moves) {
+            checkBudget();
+            Line l = new Line(m);
+            l.score = rollout(state, l, leaf);
+            children.add(l);
+            if (ply == 0 && maxPly == 1 && (partial == null || l.score > partial.score)) partial = l;
+        }
+        // 己方按分数降序，对手按升序；排序稳定，同分时“不动”在前
+        children.sort((a, b) -> mine ? Double.compare(b.score, a.score) : Double.compare(a.score, b.score));
+        if (!leaf) {
+            for (int i = 0; i < children.size(); i++) {
+                Line l = children.get(i);
+                if (i >= BEAM) {
+                    children.subList(BEAM, children.size()).clear();
+                    break;
+                }
+                // 推演中已分出胜负的线路不再展开
+                if (l.state != null) l.score = node(l.state, ply + 1, maxPly).score;
+            }
+        }
+        Line best = null;
+        for (Line l : children) {
+            if (best == null || (mine ? l.score > best.score : l.score < best.score)) best = l;
+        }
+        return best;
+    }
+
+    private Owner opponent() {
+        return side == Owner.RED ? Owner.BLUE : Owner.RED;
+    }
+
+    private static void send(Simulation sim, Cell source, Cell target, boolean allIn) {
+        if (allIn) sim.attackAll(java.util.Collections.singletonList(source), target);
+        else sim.sendHalf(source, target);
+    }
+
+    /** 当前 scratch 局面下 mover 的候选手 {来源 id, 目标 id, 是否全军出击}，第一个为不动 {-1, -1, 0} */
+    private List<int[]> candidates(Owner mover) {
+        List<int[]> out = new ArrayList<>();
+        out.add(new int[]{-1, -1, 0});
+        if (!scratch.isOver()) {
+            Cell[] top = new Cell[MAX_SOURCES];
+            for (Cell c : scratch.cells) {
+                if (c.owner != mover || c.force < MIN_SEND_FORCE) continue;
+                // 插入按兵力降序的前 MAX_SOURCES 个（同兵力先到先得，保证确定性）
+                for (int i = 0; i < MAX_SOURCES; i++) {
+                    if (top[i] == null || c.force > top[i].force) {
+                        System.arraycopy(top, i, top, i + 1, MAX_SOURCES - 1 - i);
+                        top[i] = c;
+                        break;
+                    }
+                }
+            }
+            for (Cell s : top) {
+                if (s == null) break;
+                nearest(s, false, MAX_TARGETS, false, out);
+                nearest(s, true, MAX_REINFORCE, false, out);
+                // 全军出击会清空来源，是否值得要看对手的应对；只考虑最近的几个进攻目标
+                nearest(s, false, MAX_ALL_IN, true, out);
+
+            }
+        }
+        return out;
+    }
+
+    /** 从 state 执行 move 并推演；不是最后一手时保存一个 PLY 后的状态供下一手展开 */
+    private double rollout(byte[] state, Line move, boolean leaf) {
+        rollouts++;
+        Simulation sim = scratch;
+        sim.restore(state);
+        if (move.source >= 0) send(sim, sim.cells.get(move.source), sim.cells.get(move.target), move.allIn);
+        advance(sim, PLY_TICKS);
+        if (!leaf && !sim.isOver()) {
+            checkBudget(); // 快照与恢复是推演之外最大的不可中断段，之前再查一次
+            move.state = sim.snapshot();
+        }
+        advance(sim, HORIZON_TICKS - PLY_TICKS);
+        return evaluate(sim);
+    }
+
+    /** 推进 n 步（分出胜负即停），每 {@link #BUDGET_CHECK_TICKS} 步检查一次预算 */
+    private void advance(Simulation sim, int n) {
+        for (int done = 0; done < n && !sim.isOver(); done += BUDGET_CHECK_TICKS) {
+            checkBudget();
+            sim.advance(Math.min(BUDGET_CHECK_TICKS, n - done));
+        }
+    }
+
+    private void checkBudget() {
+        if (System.nanoTime() - searchStart > budgetNanos) throw EXPIRED;
+    }
+
+    /**
+     * 局面评估：双方实力（兵营价值 + 驻军 + 在途兵力，中立不计）之差，加上己方实力占比。
+     * 等量交换不改变差值，但领先时会提高占比，所以领先方会持续施压而不是僵持。
+     */
+    private double evaluate(Simulation sim) {
+        if (sim.winner() != null) return sim.winner() == side ? WIN - sim.tick() : -WIN + sim.tick();
+        double mine = 0, theirs = 0;
+        for (Cell c : sim.cells) {
+            if (c.owner == side) mine += c.force + CELL_VALUE;
+            else if (c.owner != Owner.NEUTRAL) theirs += c.force + CELL_VALUE;
+        }
+        for (Simulation.Arrow a : sim.arrows) {
+            Owner o = a.source.owner;
+            if (o == side) mine += a.inFlight();
+            else if (o != Owner.NEUTRAL) theirs += a.inFlight();
+        }
+        return mine - theirs + SHARE_WEIGHT * mine / Math.max(1, mine + theirs);
+    }
+
+    /**
+     * 把 s 最近的 k 个目标加入候选（按距离、再按 id，allIn 为是否全军出击）：own 为 false 时是不属于 s 阵营的兵营（进攻），为 true 时是比 s 弱的同阵营兵营（增援）。
+     * 用空间索引从 s 周围逐步扩大窗口，直到窗口内第 k 近的目标不会被窗口外的兵营挤掉，大地图也无需全量扫描。
+     */
+    private void nearest(Cell s, boolean own, int k, boolean allIn, List<int[]> out) {
+        CellGrid grid = scratch.index();
+        int n = scratch.cells.size();
+        found.clear();
+        for (double r = 2 * Simulation.MAP_PITCH; ; r *= 2) {
+            window.clear();
+            grid.centersIn(s.x - r, s.y - r, s.x + r, s.y + r, window);
+            found.clear();
+            for (Cell c : window) {
+                if (c != s && (own ? c.owner == s.owner && c.force < s.force : c.owner != s.owner)) found.add(c);
+            }
+            if (window.size() >= n) break;
+            if (found.size() >= k) {
+                found.sort((a, b) -> compareDistance(a, b, s));
+                if (Math.sqrt(dist2(found.get(k - 1), s)) <= r) break;
+            }
+        }
+        found.sort((a, b) -> compareDistance(a, b, s));
+        for (int i = 0; i < Math.min(k, found.size()); i++) out.add(new int[]{s.id, found.get(i).id, allIn ? 1 : 0});
+    }
+
+    private static int compareDistance(Cell a, Cell b, Cell s) {
+        int c = Double.compare(dist2(a, s), dist2(b, s));
+        return c != 0 ? c : Integer.compare(a.id, b.id);
+    }
+
+    private static double dist2(Cell a, Cell b) {
+        double dx = a.x - b.x, dy = a.y - b.y;
+        return dx * dx + dy * dy;
+    }
+}
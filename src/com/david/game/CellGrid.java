@@ -0,0 +1,124 @@
+package com.david.game;
+
+import com.david.game.NeonConquest.Cell;
+
+import java.util.List;
+
+/**
+ * 兵营的均匀网格空间索引：兵营位置在对局中不变，因此一次构建、只读查询。
+ * <p>
+ * 每个兵营按圆心归入一个格子，格子边长不小于最大直径，点查询只需检查周围少量格子；
+ * 矩形查询（框选、视口裁剪）只遍历与矩形相交的格子。
+ * 存储为压缩行格式：第 b 格的兵营为 {@code items[start[b]] .. items[start[b + 1] - 1]}，查询过程不分配对象。
+ */
+public final class CellGrid {
+    private final double minX;
+    private final double minY;
+    private final double size;
+    private final int cols;
+    private final int rows;
+    private final int maxRadius;
+    private final int[] start;
+    private final Cell[] items;
+
+    private CellGrid(double minX, double minY, double size, int cols, int rows, int maxRadius, int[] start, Cell[] items) {
+        this.minX = minX;
+        this.minY = minY;
+        this.size = size;
+        this.cols = cols;
+        this.rows = rows;
+        this.maxRadius = maxRadius;
+        this.start = start;
+        this.items = items;
+    }
+
+    /** 按当前兵营列表构建索引（同一格内保持列表顺序） */
+    public static CellGrid build(List<Cell> cells) {
+        int n = cells.size();
+        if (n == 0) return new CellGrid(0, 0, 1, 1, 1, 0, new int[2], new Cell[0]);
+        int x0 = Integer.MAX_VALUE, y0 = Integer.MAX_VALUE, x1 = Integer.MIN_VALUE, y1 = Integer.MIN_VALUE, maxR = 0;
+        for (Cell c : cells) {
+            x0 = Math.min(x0, c.x);
+            y0 = Math.min(y0, c.y);
+            x1 = Math.max(x1, c.x);
+            y1 = Math.max(y1, c.y);
+            maxR = Math.max(maxR, c.radius);
+        }
+        double w = x1 - x0 + 1.0, h = y1 - y0 + 1.0;
+        // 格子边长：至少一个直径；兵营稀疏时放大，使格子数不超过约 2n
+        double size = Math.max(Math.max(2.0 * maxR, 16.0), Math.sqrt(w * h / (2.0 * n)));
+        int cols = (int) (w / size) + 1, rows = (int) (h / size) + 1;
+
+        int[] bucket = new int[n];
+        int[] start = new int[cols * rows + 1];
+        for (int i = 0; i < n; i++) {
+            Cell c = cells.get(i);
+            int b = (int) ((c.y - y0) / size) * cols + (int) ((c.x - x0) / size);
+            bucket[i] = b;
+            start[b + 1]++;
+        }
+        for (int b = 0; b < cols * rows; b++) start[b + 1] += start[b];
+        int[] fill = java.util.Arrays.copyOf(start, cols * rows);
+        Cell[] items = new Cell[n];
+        for (int i = 0; i < n; i++) items[fill[bucket[i]]++] = cells.get(i);
+        return new CellGrid(x0, y0, size, cols, rows, maxR, start, items);
+    }
+
+    /** 包含点 (x, y) 的兵营（圆内，含边界），没有则返回 null */
+    public Cell cellAt(double x, double y) {
+        int bx0 = col(x - maxRadius), bx1 = col(x + maxRadius);
+        int by0 = row(y - maxRadius), by1 = row(y + maxRadius);
+        for (int by = by0; by <= by1; by++) {
+            for (int bx = bx0; bx <= bx1; bx++) {
+                int b = by * cols + bx;
+                for (int i = start[b]; i < start[b + 1]; i++) {
+                    Cell c = items[i];
+                    double dx = c.x - x, dy = c.y - y;
+                    if (dx * dx + dy * dy <= c.radius * c.radius) return c;
+                }
+            }
+        }
+        return null;
+    }
+
+    /** 圆心落在矩形 [x1, x2] x [y1, y2] 内的兵营（框选），追加到 out，返回追加数 */
+    public int centersIn(double x1, double y1, double x2, double y2, List<Cell> out) {
+        return query(x1, y1, x2, y2, 0, out);
+    }
+
+    /** 圆与矩形 [x1, x2] x [y1, y2] 的外接框相交的兵营（视口裁剪），追加到 out，返回追加数 */
+    public int overlapping(double x1, double y1, double x2, double y2, List<Cell> out) {
+        return query(x1, y1, x2, y2, maxRadius, out);
+    }
+
+    private int query(double x1, double y1, double x2, double y2, int pad, List<Cell> out) {
+        int added = 0;
+        int bx0 = col(x1 - pad), bx1 = col(x2 + pad);
+        int by0 = row(y1 - pad), by1 = row(y2 + pad);
+        boolean padded = pad > 0;
+        for (int by = by0; by <= by1; by++) {
+            for (int bx = bx0; bx <= bx1; bx++) {
+                int b = by * cols + bx;
+                for (int i = start[b]; i < start[b + 1]; i++) {
+                    Cell c = items[i];
+                    int r = padded ? c.radius : 0;
+                    if (c.x + r >= x1 && c.x - r <= x2 && c.y + r >= y1 && c.y - r <= y2) {
+                        out.add(c);
+                        added++;
+                    }
+                }
+            }
+        }
+        return added;
+    }
+
+    private int col(double x) {
+        int c = (int) Math.floor((x - minX) / size);
+        return c < 0 ? 0 : Math.min(c, cols - 1);
+    }
+
+    private int row(double y) {
+        int r = (int) Math.floor((y - minY) / size);
+        return r < 0 ? 0 : Math.min(r, rows - 1);
+    }
+}
@@ -0,0 +1,187 @@
+package com.david.game;
+
+import com.david.game.NeonConquest.Cell;
+import com.david.game.NeonConquest.Owner;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 联机客户端：连接 {@link GameServer}，把服务器的增量应用到本地镜像 {@link #mirror()}（一个不自行推进的 {@link Simulation}），
+ * 界面照常渲染镜像；命令发给服务器执行，不在本地生效。
+ * <p>
+ * 增量先进入抖动缓冲，按本地时钟以落后服务器 {@value #INTERP_DELAY_TICKS} 步的节奏播放；
+ * {@link #alpha(long)} 给出两步之间的插值进度，网络抖动不会让画面卡顿或跳跃。
+ * 只在一个线程上使用（界面中为 EDT）：{@link #poll(long)} 读取并应用，命令方法写出。
+ */
+public final class GameClient implements Closeable {
+    /** 播放落后服务器的步数（抖动缓冲深度） */
+    static final int INTERP_DELAY_TICKS = 2;
+    /** 缓冲积压超过此步数时直接追到最新 */
+    private static final int MAX_BACKLOG_TICKS = 10;
+
+    private final SocketChannel channel;
+    private final Owner seat;
+    private final long tickNanos;
+    private final Simulation mirror;
+    private ByteBuffer in = ByteBuffer.allocate(1 << 16);
+    private final ArrayDeque<ByteBuffer> out = new ArrayDeque<>();
+    private final ArrayDeque<byte[]> pending = new ArrayDeque<>();
+    private long pendingLastTick;
+
+    // 播放时钟：第 anchorTick 步对应本地时刻 anchorNanos
+    private boolean clockSet;
+    private double anchorTick;
+    private long anchorNanos;
+    private boolean connected = true;
+    private long bytesReceived;
+
+    private GameClient(SocketChannel channel, NetProtocol.Welcome welcome, ByteBuffer rest) {
+        this.channel = channel;
+        this.seat = welcome.seat;
+        this.tickNanos = welcome.tickNanos;
+        this.mirror = welcome.mirror;
+        this.pendingLastTick = mirror.tick();
+        in.put(rest);
+    }
+
+    /** 连接并等待欢迎消息（阻塞），之后切换为非阻塞 */
+    public static GameClient connect(String host, int port) throws IOException {
+        SocketChannel ch = SocketChannel.open(new InetSocketAddress(host, port));
+        ch.socket().setTcpNoDelay(true);
+        ByteBuffer buf = ByteBuffer.allocate(1 << 16);
+        byte[] payload;
+        while (true) {
+            buf.flip();
+            payload = NetProtocol.nextFrame(buf);
+            if (payload != null) break;
+            buf.compact();
+            if (!buf.hasRemaining()) {
+                ByteBuffer bigger = ByteBuffer.allocate(buf.capacity() * 2);
+                buf.flip();
+                bigger.put(buf);
+                buf = bigger;
+            }
+            if (ch.read(buf) < 0) throw new EOFException("Server closed before welcome");
+        }
+        NetProtocol.Welcome welcome = new NetProtocol.Welcome(payload);
+        ch.configureBlocking(false);
+        GameClient c = new GameClient(ch, welcome, buf);
+        c.bytesReceived = 4 + payload.length;
+        return c;
+    }
+
+    /** 服务器分配的座位：RED / BLUE，观战为 NEUTRAL */
+    public Owner seat() { return seat; }
+
+    /** 本地镜像局面（只读使用） */
+    public Simulation mirror() { return mirror; }
+
+    public boolean isConnected() { return connected; }
+
+    public long bytesReceived() { return bytesReceived; }
+
+    /** 已收到、尚未播放的增量的最新步号 */
+    public long latestTick() { return pendingLastTick; }
+
+    /**
+     * 读取服务器数据并按播放时钟应用到期的增量，返回是否应用了新的步。
+     * 连接断开后缓冲中剩余的增量会立即全部应用。
+     */
+    public boolean poll(long nowNanos) throws IOException {
+        if (connected) {
+            flush();
+            int n;
+            while ((n = channel.read(in)) > 0) bytesReceived += n;
+            if (n < 0) connected = false;
+            in.flip();
+            byte[] payload;
+            while ((payload = NetProtocol.nextFrame(in)) != null) {
+                if (payload[0] != NetProtocol.MSG_DELTA) throw new IOException("Unexpected message " + payload[0]);
+                pending.add(payload);
+                pendingLastTick = NetProtocol.deltaTick(payload);
+                // 以收到的最新步校准播放时钟：跑到前面或落后太多时重置
+                double target = pendingLastTick - INTERP_DELAY_TICKS;
+                double play = playTick(nowNanos);
+                if (!clockSet || play > pendingLastTick || target - play > MAX_BACKLOG_TICKS) {
+                    clockSet = true;
+                    anchorTick = target;
+                    anchorNanos = nowNanos;
+                }
+            }
+            in.compact();
+            if (!in.hasRemaining()) {
+                ByteBuffer bigger = ByteBuffer.allocate(in.capacity() * 2);
+                in.flip();
+                bigger.put(in);
+                in = bigger;
+            }
+        }
+        boolean applied = false;
+        double play = connected ? playTick(nowNanos) : Double.MAX_VALUE;
+        while (!pending.isEmpty() && mirror.tick() + 1 <= play) {
+            NetProtocol.applyDelta(mirror, pending.poll());
+            applied = true;
+        }
+        return applied;
+    }
+
+    /** 当前渲染时刻在镜像当前步之后的插值进度 [0, 1) */
+    public double alpha(long nowNanos) {
+        if (!clockSet || pending.isEmpty()) return 0;
+        return Math.max(0, Math.min(0.999, playTick(nowNanos) - mirror.tick()));
+    }
+
+    private double playTick(long nowNanos) {
+        return anchorTick + (double) (nowNanos - anchorNanos) / tickNanos;
+    }
+
+    // ---- 命令（在服务器的下一步生效） ----
+
+    public void sendHalf(Cell source, Cell target) {
+        send(NetProtocol.command(ReplayLog.CMD_SEND_HALF, Collections.singletonList(source), Collections.singletonList(target)));
+    }
+
+    public void attackAll(List<Cell> sources, Cell target) {
+        if (sources.isEmpty()) return;
+        send(NetProtocol.command(ReplayLog.CMD_ATTACK_ALL, sources, Collections.singletonList(target)));
+    }
+
+    public void distribute(List<Cell> sources, List<Cell> targets) {
+        if (sources.isEmpty() || targets.isEmpty()) return;
+        send(NetProtocol.command(ReplayLog.CMD_DISTRIBUTE, sources, targets));
+    }
+
+    private void send(ByteArrayOutputStream payload) {
+        if (!connected) return;
+        out.add(NetProtocol.frame(payload));
+        try {
+            flush();
+        } catch (IOException ex) {
+            connected = false;
+        }
+    }
+
+    private void flush() throws IOException {
+        while (!out.isEmpty()) {
+            ByteBuffer b = out.peek();
+            channel.write(b);
+            if (b.hasRemaining()) return;
+            out.poll();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        connected = false;
+        channel.close();
+    }
+}
@@ -0,0 +1,310 @@
+package com.david.game;
+
+import com.david.game.NeonConquest.Owner;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * 权威服务器：在单个线程上用 NIO 非阻塞套接字服务所有客户端，并按固定步长推进唯一的 {@link Simulation}。
+ * <p>
+ * 先连上的客户端依次执 RED、BLUE，其余为观战（NEUTRAL）。新客户端先收到欢迎消息（地图与完整状态快照），
+ * 之后每步收到一条增量（见 {@link NetProtocol}）。双方座位到齐后开始推进；命令到达即经 {@link Simulation} 执行
+ * （只接受属于该客户端座位的来源），在下一步生效，并录入回放。对局结束后把最后的增量发完即退出。
+ * <p>
+ * 用法：{@code java -cp out com.david.game.GameServer [--port 7777] [--cells N] [--seed S] [--players 2] [--speed 1.0]}
+ */
+public final class GameServer implements Runnable, Closeable {
+    public static final int DEFAULT_PORT = 7777;
+    /** 单个客户端待发送数据的上限，超过说明对方读得太慢，断开 */
+    private static final int MAX_QUEUED_BYTES = 8 << 20;
+
+    private final Simulation sim;
+    private final int players;
+    private final long tickNanos;
+    private final Selector selector;
+    private final ServerSocketChannel server;
+    private final List<Conn> conns = new ArrayList<>();
+    private final NetProtocol.DeltaEncoder encoder;
+    private final ReplayLog.Recorder recorder;
+    private volatile boolean running = true;
+
+    // 统计（run 结束后读取）
+    private long bytesSent;
+    private long deltasSent;
+    private long deltaBytes;
+    private long commandsApplied;
+
+    /** 一个客户端连接：座位、接收缓冲与待发送队列 */
+    private static final class Conn {
+        final SocketChannel channel;
+        final Owner seat;
+        ByteBuffer in = ByteBuffer.allocate(4096);
+        final ArrayDeque<ByteBuffer> out = new ArrayDeque<>();
+        long queued;
+
+        Conn(SocketChannel channel, Owner seat) {
+            this.channel = channel;
+            this.seat = seat;
+        }
+    }
+
+    /**
+     * 在 port（0 为任意空闲端口）上监听；players 个座位（1 或 2）到齐后开始。
+     * tickNanos 为每步的真实时长，小于 {@code 1e9 / TICKS_PER_SECOND} 即加速（用于本机测试）。
+     */
+    public GameServer(Simulation sim, int port, int players, long tickNanos) throws IOException {
+        if (players < 1 || players > 2) throw new IllegalArgumentException("players must be 1 or 2: " + players);
+        this.sim = sim;
+        this.players = players;
+        this.tickNanos = tickNanos;
+        this.recorder = sim.tick() == 0 ? new ReplayLog.Recorder(sim) : null;
+        this.encoder = new NetProtocol.DeltaEncoder(sim);
+        this.selector = Selector.open();
+        this.server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(port));
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    public int port() {
+        return server.socket().getLocalPort();
+    }
+
+    /** 权威局面；只能在 {@link #run()} 返回后读取 */
+    public Simulation simulation() {
+        return sim;
+    }
+
+    public ReplayLog.Recorder recorder() {
+        return recorder;
+    }
+
+    public long bytesSent() { return bytesSent; }
+
+    public long deltasSent() { return deltasSent; }
+
+    /** 单条增量的平均字节数（含 4 字节长度前缀） */
+    public double averageDeltaBytes() { return deltasSent == 0 ? 0 : (double) deltaBytes / deltasSent; }
+
+    public long commandsApplied() { return commandsApplied; }
+
+    /** 请求停止（可从其他线程调用），服务线程在当前步结束后退出 */
+    public void stop() {
+        running = false;
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        long nextTick = 0;
+        boolean started = false;
+        long endDeadline = 0;
+        try {
+            while (running) {
+                long now = System.nanoTime();
+                if (!started && seatsTaken() >= players) {
+                    started = true;
+                    nextTick = now + tickNanos;
+                }
+                if (started && !sim.isOver() && now >= nextTick) {
+                    sim.step();
+                    broadcast(encoder.encode());
+                    nextTick += tickNanos;
+                    // 落后太多（如调试暂停）时不追赶，避免一次连推很多步
+                    if (now - nextTick > 10 * tickNanos) nextTick = now + tickNanos;
+                    if (sim.isOver()) endDeadline = now + 2_000_000_000L;
+                }
+                if (sim.isOver() && (allFlushed() || now - endDeadline > 0)) break;
+
+                long waitNanos = started && !sim.isOver() ? nextTick - System.nanoTime() : 50_000_000L;
+                if (waitNanos > 1_000_000) selector.select(waitNanos / 1_000_000);
+                else selector.selectNow();
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    if (!key.isValid()) continue;
+                    if (key.isAcceptable()) accept();
+                    else {
+                        Conn c = (Conn) key.attachment();
+                        try {
+                            if (key.isReadable()) read(c);
+                            if (key.isValid() && key.isWritable()) flush(c);
+                        } catch (IOException ex) {
+                            drop(c);
+                        }
+                    }
+                }
+            }
+        } catch (IOException ex) {
+            System.err.println("Server error: " + ex);
+        } finally {
+            close();
+        }
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        for (Conn c : conns) {
+            try {
+                c.channel.close();
+            } catch (IOException ignored) {
+                // 关闭时忽略
+            }
+        }
+        conns.clear();
+        try {
+            server.close();
+            selector.close();
+        } catch (IOException ignored) {
+            // 关闭时忽略
+        }
+    }
+
+    // ---- 连接 ----
+
+    private int seatsTaken() {
+        int n = 0;
+        for (Conn c : conns) if (c.seat != Owner.NEUTRAL) n++;
+        return n;
+    }
+
+    private void accept() throws IOException {
+        SocketChannel ch;
+        while ((ch = server.accept()) != null) {
+            ch.configureBlocking(false);
+            ch.socket().setTcpNoDelay(true);
+            Conn c = new Conn(ch, freeSeat());
+            conns.add(c);
+            ch.register(selector, SelectionKey.OP_READ, c);
+            send(c, NetProtocol.frame(NetProtocol.welcome(sim, c.seat, tickNanos)));
+        }
+    }
+
+    private Owner freeSeat() {
+        boolean red = false, blue = false;
+        for (Conn c : conns) {
+            red |= c.seat == Owner.RED;
+            blue |= c.seat == Owner.BLUE;
+        }
+        if (!red) return Owner.RED;
+        if (!blue && players > 1) return Owner.BLUE;
+        return Owner.NEUTRAL;
+    }
+
+    private void drop(Conn c) {
+        conns.remove(c);
+        try {
+            c.channel.close();
+        } catch (IOException ignored) {
+            // 对方已断开
+        }
+    }
+
+    private void read(Conn c) throws IOException {
+        int n = c.channel.read(c.in);
+        if (n < 0) throw new IOException("Client closed");
+        c.in.flip();
+        byte[] payload;
+        while ((payload = NetProtocol.nextFrame(c.in)) != null) {
+            if (c.seat == Owner.NEUTRAL || sim.isOver()) continue; // 观战方不能下命令
+            try {
+                ReplayLog.Command cmd = NetProtocol.readCommand(payload, sim, c.seat);
+                if (cmd != null) {
+                    cmd.apply(sim);
+                    commandsApplied++;
+                }
+            } catch (RuntimeException ex) {
+                // 畸形命令只断开发送方（由 run() 中的 drop 处理），不能让服务线程退出
+                throw new IOException("Bad command from " + c.seat, ex);
+            }
+        }
+        c.in.compact();
+        if (!c.in.hasRemaining()) {
+            // 帧比缓冲大：扩容（nextFrame 已限制单帧上限）
+            ByteBuffer bigger = ByteBuffer.allocate(c.in.capacity() * 2);
+            c.in.flip();
+            bigger.put(c.in);
+            c.in = bigger;
+        }
+    }
+
+    // ---- 发送 ----
+
+    private void broadcast(ByteArrayOutputStream payload) {
+        deltasSent++;
+        deltaBytes += 4 + payload.size();
+        ByteBuffer frame = NetProtocol.frame(payload);
+        for (int i = conns.size() - 1; i >= 0; i--) send(conns.get(i), frame.duplicate());
+    }
+
+    /** 排队并尽量立即写出；写不完的部分等 OP_WRITE */
+    private void send(Conn c, ByteBuffer frame) {
+        c.out.add(frame);
+        c.queued += frame.remaining();
+        try {
+            if (c.queued > MAX_QUEUED_BYTES) throw new IOException("Client too slow");
+            flush(c);
+        } catch (IOException ex) {
+            drop(c);
+        }
+    }
+
+    private void flush(Conn c) throws IOException {
+        while (!c.out.isEmpty()) {
+            ByteBuffer b = c.out.peek();
+            int n = c.channel.write(b);
+            bytesSent += n;
+            c.queued -= n;
+            if (b.hasRemaining()) break;
+            c.out.poll();
+        }
+        SelectionKey key = c.channel.keyFor(selector);
+        if (key != null && key.isValid()) {
+            key.interestOps(c.out.isEmpty() ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        }
+    }
+
+    private boolean allFlushed() {
+        for (Conn c : conns) if (!c.out.isEmpty()) return false;
+        return true;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = DEFAULT_PORT, count = 0, players = 2;
+        long seed = 1L;
+        double speed = 1.0;
+        for (int i = 0; i < args.length; i++) {
+            if ("--port".equals(args[i])) port = Integer.parseInt(args[++i]);
+            else if ("--cells".equals(args[i])) count = Integer.parseInt(args[++i]);
+            else if ("--seed".equals(args[i])) seed = Long.parseLong(args[++i]);
+            else if ("--players".equals(args[i])) players = Integer.parseInt(args[++i]);
+            else if ("--speed".equals(args[i])) speed = Double.parseDouble(args[++i]);
+        }
+        Simulation sim = count > 0 ? Simulation.generate(seed, count) : Simulation.sample();
+        GameServer server = new GameServer(sim, port, players, Math.round(1e9 / Simulation.TICKS_PER_SECOND / speed));
+        System.out.println("NeonConquest server on port " + server.port() + ", waiting for " + players + " player(s)");
+        server.run();
+        System.out.printf("Match over: winner %s after %.1f s, %d commands, %d deltas averaging %.1f bytes%n",
+                sim.winner(), sim.elapsedMillis() / 1000.0, server.commandsApplied(), server.deltasSent(), server.averageDeltaBytes());
+        if (server.recorder() != null) {
+            String name = new java.text.SimpleDateFormat("yyyyMMdd_HHmmss").format(new java.util.Date());
+            java.nio.file.Path file = java.nio.file.Paths.get("replays", "server_" + name + ".ncr");
+            server.recorder().save(file);
+            System.out.println("Replay saved: " + file.toAbsolutePath());
+        }
+    }
+}
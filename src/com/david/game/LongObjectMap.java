@@ -0,0 +1,109 @@
+package com.david.game;
+
+import java.util.Arrays;
+
+/**
+ * 以 long 为键的开放寻址哈希表（线性探测），键不装箱，查找 / 插入 / 删除期望 O(1)。
+ * <p>
+ * 删除采用后移法（把后续同簇元素前移填空），不留墓碑，因此频繁增删后探测长度也不会退化。
+ * 负载因子超过 0.5 时容量翻倍。非线程安全。
+ */
+final class LongObjectMap<V> {
+    private long[] keys;
+    private Object[] values;
+    private int mask;
+    private int size;
+
+    LongObjectMap() {
+        this(16);
+    }
+
+    LongObjectMap(int expected) {
+        int cap = Integer.highestOneBit(Math.max(8, expected * 2 - 1)) << 1;
+        keys = new long[cap];
+        values = new Object[cap];
+        mask = cap - 1;
+    }
+
+    int size() {
+        return size;
+    }
+
+    @SuppressWarnings("unchecked")
+    V get(long key) {
+        for (int i = slot(key); ; i = (i + 1) & mask) {
+            Object v = values[i];
+            if (v == null) return null;
+            if (keys[i] == key) return (V) v;
+        }
+    }
+
+    /** 放入键值（value 不能为 null），返回旧值 */
+    @SuppressWarnings("unchecked")
+    V put(long key, V value) {
+        if (value == null) throw new NullPointerException("value");
+        int i = slot(key);
+        for (; values[i] != null; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                V old = (V) values[i];
+                values[i] = value;
+                return old;
+            }
+        }
+        keys[i] = key;
+        values[i] = value;
+        if (++size * 2 > keys.length) rehash(keys.length * 2);
+        return null;
+    }
+
+    /** 删除键，返回旧值（不存在时为 null） */
+    @SuppressWarnings("unchecked")
+    V remove(long key) {
+        int i = slot(key);
+        while (true) {
+            if (values[i] == null) return null;
+            if (keys[i] == key) break;
+            i = (i + 1) & mask;
+        }
+        V old = (V) values[i];
+        // 后移删除：把后续不在“理想位置到空位”区间内的元素前移
+        int gap = i;
+        for (int j = (gap + 1) & mask; values[j] != null; j = (j + 1) & mask) {
+            int home = slot(keys[j]);
+            if (((j - home) & mask) >= ((j - gap) & mask)) {
+                keys[gap] = keys[j];
+                values[gap] = values[j];
+                gap = j;
+            }
+        }
+        values[gap] = null;
+        size--;
+        return old;
+    }
+
+    void clear() {
+        if (size == 0) return;
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    private int slot(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    private void rehash(int cap) {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new long[cap];
+        values = new Object[cap];
+        mask = cap - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] == null) continue;
+            int j = slot(oldKeys[i]);
+            while (values[j] != null) j = (j + 1) & mask;
+            keys[j] = oldKeys[i];
+            values[j] = oldValues[i];
+        }
+    }
+}
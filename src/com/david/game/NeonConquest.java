@@ -7,7 +7,6 @@ import java.awt.geom.Point2D;
 import java.awt.geom.AffineTransform;
 import java.util.ArrayList;
 import java.util.Map;
-import java.util.HashMap;
 import java.util.List;
 
 /**
@@ -16,7 +15,7 @@ import java.util.List;
  * 特性：
  * - Cell 表示圆圈，包含位置、半径、力量、归属等属性
  * - Troop 表示移动单位（当前为基础结构，支持位置更新）
- * - 每秒 tick：占领阵营的 Cell 力量 +1（中立不增长）
+ * - 游戏逻辑在无界面的 {@link Simulation} 中按固定步长推进（每秒 tick：占领阵营的 Cell 力量 +1，中立不增长），画板只渲染
  * - 渲染：根据力量深度调整颜色（深度 = force / 100.0）
  * - 支持点击选中 Cell，并在其周围绘制高亮圈
  */
@@ -26,9 +25,28 @@ public class NeonConquest extends JFrame {
     /** 界面主要画板 */
     private final GamePanel gamePanel;
 
-    /** 构造器 */
+    /** 构造器：默认示例局面 */
     public NeonConquest() {
-        setTitle("Neon Conquest");
+        this(Simulation.sample());
+    }
+
+    /** 构造器：指定局面（如 {@link Simulation#generate(long, int)} 生成的大地图），BLUE 由普通难度的电脑控制 */
+    public NeonConquest(Simulation sim) {
+        this(sim, AiPlayer.Difficulty.NORMAL);
+    }
+
+    /** 构造器：指定局面与电脑对手难度 */
+    public NeonConquest(Simulation sim, AiPlayer.Difficulty difficulty) {
+        this(sim, difficulty, null);
+    }
+
+    /** 构造器：联机对局，渲染客户端镜像，操作发往服务器（座位由服务器分配，NEUTRAL 为观战） */
+    public NeonConquest(GameClient client) {
+        this(client.mirror(), null, client);
+    }
+
+    private NeonConquest(Simulation sim, AiPlayer.Difficulty difficulty, GameClient client) {
+        setTitle(client == null ? "Neon Conquest" : "Neon Conquest - " + (client.seat() == Owner.NEUTRAL ? "观战" : client.seat()));
         setDefaultCloseOperation(EXIT_ON_CLOSE);
         // 顶部工具条用于放置返回箭头
         JPanel topBar = new JPanel(new FlowLayout(FlowLayout.LEFT));
@@ -38,7 +56,7 @@ public class NeonConquest extends JFrame {
         topBar.add(backBtn);
         add(topBar, BorderLayout.NORTH);
 
-        gamePanel = new GamePanel();
+        gamePanel = new GamePanel(sim, difficulty, client);
         add(gamePanel, BorderLayout.CENTER);
         pack();
         setLocationRelativeTo(null);
@@ -53,6 +71,8 @@ public class NeonConquest extends JFrame {
             Window w = SwingUtilities.getWindowAncestor(gamePanel);
             if (w instanceof JFrame) {
                 JFrame f = (JFrame) w;
+                gamePanel.saveReplay();
+                gamePanel.shutdown();
                 f.dispose();
             }
             // 返回菜单
@@ -60,9 +80,36 @@ public class NeonConquest extends JFrame {
         }
     }
 
-    /** 启动入口（方便调试） */
+    /**
+     * 启动入口（方便调试）；{@code --cells N [--seed S]} 使用程序化生成的大地图，{@code --ai easy|normal|hard} 指定电脑难度，
+     * {@code --connect host[:port]} 加入 {@link GameServer} 的联机对局
+     */
     public static void main(String[] args) {
-        SwingUtilities.invokeLater(() -> new NeonConquest().setVisible(true));
+        int count = 0;
+        long seed = 1L;
+        AiPlayer.Difficulty difficulty = AiPlayer.Difficulty.NORMAL;
+        String connect = null;
+        for (int i = 0; i < args.length; i++) {
+            if ("--cells".equals(args[i])) count = Integer.parseInt(args[++i]);
+            else if ("--seed".equals(args[i])) seed = Long.parseLong(args[++i]);
+            else if ("--ai".equals(args[i])) difficulty = AiPlayer.Difficulty.valueOf(args[++i].toUpperCase());
+            else if ("--connect".equals(args[i])) connect = args[++i];
+        }
+        if (connect != null) {
+            int colon = connect.lastIndexOf(':');
+            String host = colon < 0 ? connect : connect.substring(0, colon);
+            int port = colon < 0 ? GameServer.DEFAULT_PORT : Integer.parseInt(connect.substring(colon + 1));
+            try {
+                GameClient client = GameClient.connect(host, port);
+                SwingUtilities.invokeLater(() -> new NeonConquest(client).setVisible(true));
+            } catch (java.io.IOException ex) {
+                System.err.println("Failed to connect to " + connect + ": " + ex);
+            }
+            return;
+        }
+        Simulation sim = count > 0 ? Simulation.generate(seed, count) : Simulation.sample();
+        AiPlayer.Difficulty d = difficulty;
+        SwingUtilities.invokeLater(() -> new NeonConquest(sim, d).setVisible(true));
     }
 
     /** 阵营枚举 */
@@ -72,6 +119,8 @@ public class NeonConquest extends JFrame {
      * Cell: 代表圆圈（据点）
      */
     public static class Cell {
+        /** 稳定编号：由 {@link Simulation#addCell(Cell)} 分配，未加入模拟时为 -1 */
+        public int id = -1;
         public int x;
         public int y;
         public int radius;
@@ -139,23 +188,34 @@ public class NeonConquest extends JFrame {
     /** 游戏主画板 */
     private static class GamePanel extends JPanel implements MouseListener, MouseMotionListener, MouseWheelListener {
             private static final long serialVersionUID = 1L;
-        private final List<Cell> cells = new ArrayList<>();
-        // 用聚合箭头表示移动（隐藏单个士兵）
-        private final List<Arrow> arrows = new ArrayList<>();
+        // 全部游戏逻辑在 Simulation 中按固定步长推进，画板只负责输入与渲染
+        private final Simulation sim;
+        private final List<Cell> cells;
+        // 兵营空间索引：点选、悬停、框选与视口裁剪都走索引，不再线性扫描
+        private final CellGrid grid;
+        private final List<Cell> visibleCells = new ArrayList<>(); // 每帧复用
+        // 命令录制：胜利或退出时写入 replays/，可用 ReplayPlayer 快速回放（联机时由服务器录制，为 null）
+        private final ReplayLog.Recorder recorder;
+        // 电脑对手：在后台线程规划，EDT 每帧只检查结果是否就绪（联机时为 null）
+        private final AiPlayer ai;
+        // 联机客户端：非 null 时 sim 为其镜像，不在本地推进，命令发往服务器
+        private final GameClient client;
+        private java.util.concurrent.Future<AiPlayer.Move> aiPlan;
+        private long nextAiTick = AiPlayer.DECISION_TICKS;
         private Cell selectedCell = null;
         private final java.util.List<Cell> selectedCells = new ArrayList<>(); // 多选集合
 
-        // 控制方（demo 用 RED），以及拖拽相关状态
-        private final Owner playerOwner = Owner.RED;
+        // 控制方（单机为 RED，联机由服务器分配，NEUTRAL 为观战），以及拖拽相关状态
+        private final Owner playerOwner;
         private Cell dragStartCell = null;
         private Point2D.Double dragPointWorld = null; // 拖拽的世界坐标
         private Cell hoverTarget = null;
-        private final List<Sender> senders = new ArrayList<>();
         private final java.util.List<Cell> selectedTargets = new ArrayList<>(); // 目标集合（可多选）
         private final java.util.List<Pulse> pulses = new ArrayList<>();
 
         // 缩放与选择框
         private double scale = 1.0;
+        private double minScale = 0.3; // 大地图允许缩小到整图可见
         private final double minScaleToShowTroops = 0.6;
         private boolean isSelecting = false;
         private Point2D.Double selectStartWorld = null;
@@ -168,31 +228,86 @@ public class NeonConquest extends JFrame {
         private Point lastPanScreen = null;
 
 
-        // 游戏统计与计时
-        private long startTimeMillis = 0L;
-        private int totalTroopsSent = 0;
         private boolean gameEnded = false;
 
-        private final Timer tickTimer; // 每秒 tick
-        private final Timer animTimer; // 动画刷新（30 FPS）
+        // ---- 绘制资源：颜色、线型、字体全部预先创建，绘制时不再分配 ----
+        private static final Color[] OWNER_COLORS = {
+                new Color(0x888888), // NEUTRAL: gray
+                new Color(0xFF3B30), // RED
+                new Color(0x007AFF)  // BLUE
+        };
+        // Cell 填充色：按阵营与力量 0..100（深度 = force / 100）预先混合
+        private static final Color[][] CELL_FILL = new Color[OWNER_COLORS.length][101];
+        private static final Color[] PULSE_COLORS = new Color[181];
+        private static final String[] FORCE_TEXT = new String[1000];
+        private static final String[] IN_FLIGHT_TEXT = new String[1000];
+        private static final BasicStroke STROKE_2 = new BasicStroke(2);
+        private static final BasicStroke STROKE_3 = new BasicStroke(3);
+        private static final BasicStroke DASHED_STROKE =
+                new BasicStroke(2, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND, 0, new float[]{6}, 0);
+        private static final BasicStroke[] ARROW_STROKES = new BasicStroke[97];
+        private static final Color DRAG_LINE = new Color(255, 255, 255, 100);
+        private static final Color HOVER_RING = new Color(255, 255, 0, 140);
+        private static final Color SELECT_RING = new Color(255, 255, 255, 120);
+        private static final Color TARGET_RING = new Color(255, 165, 0, 160);
+        private static final Color MESSAGE_COLOR = new Color(255, 255, 255, 200);
+        private static final Color LABEL_BG = new Color(255, 255, 255, 220);
+        static {
+            for (int o = 0; o < OWNER_COLORS.length; o++) {
+                for (int f = 0; f <= 100; f++) CELL_FILL[o][f] = blendWithBlack(OWNER_COLORS[o], f / 100.0f);
+            }
+            for (int a = 0; a < PULSE_COLORS.length; a++) PULSE_COLORS[a] = new Color(255, 255, 0, a);
+            for (int i = 0; i < FORCE_TEXT.length; i++) FORCE_TEXT[i] = String.valueOf(i);
+            for (int i = 0; i < IN_FLIGHT_TEXT.length; i++) IN_FLIGHT_TEXT[i] = "×" + i;
+            for (int t = 0; t < ARROW_STROKES.length; t++) {
+                ARROW_STROKES[t] = new BasicStroke(t, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND);
+            }
+        }
+        private Font arrowLabelFont; // 首帧由组件字体派生
+        private final int[] headX = new int[3], headY = new int[3];
+        // 可见世界矩形（每帧原地更新）与 HUD 文本缓冲（经 drawChars 绘制，不生成 String）
+        private final Point2D.Double viewMin = new Point2D.Double(), viewMax = new Point2D.Double();
+        private final StringBuilder hudText = new StringBuilder(96);
+        private char[] hudChars = new char[96];
+
+        // ---- 细节层次（LOD）阈值 ----
+        private static final double LABEL_MIN_SCALE = 0.45;     // 低于此缩放不画兵力数字
+        private static final double MERGE_ARROWS_SCALE = 0.4;  // 低于此缩放合并相邻箭头
+        private static final double MERGE_SCREEN_PX = 64;      // 合并箭头的屏幕粗格边长
+        private static final double AA_MIN_SCALE = 0.2;        // 低于此缩放关闭抗锯齿
+        private static final double TINY_SCREEN_RADIUS = 2.5;  // 屏幕半径小于此值的 Cell 画成方块
+        private static final double OUTLINE_MIN_SCREEN_RADIUS = 8; // 屏幕半径小于此值的 Cell 不描边
+        private final LongObjectMap<MergedArrow> mergedArrows = new LongObjectMap<>();
+        private final List<MergedArrow> mergedPool = new ArrayList<>();
+
+        // 帧耗时统计（显示在左下角）
+        private double frameAvgMs, frameMaxMs, frameMaxShownMs;
+        private int framesInWindow, fpsShown;
+        private long frameWindowStart = System.nanoTime();
+
+        // 帧计时器（约 60 FPS）：把真实时间累积成整数个模拟步，余量 alpha 用于渲染插值
+        private final Timer animTimer;
         private long lastAnimTime;
-
-        GamePanel() {
+        private double accumulator = 0.0;
+        private double alpha = 0.0;
+
+        GamePanel(Simulation sim, AiPlayer.Difficulty difficulty, GameClient client) {
+            this.sim = sim;
+            this.cells = sim.cells;
+            this.grid = sim.index();
+            this.client = client;
+            this.playerOwner = client == null ? Owner.RED : client.seat();
+            this.recorder = client == null ? new ReplayLog.Recorder(sim) : null;
+            this.ai = client == null ? new AiPlayer(playerOwner == Owner.RED ? Owner.BLUE : Owner.RED, difficulty) : null;
             setPreferredSize(new Dimension(800, 600));
             setBackground(Color.BLACK);
-            initSampleCells();
+            centerOnPlayerIfOffscreen(800, 600);
             addMouseListener(this);
             addMouseMotionListener(this);
             addMouseWheelListener(this);
 
-            // 记录游戏开始时间
-            startTimeMillis = System.currentTimeMillis();
-
-            tickTimer = new Timer(1000, e -> doTick());
-            tickTimer.start();
-
             lastAnimTime = System.nanoTime();
-            animTimer = new Timer(33, e -> {
+            animTimer = new Timer(16, e -> {
                 long now = System.nanoTime();
                 double dt = (now - lastAnimTime) / 1_000_000_000.0;
                 lastAnimTime = now;
@@ -217,163 +332,73 @@ public class NeonConquest extends JFrame {
             });
         }
 
-        /** 初始化示例 Cell 布局 */
-        private void initSampleCells() {
-            cells.clear();
-            cells.add(new Cell(150, 150, 32, Owner.RED, 10));
-            cells.add(new Cell(400, 120, 28, Owner.NEUTRAL, 0));
-            cells.add(new Cell(650, 180, 40, Owner.BLUE, 20));
-            cells.add(new Cell(200, 400, 32, Owner.NEUTRAL, 0));
-            cells.add(new Cell(500, 380, 36, Owner.NEUTRAL, 0));
-        }
-
-        /** 每秒执行逻辑：更新 Cell.force */
-        private void doTick() {
+        /** 地图超出初始画面时（大地图），把视图中心移到玩家的第一个兵营，并放宽最小缩放使整图可见 */
+        private void centerOnPlayerIfOffscreen(int w, int h) {
+            boolean fits = true;
+            Cell home = null;
             for (Cell c : cells) {
-                c.tick();
-            }
-            // 可以在此扩展：产生部队、资源等
-            repaint();
-        }
-
-        /** 聚合箭头表示的一次传输批次（保存剩余到达时间和数量） */
-        private static class Batch {
-            int count;
-            double timeLeft;
-            double totalTime; // 保存原始 travel time 以便渲染时计算进度
-            Batch(int count, double timeLeft) { this.count = count; this.timeLeft = timeLeft; this.totalTime = timeLeft; }
-        }
-
-        /** Arrow: 聚合表征从 source -> target 的所有在途部队 */
-        private class Arrow {
-            final Cell source;
-            final Cell target;
-            final java.util.List<Batch> batches = new ArrayList<>();
-            int sourcePower = 0; // 用于影响箭头粗细（基于发起时兵力）
-
-            Arrow(Cell s, Cell t) { this.source = s; this.target = t; this.sourcePower = Math.max(0, s.force); }
-
-            void addBatch(int count, double travelTime) {
-                // 合并到最近的批次以减少对象数量（若末批次时间差小于 0.05s）
-                if (!batches.isEmpty()) {
-                    Batch last = batches.get(batches.size() - 1);
-                    if (Math.abs(last.timeLeft - travelTime) < 0.05) {
-                        last.count += count;
-                        sourcePower += count; return;
-                    }
-                }
-                batches.add(new Batch(count, travelTime));
-                sourcePower += count;
+                if (c.x - c.radius < 0 || c.y - c.radius < 0 || c.x + c.radius > w || c.y + c.radius > h) fits = false;
+                if (home == null && c.owner == playerOwner) home = c;
             }
-
-            void update(double dt) {
-                // 减少 timeLeft 并在到达时应用到目标
-                java.util.List<Batch> arrived = new ArrayList<>();
-                for (Batch b : new ArrayList<>(batches)) {
-                    b.timeLeft -= dt;
-                    if (b.timeLeft <= 0) arrived.add(b);
-                }
-                for (Batch b : arrived) {
-                    batches.remove(b);
-                    // 应用到达
-                    if (target == null) continue;
-                    if (source.owner == target.owner) {
-                        target.force += b.count;
-                    } else {
-                        target.force -= b.count;
-                        if (target.force < 0) {
-                            target.owner = source.owner;
-                            target.force = Math.abs(target.force);
-                        }
-                    }
-                    // 当批次到达，减少 sourcePower 显示
-                    sourcePower = Math.max(0, sourcePower - b.count);
-                }
+            if (fits || home == null) return;
+            int maxX = 0, maxY = 0;
+            for (Cell c : cells) {
+                maxX = Math.max(maxX, c.x + c.radius);
+                maxY = Math.max(maxY, c.y + c.radius);
             }
-
-            int inFlight() { int s = 0; for (Batch b : batches) s += b.count; return s; }
-
-            boolean isEmpty() { return batches.isEmpty(); }
+            minScale = Math.max(0.02, Math.min(minScale, Math.min((double) w / maxX, (double) h / maxY)));
+            panX = w / 2.0 - home.x;
+            panY = h / 2.0 - home.y;
         }
 
-        /** 发送器：在 source -> target 之间按固定速率产生命令（每秒 4 个） */
-        // Sender 新增了 preConsumed 构造参数，若 preConsumed=true 则 source.force 已在创建前被扣除，spawn 时不再重复扣减，
-        // 此方式用于“全军出击”场景，避免 race condition
-        private class Sender {
-            private final Cell source;
-            private final Cell target;
-            private int remaining;
-            private final Timer spawnTimer;
-            private final int intervalMs = 250; // 4 per second
-            private final boolean preConsumed; // 如果 true，发送前已把力量从 source 清零，不再在 spawn 时扣减
-
-            Sender(Cell source, Cell target, int count, boolean preConsumed) {
-                this.source = source;
-                this.target = target;
-                this.remaining = count;
-                this.preConsumed = preConsumed;
-                this.spawnTimer = new Timer(intervalMs, e -> spawnOne());
-                this.spawnTimer.start();
-            }
-
-            private void spawnOne() {
-                if (remaining <= 0) {
-                    spawnTimer.stop();
-                    return;
-                }
-                if (!preConsumed && source.force <= 0) {
-                    spawnTimer.stop();
-                    return;
+        /** 按经过的真实时间推进模拟（固定步长，单帧最多追赶 0.25s 以免卡顿后雪崩），并更新纯视觉的 pulses */
+        private void updateAnimation(double dtSeconds) {
+            if (client != null) {
+                // 联机：应用服务器增量（客户端按抖动缓冲的节奏播放），插值进度由客户端时钟给出
+                long now = System.nanoTime();
+                try {
+                    client.poll(now);
+                } catch (java.io.IOException ex) {
+                    System.err.println("Connection error: " + ex);
+                    try {
+                        client.close();
+                    } catch (java.io.IOException ignored) {
+                        // 已断开
+                    }
                 }
-
-                if (gameEnded) { spawnTimer.stop(); return; }
-                // 以聚合箭头表示：创建或找到 Arrow，然后添加一个到达批次（count=1，travelTime由distance/speed决定）
-                Arrow a = getOrCreateArrow(source, target);
-                double dist = source.center().distance(target.center());
-                double speed = 120.0; // px/s
-                double travelTime = dist / speed;
-                a.addBatch(1, travelTime);
-
-                if (!preConsumed) {
-                    source.force -= 1; // 每生成一个，源点力量减少 1
+                alpha = client.alpha(now);
+                if (!client.isConnected() && !sim.isOver()) showTransientMessage("与服务器的连接已断开", 1000);
+            } else {
+                accumulator = Math.min(accumulator + dtSeconds, 0.25);
+                while (accumulator >= Simulation.DT) {
+                    sim.step();
+                    accumulator -= Simulation.DT;
                 }
-                totalTroopsSent++;
-                remaining--;
-
-                if (remaining <= 0) spawnTimer.stop();
+                alpha = accumulator / Simulation.DT;
+                updateAi();
             }
 
-            void stop() { spawnTimer.stop(); }
-        }
-
-        /** 更新动画/部队位置，并处理到达 */
-        private void updateAnimation(double dtSeconds) {
-            List<Troop> arrived = new ArrayList<>();
-            // 更新箭头中的批次（聚合移动）
-            List<Arrow> removed = new ArrayList<>();
-            for (Arrow a : arrows) {
-                a.update(dtSeconds);
-                if (a.isEmpty()) removed.add(a);
-            }
-            arrows.removeAll(removed);
-
-            // 更新 pulses
-            java.util.List<Pulse> dead = new ArrayList<>();
-            for (Pulse p : pulses) {
+            // 更新 pulses（倒序原地移除，不分配临时列表）
+            for (int i = pulses.size() - 1; i >= 0; i--) {
+                Pulse p = pulses.get(i);
                 p.timeLeft -= dtSeconds;
                 p.radius += dtSeconds * 60;
-                if (p.timeLeft <= 0) dead.add(p);
+                if (p.timeLeft <= 0) pulses.remove(i);
             }
-            pulses.removeAll(dead);
 
             checkVictory();
         }
 
         @Override
         protected void paintComponent(Graphics g) {
+            long frameStart = System.nanoTime();
             super.paintComponent(g);
             Graphics2D g2d = (Graphics2D) g;
-            g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            // 极小缩放时兵营只有几个像素，关闭抗锯齿换取速度
+            g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                    scale >= AA_MIN_SCALE ? RenderingHints.VALUE_ANTIALIAS_ON : RenderingHints.VALUE_ANTIALIAS_OFF);
+            Font baseFont = g2d.getFont();
+            if (arrowLabelFont == null) arrowLabelFont = baseFont.deriveFont(Font.BOLD, 14f);
 
             // apply scaling around center
             AffineTransform old = g2d.getTransform();
@@ -385,107 +410,179 @@ public class NeonConquest extends JFrame {
             // apply pan in world coordinates
             g2d.translate(panX, panY);
 
-            // 绘制所有 Cell
-            for (Cell c : cells) {
-                drawCell(g2d, c);
+            // 视口裁剪：只绘制与可见世界矩形相交的 Cell / Arrow
+            Point2D.Double v0 = worldFromScreen(0, 0, viewMin);
+            Point2D.Double v1 = worldFromScreen(getWidth(), getHeight(), viewMax);
+            visibleCells.clear();
+            grid.overlapping(v0.x, v0.y, v1.x, v1.y, visibleCells);
+            boolean labels = scale >= LABEL_MIN_SCALE;
+            FontMetrics cellFm = g2d.getFontMetrics();
+            for (Cell c : visibleCells) {
+                drawCell(g2d, c, labels, cellFm);
             }
 
             // 根据当前缩放决定绘制模式：默认显示小圆点（士兵），缩放到箭头模式时显示短箭头
             boolean arrowMode = scale < minScaleToShowTroops; // 当缩放小于阈值时使用箭头模式（否则显示每个士兵）
             if (!arrowMode) {
                 // 正常尺度：绘制小圆点表示每个士兵
-                for (Arrow a : arrows) {
-                    drawTroopsForArrow(g2d, a);
+                for (Simulation.Arrow a : sim.arrows) {
+                    if (arrowVisible(a, v0, v1)) drawTroopsForArrow(g2d, a);
                 }
-            } else {
+            } else if (scale >= MERGE_ARROWS_SCALE) {
                 // 箭头模式：显示缩短 50%、加粗 1 倍的箭头
-                for (Arrow a : arrows) {
-                    drawAggregatedArrow(g2d, a, true);
+                for (Simulation.Arrow a : sim.arrows) {
+                    if (arrowVisible(a, v0, v1)) drawAggregatedArrow(g2d, a, true);
                 }
+            } else {
+                // 远景：起点、终点落在同一屏幕粗格内的同阵营箭头合并为一条
+                drawMergedArrows(g2d, v0, v1);
             }
+            g2d.setFont(baseFont);
 
             // 绘制拖拽线与目标高亮（拖拽点使用世界坐标）
             if (dragStartCell != null && dragPointWorld != null) {
-                g2d.setColor(new Color(255, 255, 255, 100));
-                g2d.setStroke(new BasicStroke(2, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND, 0, new float[]{6}, 0));
+                g2d.setColor(DRAG_LINE);
+                g2d.setStroke(DASHED_STROKE);
                 g2d.drawLine(dragStartCell.x, dragStartCell.y, (int) dragPointWorld.x, (int) dragPointWorld.y);
                 if (hoverTarget != null) {
-                    g2d.setColor(new Color(255, 255, 0, 140));
-                    g2d.setStroke(new BasicStroke(3));
+                    g2d.setColor(HOVER_RING);
+                    g2d.setStroke(STROKE_3);
                     g2d.drawOval(hoverTarget.x - hoverTarget.radius - 8, hoverTarget.y - hoverTarget.radius - 8,
                             hoverTarget.radius * 2 + 16, hoverTarget.radius * 2 + 16);
                 }
             }
 
-            // 绘制多选高亮
+            // 绘制多选高亮（只画视口内的）
             if (!selectedCells.isEmpty()) {
-                g2d.setColor(new Color(255, 255, 255, 120));
-                g2d.setStroke(new BasicStroke(2));
+                g2d.setColor(SELECT_RING);
+                g2d.setStroke(STROKE_2);
                 for (Cell sc : selectedCells) {
+                    if (!cellVisible(sc, v0, v1)) continue;
                     g2d.drawOval(sc.x - sc.radius - 6, sc.y - sc.radius - 6, sc.radius * 2 + 12, sc.radius * 2 + 12);
                 }
             }
 
             // 绘制目标集合高亮
             if (!selectedTargets.isEmpty()) {
-                g2d.setColor(new Color(255, 165, 0, 160));
-                g2d.setStroke(new BasicStroke(3));
+                g2d.setColor(TARGET_RING);
+                g2d.setStroke(STROKE_3);
                 for (Cell tc : selectedTargets) {
+                    if (!cellVisible(tc, v0, v1)) continue;
                     g2d.drawOval(tc.x - tc.radius - 8, tc.y - tc.radius - 8, tc.radius * 2 + 16, tc.radius * 2 + 16);
                 }
             }
 
             // 绘制选中高亮（单选）
             if (selectedCell != null) {
-                g2d.setColor(new Color(255, 255, 255, 120));
-                g2d.setStroke(new BasicStroke(3));
+                g2d.setColor(SELECT_RING);
+                g2d.setStroke(STROKE_3);
                 g2d.drawOval(selectedCell.x - selectedCell.radius - 6, selectedCell.y - selectedCell.radius - 6,
                         selectedCell.radius * 2 + 12, selectedCell.radius * 2 + 12);
             }
 
-            // restore transform before HUD
+            // 绘制 pulses（线宽不随缩放变化，位置随视图）
             g2d.setTransform(old);
+            g2d.setStroke(STROKE_3);
+            for (Pulse p : pulses) {
+                int sx = (int) ((p.x + panX - cx) * scale + cx), sy = (int) ((p.y + panY - cy) * scale + cy);
+                g2d.setColor(PULSE_COLORS[(int) (180 * Math.max(0, Math.min(1, p.timeLeft)))]);
+                g2d.drawOval((int) (sx - p.radius), (int) (sy - p.radius), (int) (p.radius * 2), (int) (p.radius * 2));
+            }
 
             // HUD 信息（不缩放）
-            int activeInFlight = arrows.stream().mapToInt(Arrow::inFlight).sum();
+            int activeInFlight = sim.inFlight();
             g2d.setColor(Color.WHITE);
-            g2d.drawString("Cells: " + cells.size() + "    Moving: " + activeInFlight + "    Scale: " + String.format("%.2f", scale), 10, 16);
+            hudText.setLength(0);
+            hudText.append("Cells: ").append(cells.size()).append(" (visible ").append(visibleCells.size())
+                    .append(")    Moving: ").append(activeInFlight).append("    Scale: ");
+            appendFixed(hudText, scale, 2);
+            drawHud(g2d, 10, 16);
+            hudText.setLength(0);
+            hudText.append("Frame: ");
+            appendFixed(hudText, frameAvgMs, 1);
+            hudText.append(" ms (max ");
+            appendFixed(hudText, frameMaxShownMs, 1);
+            hudText.append(")    FPS: ").append(fpsShown);
+            drawHud(g2d, 10, getHeight() - 8);
 
             // 显示瞬时提示信息
             if (messageText != null && System.currentTimeMillis() < messageExpireTimeMillis) {
                 FontMetrics fm2 = g2d.getFontMetrics();
                 int mw = fm2.stringWidth(messageText);
-                g2d.setColor(new Color(255, 255, 255, 200));
+                g2d.setColor(MESSAGE_COLOR);
                 g2d.drawString(messageText, (getWidth() - mw) / 2, 36);
             }
 
-            // 绘制 pulses（不缩放）
-            for (Pulse p : pulses) {
-                Graphics2D g3 = (Graphics2D) g.create();
-                g3.setColor(new Color(255, 255, 0, (int) (180 * Math.max(0, p.timeLeft))));
-                g3.setStroke(new BasicStroke(3));
-                g3.drawOval((int) (p.x - p.radius), (int) (p.y - p.radius), (int) (p.radius * 2), (int) (p.radius * 2));
-                g3.dispose();
+            recordFrameTime(System.nanoTime() - frameStart);
+        }
+
+        /** 绘制 hudText 的当前内容 */
+        private void drawHud(Graphics2D g2d, int x, int y) {
+            int n = hudText.length();
+            if (n > hudChars.length) hudChars = new char[n * 2];
+            hudText.getChars(0, n, hudChars, 0);
+            g2d.drawChars(hudChars, 0, n, x, y);
+        }
+
+        /** 追加保留 decimals 位小数（四舍五入）的非负数，HUD 用来代替 String.format("%.Nf")，不分配 */
+        private static void appendFixed(StringBuilder sb, double v, int decimals) {
+            long pow = 1;
+            for (int i = 0; i < decimals; i++) pow *= 10;
+            long fixed = Math.round(Math.max(0, v) * pow);
+            sb.append(fixed / pow);
+            if (decimals <= 0) return;
+            sb.append('.');
+            long frac = fixed % pow;
+            for (long p = pow / 10; p > frac && p > 1; p /= 10) sb.append('0');
+            sb.append(frac);
+        }
+
+        /** 帧耗时统计：平均值为指数滑动平均，最大值与 FPS 每秒刷新一次 */
+        private void recordFrameTime(long nanos) {
+            double ms = nanos / 1e6;
+            frameAvgMs = frameAvgMs == 0 ? ms : frameAvgMs * 0.9 + ms * 0.1;
+            frameMaxMs = Math.max(frameMaxMs, ms);
+            framesInWindow++;
+            long now = System.nanoTime();
+            if (now - frameWindowStart >= 1_000_000_000L) {
+                fpsShown = framesInWindow;
+                frameMaxShownMs = frameMaxMs;
+                framesInWindow = 0;
+                frameMaxMs = 0;
+                frameWindowStart = now;
             }
+        }
 
+        private static boolean cellVisible(Cell c, Point2D.Double v0, Point2D.Double v1) {
+            return c.x + c.radius >= v0.x && c.x - c.radius <= v1.x && c.y + c.radius >= v0.y && c.y - c.radius <= v1.y;
         }
 
-        /** 绘制单个 Cell，颜色深度根据 force/100.0 */
-        private void drawCell(Graphics2D g2d, Cell c) {
-            float depth = Math.min(1.0f, c.force / 100.0f);
-            Color base = ownerBaseColor(c.owner);
-            Color color = blendWithBlack(base, depth);
+        /** 箭头线段的外接框（含箭头头部与标注的余量）是否与可见世界矩形相交 */
+        private boolean arrowVisible(Simulation.Arrow a, Point2D.Double v0, Point2D.Double v1) {
+            final int margin = 60;
+            return Math.max(a.source.x, a.target.x) + margin >= v0.x && Math.min(a.source.x, a.target.x) - margin <= v1.x
+                    && Math.max(a.source.y, a.target.y) + margin >= v0.y && Math.min(a.source.y, a.target.y) - margin <= v1.y;
+        }
 
-            g2d.setColor(color);
+        /** 绘制单个 Cell，颜色深度根据 force/100.0；屏幕上过小时省略描边与数字 */
+        private void drawCell(Graphics2D g2d, Cell c, boolean label, FontMetrics fm) {
+            int depth = Math.max(0, Math.min(100, c.force));
+            g2d.setColor(CELL_FILL[c.owner.ordinal()][depth]);
+            double screenRadius = c.radius * scale;
+            if (screenRadius < TINY_SCREEN_RADIUS) {
+                g2d.fillRect(c.x - c.radius, c.y - c.radius, c.radius * 2, c.radius * 2);
+                return;
+            }
             g2d.fillOval(c.x - c.radius, c.y - c.radius, c.radius * 2, c.radius * 2);
+            if (screenRadius < OUTLINE_MIN_SCREEN_RADIUS) return;
 
             g2d.setColor(Color.WHITE);
-            g2d.setStroke(new BasicStroke(2));
+            g2d.setStroke(STROKE_2);
             g2d.drawOval(c.x - c.radius, c.y - c.radius, c.radius * 2, c.radius * 2);
 
             // 绘制力量值
-            String txt = String.valueOf(c.force);
-            FontMetrics fm = g2d.getFontMetrics();
+            if (!label) return;
+            String txt = c.force >= 0 && c.force < FORCE_TEXT.length ? FORCE_TEXT[c.force] : String.valueOf(c.force);
             int tw = fm.stringWidth(txt);
             g2d.drawString(txt, c.x - tw / 2, c.y + fm.getAscent() / 2);
         }
@@ -513,21 +610,21 @@ public class NeonConquest extends JFrame {
             int len = Math.max(10, (int) Math.hypot(dx, dy) / 6);
             int ex = sx + (int) (Math.cos(ang) * len);
             int ey = sy + (int) (Math.sin(ang) * len);
-            g2d.setStroke(new BasicStroke(2));
+            g2d.setStroke(STROKE_2);
             g2d.drawLine(sx, sy, ex, ey);
             // triangle head
             int hs = 6;
-            int ax = ex - (int) (Math.cos(ang + Math.PI / 6) * hs);
-            int ay = ey - (int) (Math.sin(ang + Math.PI / 6) * hs);
-            int bx = ex - (int) (Math.cos(ang - Math.PI / 6) * hs);
-            int by = ey - (int) (Math.sin(ang - Math.PI / 6) * hs);
-            int[] xs = {ex, ax, bx};
-            int[] ys = {ey, ay, by};
-            g2d.fillPolygon(xs, ys, 3);
+            headX[0] = ex;
+            headY[0] = ey;
+            headX[1] = ex - (int) (Math.cos(ang + Math.PI / 6) * hs);
+            headY[1] = ey - (int) (Math.sin(ang + Math.PI / 6) * hs);
+            headX[2] = ex - (int) (Math.cos(ang - Math.PI / 6) * hs);
+            headY[2] = ey - (int) (Math.sin(ang - Math.PI / 6) * hs);
+            g2d.fillPolygon(headX, headY, 3);
         }
 
         /** 正常缩放下以小圆点表示在途士兵（通过 Arrow.batches 渲染） */
-        private void drawTroopsForArrow(Graphics2D g2d, Arrow a) {
+        private void drawTroopsForArrow(Graphics2D g2d, Simulation.Arrow a) {
             if (a.source == null || a.target == null) return;
             int sx = a.source.x;
             int sy = a.source.y;
@@ -539,35 +636,29 @@ public class NeonConquest extends JFrame {
             if (dist < 1) return;
             double ux = dx / dist;
             double uy = dy / dist;
+            g2d.setColor(ownerBaseColor(a.source.owner));
             // 每个批次内部按间隔分布小圆点，表现为队列移动
-            for (Batch b : a.batches) {
-                if (b.totalTime <= 0) continue;
-                double progress = 1.0 - (b.timeLeft / b.totalTime);
-                double basePos = progress * dist;
-                double spacing = Math.min(8.0, dist / (b.count + 1.0));
-                for (int i = 0; i < b.count; i++) {
+            // 在两次模拟步之间按 alpha 插值，帧率高于步频时移动依然平滑
+            long now = sim.tick();
+            for (int bi = 0, nb = a.batchCount(); bi < nb; bi++) {
+                int count = a.batchTroops(bi);
+                double basePos = a.batchProgress(bi, now, alpha) * dist;
+                double spacing = Math.min(8.0, dist / (count + 1.0));
+                for (int i = 0; i < count; i++) {
                     double pos = basePos - i * spacing;
                     if (pos < 0) pos = 0;
                     if (pos > dist) pos = dist;
                     int px = (int) (sx + ux * pos);
                     int py = (int) (sy + uy * pos);
                     int r = 3; // 士兵半径
-                    g2d.setColor(ownerBaseColor(a.source.owner));
                     g2d.fillOval(px - r, py - r, r * 2, r * 2);
                 }
             }
         }
 
         /** 根据阵营返回基础颜色 */
-        private Color ownerBaseColor(Owner o) {
-            switch (o) {
-                case RED:
-                    return new Color(0xFF3B30); // red
-                case BLUE:
-                    return new Color(0x007AFF); // blue
-                default:
-                    return new Color(0x888888); // neutral gray
-            }
+        private static Color ownerBaseColor(Owner o) {
+            return OWNER_COLORS[o.ordinal()];
         }
 
         // Pulse: simple visual pulse on target
@@ -578,19 +669,43 @@ public class NeonConquest extends JFrame {
             Pulse(int x, int y, double radius, double timeLeft) { this.x = x; this.y = y; this.radius = radius; this.timeLeft = timeLeft; }
         }
 
-        // Attack summary container
-        private static class AttackSummary {
-            int totalSent;
-            Map<Cell, Integer> perSource = new HashMap<>();
-        }
-
         // 聚合箭头绘制：粗线，箭头头部，粗细受 source.force 与当前在途数量影响
-        private void drawAggregatedArrow(Graphics2D g2d, Arrow a, boolean shortMode) {
+        private void drawAggregatedArrow(Graphics2D g2d, Simulation.Arrow a, boolean shortMode) {
             if (a.source == null || a.target == null) return;
-            int sx = a.source.x;
-            int sy = a.source.y;
-            int tx = a.target.x;
-            int ty = a.target.y;
+            drawArrowShape(g2d, a.source.x, a.source.y, a.target.x, a.target.y, a.source.owner, a.sourcePower, a.inFlight(), shortMode);
+        }
+
+        /** 远景合并：按 (阵营, 起点粗格, 终点粗格) 聚合可见箭头，每组画一条从平均起点到平均终点的箭头 */
+        private void drawMergedArrows(Graphics2D g2d, Point2D.Double v0, Point2D.Double v1) {
+            double bucket = MERGE_SCREEN_PX / scale;
+            mergedArrows.clear();
+            int used = 0;
+            for (Simulation.Arrow a : sim.arrows) {
+                if (!arrowVisible(a, v0, v1)) continue;
+                long key = a.source.owner.ordinal();
+                key = (key << 15) | ((long) Math.floor(a.source.x / bucket) & 0x7FFF);
+                key = (key << 15) | ((long) Math.floor(a.source.y / bucket) & 0x7FFF);
+                key = (key << 15) | ((long) Math.floor(a.target.x / bucket) & 0x7FFF);
+                key = (key << 15) | ((long) Math.floor(a.target.y / bucket) & 0x7FFF);
+                MergedArrow m = mergedArrows.get(key);
+                if (m == null) {
+                    if (used == mergedPool.size()) mergedPool.add(new MergedArrow());
+                    m = mergedPool.get(used++);
+                    m.reset(a.source.owner);
+                    mergedArrows.put(key, m);
+                }
+                m.add(a);
+            }
+            for (int i = 0; i < used; i++) {
+                MergedArrow m = mergedPool.get(i);
+                drawArrowShape(g2d, (int) (m.sx / m.n), (int) (m.sy / m.n), (int) (m.tx / m.n), (int) (m.ty / m.n),
+                        m.owner, m.sourcePower, m.inFlight, true);
+            }
+        }
+
+        /** 画一条聚合箭头（线身 + 三角头 + 在途数量标注） */
+        private void drawArrowShape(Graphics2D g2d, int sx, int sy, int tx, int ty, Owner owner, int sourcePower, int inFlight,
+                                    boolean shortMode) {
             double dx = tx - sx;
             double dy = ty - sy;
             double dist = Math.hypot(dx, dy);
@@ -598,13 +713,12 @@ public class NeonConquest extends JFrame {
             double ang = Math.atan2(dy, dx);
 
             // 粗细基于源点发起时兵力与在途兵力
-            int thickness = 2 + (a.sourcePower / 8) + (a.inFlight() / 4);
+            int thickness = 2 + (sourcePower / 8) + (inFlight / 4);
             thickness = Math.max(2, Math.min(48, thickness));
             if (shortMode) thickness = thickness * 2; // 箭头模式下加粗一倍
 
-            g2d.setStroke(new BasicStroke(thickness, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
-            Color base = ownerBaseColor(a.source.owner);
-            g2d.setColor(base);
+            g2d.setStroke(ARROW_STROKES[thickness]);
+            g2d.setColor(ownerBaseColor(owner));
 
             // 根据 shortMode 缩短到 50%
             double lengthScale = shortMode ? 0.5 : 1.0;
@@ -618,33 +732,54 @@ public class NeonConquest extends JFrame {
             int txTip = (int) (sx + Math.cos(ang) * effectiveDist);
             int tyTip = (int) (sy + Math.sin(ang) * effectiveDist);
             int hs = 8 + thickness / 3;
-            int ax = txTip - (int) (Math.cos(ang + Math.PI / 6) * hs);
-            int ay = tyTip - (int) (Math.sin(ang + Math.PI / 6) * hs);
-            int bx = txTip - (int) (Math.cos(ang - Math.PI / 6) * hs);
-            int by = tyTip - (int) (Math.sin(ang - Math.PI / 6) * hs);
-            int[] xs = {txTip, ax, bx};
-            int[] ys = {tyTip, ay, by};
-            g2d.fillPolygon(xs, ys, 3);
-
-            // 在箭头旁边显示在途数量（如果足够大）
-            int inFlight = a.inFlight();
-            if (inFlight > 0) {
-                String s = "×" + inFlight;
-                Font f = g2d.getFont().deriveFont(Font.BOLD, 14f);
-                g2d.setFont(f);
+            headX[0] = txTip;
+            headY[0] = tyTip;
+            headX[1] = txTip - (int) (Math.cos(ang + Math.PI / 6) * hs);
+            headY[1] = tyTip - (int) (Math.sin(ang + Math.PI / 6) * hs);
+            headX[2] = txTip - (int) (Math.cos(ang - Math.PI / 6) * hs);
+            headY[2] = tyTip - (int) (Math.sin(ang - Math.PI / 6) * hs);
+            g2d.fillPolygon(headX, headY, 3);
+
+            // 在箭头旁边显示在途数量（如果足够大）；远景下与兵力数字一起省略
+            if (inFlight > 0 && scale >= LABEL_MIN_SCALE) {
+                String s = inFlight < IN_FLIGHT_TEXT.length ? IN_FLIGHT_TEXT[inFlight] : "×" + inFlight;
+                g2d.setFont(arrowLabelFont);
                 FontMetrics fm = g2d.getFontMetrics();
                 int tw = fm.stringWidth(s);
                 int txp = (sx + ex) / 2;
                 int typ = (sy + ey) / 2;
-                g2d.setColor(new Color(255,255,255,220));
+                g2d.setColor(LABEL_BG);
                 g2d.fillRoundRect(txp - tw/2 - 6, typ - fm.getAscent(), tw + 12, fm.getAscent() + 6, 6, 6);
                 g2d.setColor(Color.BLACK);
                 g2d.drawString(s, txp - tw/2, typ);
             }
         }
 
+        /** 远景合并后的箭头：端点坐标累加后取平均 */
+        private static final class MergedArrow {
+            Owner owner;
+            double sx, sy, tx, ty;
+            int n, sourcePower, inFlight;
+
+            void reset(Owner o) {
+                owner = o;
+                sx = sy = tx = ty = 0;
+                n = sourcePower = inFlight = 0;
+            }
+
+            void add(Simulation.Arrow a) {
+                sx += a.source.x;
+                sy += a.source.y;
+                tx += a.target.x;
+                ty += a.target.y;
+                n++;
+                sourcePower += a.sourcePower;
+                inFlight += a.inFlight();
+            }
+        }
+
         /** 将颜色按深度与黑色混合（深度 0..1） */
-        private Color blendWithBlack(Color c, float depth) {
+        private static Color blendWithBlack(Color c, float depth) {
             depth = Math.max(0f, Math.min(1f, depth));
             int r = (int) (c.getRed() * (1 - depth));
             int g = (int) (c.getGreen() * (1 - depth));
@@ -658,44 +793,40 @@ public class NeonConquest extends JFrame {
 
         /** 鼠标点击选中 cell */
         private Point2D.Double worldFromScreen(Point p) {
+            return worldFromScreen(p.x, p.y, new Point2D.Double());
+        }
+
+        /** 屏幕坐标转世界坐标，写入 dst 并返回 dst */
+        private Point2D.Double worldFromScreen(int sx, int sy, Point2D.Double dst) {
             int cx = getWidth() / 2;
             int cy = getHeight() / 2;
-            double wx = (p.x - cx) / scale + cx - panX;
-            double wy = (p.y - cy) / scale + cy - panY;
-            return new Point2D.Double(wx, wy);
+            dst.x = (sx - cx) / scale + cx - panX;
+            dst.y = (sy - cy) / scale + cy - panY;
+            return dst;
         }
 
         @Override
         public void mouseClicked(MouseEvent e) {
             Point2D.Double wp = worldFromScreen(e.getPoint());
-            Cell found = null;
-            for (Cell c : cells) {
-                double dx = c.x - wp.x;
-                double dy = c.y - wp.y;
-                if (dx * dx + dy * dy <= c.radius * c.radius) { found = c; break; }
-            }
+            Cell found = grid.cellAt(wp.x, wp.y);
 
-            if (e.getClickCount() == 2 && found != null && found.owner == playerOwner) {
+            if (e.getClickCount() == 2 && found != null && isOwn(found)) {
                 // 双击：选中所有我方兵营
                 selectedCells.clear();
-                for (Cell c : cells) if (c.owner == playerOwner) selectedCells.add(c);
+                for (Cell c : cells) if (isOwn(c)) selectedCells.add(c);
                 selectedCell = null;
                 showTransientMessage("全军出击准备（双击后左键敌方兵营以发动）", 800);
             } else if (SwingUtilities.isLeftMouseButton(e) && found != null && found.owner != playerOwner && !selectedCells.isEmpty()) {
-                // 全选后左键敌方兵营 -> 全军出击
-                Cell target = found;
-                int totalSent = 0;
-                for (Cell s : new ArrayList<>(selectedCells)) {
-                    int sendCount = s.force; // 所有兵力
-                    if (sendCount <= 0) continue;
-                    // 预先扣减并创建发送器（preConsumed = true）
-                    s.force -= sendCount;
-                    Sender sender = new Sender(s, target, sendCount, true);
-                    senders.add(sender);
-                    totalSent += sendCount;
-                }
-                if (totalSent > 0) {
-                    showTransientMessage("全军出击！已发兵: " + totalSent, 800);
+                // 全选后左键敌方兵营 -> 全军出击（所有兵力预先扣减）
+                if (client != null) {
+                    // 联机：由服务器执行，兵力变化随增量到达
+                    client.attackAll(selectedCells, found);
+                    showTransientMessage("全军出击！", 800);
+                } else {
+                    int totalSent = sim.attackAll(selectedCells, found);
+                    if (totalSent > 0) {
+                        showTransientMessage("全军出击！已发兵: " + totalSent, 800);
+                    }
                 }
                 // 清空选中
                 selectedCells.clear();
@@ -719,14 +850,9 @@ public class NeonConquest extends JFrame {
             }
 
             Point2D.Double wp = worldFromScreen(e.getPoint());
-            Cell found = null;
-            for (Cell c : cells) {
-                double dx = c.x - wp.x;
-                double dy = c.y - wp.y;
-                if (dx * dx + dy * dy <= c.radius * c.radius) { found = c; break; }
-            }
+            Cell found = grid.cellAt(wp.x, wp.y);
             // 区分：按下在己方兵营上 -> 准备拖拽出兵；按下在空白处（左键）-> 开始框选
-            if (SwingUtilities.isLeftMouseButton(e) && found != null && found.owner == playerOwner && found.force > 1) {
+            if (SwingUtilities.isLeftMouseButton(e) && found != null && isOwn(found) && found.force > 1) {
                 dragStartCell = found;
                 dragPointWorld = wp;
                 hoverTarget = null;
@@ -768,15 +894,13 @@ public class NeonConquest extends JFrame {
                 double y1 = Math.min(selectStartWorld.y, selectCurrentWorld.y);
                 double y2 = Math.max(selectStartWorld.y, selectCurrentWorld.y);
                 selectedCells.clear();
-                for (Cell c : cells) {
-                    if (c.owner == playerOwner && c.x >= x1 && c.x <= x2 && c.y >= y1 && c.y <= y2) selectedCells.add(c);
-                }
+                grid.centersIn(x1, y1, x2, y2, selectedCells);
+                selectedCells.removeIf(c -> !isOwn(c));
                 isSelecting = false;
             } else if (dragStartCell != null) {
                 if (hoverTarget != null && hoverTarget != dragStartCell) {
-                    int sendCount = Math.max(1, dragStartCell.force / 2);
-                    Sender s = new Sender(dragStartCell, hoverTarget, sendCount, false);
-                    senders.add(s);
+                    if (client != null) client.sendHalf(dragStartCell, hoverTarget);
+                    else sim.sendHalf(dragStartCell, hoverTarget);
                 }
             }
             dragStartCell = null;
@@ -785,68 +909,62 @@ public class NeonConquest extends JFrame {
             repaint();
         }
 
-        /** 检查胜利条件：玩家占领所有兵营 */
-        private void checkVictory() {
-            if (gameEnded) return;
-            for (Cell c : cells) {
-                if (c.owner != playerOwner) return;
+        /** 取回已完成的规划并执行（经 Simulation 下达，照常录入回放），到点再提交下一次规划 */
+        private void updateAi() {
+            if (ai == null) return;
+            if (aiPlan != null) {
+                if (!aiPlan.isDone()) return;
+                try {
+                    ai.apply(sim, aiPlan.get());
+                } catch (Exception ex) {
+                    System.err.println("AI planning failed: " + ex);
+                }
+                aiPlan = null;
+            }
+            if (!sim.isOver() && sim.tick() >= nextAiTick) {
+                aiPlan = ai.planAsync(sim);
+                nextAiTick = sim.tick() + AiPlayer.DECISION_TICKS;
             }
-            // 如果走到这里，视为胜利
-            long duration = System.currentTimeMillis() - startTimeMillis;
-            endGame(true, duration);
         }
 
-        private Arrow getOrCreateArrow(Cell source, Cell target) {
-            for (Arrow a : arrows) {
-                if (a.source == source && a.target == target) return a;
-            }
-            Arrow a = new Arrow(source, target);
-            arrows.add(a);
-            return a;
+        /** 检查胜负：玩家占领所有兵营为胜利，电脑占领所有兵营为失败（用时按模拟时间计） */
+        private void checkVictory() {
+            if (gameEnded || sim.winner() == null) return;
+            if (sim.winner() == playerOwner) endGame(true, sim.elapsedMillis());
+            else endDefeat(sim.elapsedMillis());
+        }
+
+        /** 失败结算（观战时为胜负公告）：停止计时器与电脑，保存回放后返回开始界面 */
+        private void endDefeat(long durationMs) {
+            gameEnded = true;
+            animTimer.stop();
+            shutdown();
+            saveReplay();
+            String title = playerOwner == Owner.NEUTRAL ? sim.winner() + " 获胜！" : "失败！";
+            String msg = String.format("%s\n游戏时间: %s\n消耗兵力: %d\n\n返回开始界面？", title, formatDuration(durationMs), sim.totalTroopsSent());
+            JOptionPane.showConfirmDialog(this, msg, "结算", JOptionPane.DEFAULT_OPTION);
+            SwingUtilities.invokeLater(() -> {
+                JFrame top = (JFrame) SwingUtilities.getWindowAncestor(GamePanel.this);
+                top.dispose();
+                com.david.game.TestGame.main(new String[0]);
+            });
         }
 
         // commit distribution: distribute all selected sources' forces across selectedTargets evenly
         private void commitDistribution() {
-            if (selectedCells.isEmpty() || selectedTargets.isEmpty()) return;
-            // gather sources and their available forces
-            java.util.List<Cell> sources = new ArrayList<>(selectedCells);
             java.util.List<Cell> targets = new ArrayList<>(selectedTargets);
-            int total = 0;
-            for (Cell s : sources) total += s.force;
-            if (total <= 0) return;
-
-            int nTargets = targets.size();
-            int base = total / nTargets;
-            int rem = total % nTargets;
-            Map<Cell, Integer> targetNeed = new HashMap<>();
-            for (int i = 0; i < targets.size(); i++) {
-                int need = base + (i < rem ? 1 : 0);
-                targetNeed.put(targets.get(i), need);
-            }
-
-            // pre-deduct all source forces and track remaining per source
-            Map<Cell, Integer> sourceRem = new HashMap<>();
-            for (Cell s : sources) { sourceRem.put(s, s.force); s.force = 0; }
-
-            AttackSummary summary = new AttackSummary();
-            summary.totalSent = total;
-
-            // allocate to targets from sources sequentially
-            for (Cell t : targets) {
-                int need = targetNeed.get(t);
-                for (Cell s : sources) {
-                    if (need <= 0) break;
-                    int avail = sourceRem.get(s);
-                    if (avail <= 0) continue;
-                    int give = Math.min(avail, need);
-                    sourceRem.put(s, avail - give);
-                    need -= give;
-                    // create sender per pair
-                    Sender sender = new Sender(s, t, give, true);
-                    senders.add(sender);
-                    summary.perSource.put(s, summary.perSource.getOrDefault(s, 0) + give);
-                }
+            if (client != null) {
+                // 联机：由服务器执行，出兵结果随增量到达，不弹统计
+                if (selectedCells.isEmpty() || targets.isEmpty()) return;
+                client.distribute(selectedCells, targets);
+                for (Cell t : targets) pulses.add(new Pulse(t.x, t.y, 12, 0.6));
+                selectedTargets.clear();
+                selectedCells.clear();
+                repaint();
+                return;
             }
+            Simulation.AttackSummary summary = sim.distribute(selectedCells, targets);
+            if (summary == null) return;
 
             // show summary and small sound/pulse
             Toolkit.getDefaultToolkit().beep();
@@ -859,7 +977,7 @@ public class NeonConquest extends JFrame {
             repaint();
         }
 
-        private void showAttackSummary(AttackSummary s) {
+        private void showAttackSummary(Simulation.AttackSummary s) {
             StringBuilder sb = new StringBuilder();
             sb.append("全军出击已发兵: ").append(s.totalSent).append("\n");
             for (Map.Entry<Cell,Integer> e : s.perSource.entrySet()) {
@@ -880,15 +998,14 @@ public class NeonConquest extends JFrame {
         /** 结束游戏，若 isVictory=true 则显示结算页面，否则为中途退出 */
         private void endGame(boolean isVictory, long durationMs) {
             gameEnded = true;
-            // 停止所有计时器与发送器
-            tickTimer.stop();
+            // 停止帧计时器（模拟在分出胜负后不再推进）
             animTimer.stop();
-            for (Sender s : senders) s.stop();
-            senders.clear();
 
             if (isVictory) {
+                shutdown();
+                saveReplay();
                 String timeStr = formatDuration(durationMs);
-                String msg = String.format("胜利！\n游戏时间: %s\n消耗兵力: %d\n\n返回开始界面？", timeStr, totalTroopsSent);
+                String msg = String.format("胜利！\n游戏时间: %s\n消耗兵力: %d\n\n返回开始界面？", timeStr, sim.totalTroopsSent());
                 int r = JOptionPane.showConfirmDialog(this, msg, "结算", JOptionPane.DEFAULT_OPTION);
                 // 返回菜单
                 SwingUtilities.invokeLater(() -> {
@@ -899,20 +1016,52 @@ public class NeonConquest extends JFrame {
             } else {
                 int confirm = JOptionPane.showConfirmDialog(this, "确认退出并返回开始界面？", "确认退出", JOptionPane.YES_NO_OPTION);
                 if (confirm == JOptionPane.YES_OPTION) {
+                    shutdown();
                     SwingUtilities.invokeLater(() -> {
                         JFrame top = (JFrame) SwingUtilities.getWindowAncestor(GamePanel.this);
                         top.dispose();
                         com.david.game.TestGame.main(new String[0]);
                     });
                 } else {
-                    // 如果选择取消，允许恢复（简单重启计时器）
+                    // 如果选择取消，允许恢复（重启计时器，暂停期间不计入模拟时间）
                     gameEnded = false;
-                    tickTimer.start();
+                    lastAnimTime = System.nanoTime();
                     animTimer.start();
                 }
             }
         }
 
+        /** 我方兵营（观战时没有） */
+        private boolean isOwn(Cell c) {
+            return c.owner == playerOwner && playerOwner != Owner.NEUTRAL;
+        }
+
+        /** 停止帧计时器与电脑对手的后台线程，联机时断开与服务器的连接 */
+        void shutdown() {
+            animTimer.stop();
+            if (ai != null) ai.shutdown();
+            if (client != null) {
+                try {
+                    client.close();
+                } catch (java.io.IOException ignored) {
+                    // 已断开
+                }
+            }
+        }
+
+        /** 把本局命令日志写到 replays/neon_yyyyMMdd_HHmmss.ncr（联机时由服务器保存） */
+        void saveReplay() {
+            if (recorder == null) return;
+            String name = new java.text.SimpleDateFormat("yyyyMMdd_HHmmss").format(new java.util.Date());
+            java.nio.file.Path file = java.nio.file.Paths.get("replays", "neon_" + name + ".ncr");
+            try {
+                recorder.save(file);
+                System.out.println("Replay saved: " + file.toAbsolutePath() + " (" + recorder.commandCount() + " commands)");
+            } catch (java.io.IOException ex) {
+                System.err.println("Failed to save replay: " + ex);
+            }
+        }
+
         private String formatDuration(long ms) {
             long s = ms / 1000;
             long mm = s / 60;
@@ -943,12 +1092,7 @@ public class NeonConquest extends JFrame {
             }
             if (dragStartCell != null) {
                 dragPointWorld = wp;
-                hoverTarget = null;
-                for (Cell c : cells) {
-                    double dx = c.x - wp.x;
-                    double dy = c.y - wp.y;
-                    if (dx * dx + dy * dy <= c.radius * c.radius) { hoverTarget = c; break; }
-                }
+                hoverTarget = grid.cellAt(wp.x, wp.y);
                 repaint();
             }
         }
@@ -965,7 +1109,7 @@ public class NeonConquest extends JFrame {
         public void mouseWheelMoved(MouseWheelEvent e) {
             double delta = -e.getPreciseWheelRotation();
             double factor = Math.pow(1.12, delta);
-            scale = Math.max(0.3, Math.min(2.5, scale * factor));
+            scale = Math.max(minScale, Math.min(2.5, scale * factor));
             repaint();
         }
     }
@@ -0,0 +1,284 @@
+package com.david.game;
+
+import com.david.game.NeonConquest.Cell;
+import com.david.game.NeonConquest.Owner;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 联机协议：每帧为 4 字节大端长度 + 内容，内容第一个字节为消息类型，其余整数为无符号 varint。
+ * <pre>
+ * 客户端 -> 服务器（命令，编码与回放日志相同）：
+ *   1 拖拽出兵   来源 id, 目标 id
+ *   2 全军出击   来源数, 来源 id*, 目标 id
+ *   3 分配出击   来源数, 来源 id*, 目标数, 目标 id*
+ * 服务器 -> 客户端：
+ *   0x10 欢迎   座位(归属 ordinal), 每步纳秒, 规则, 兵营数, 每个 x y 半径, 快照长度, 状态快照
+ *   0x11 增量   步号, 出兵数, (来源, 目标, 兵数)*, 到达数, (来源, 目标, 批次数)*,
+ *              兵营变化数, (id, 兵力 &lt;&lt; 2 | 归属)*, 胜者(ordinal + 1，0 为未分胜负)
+ * </pre>
+ * 增量只含本步新出发与到达的批次、兵力或归属变化的兵营；每步都发（没有变化时不到 10 字节），客户端据此按服务器节奏播放。
+ */
+final class NetProtocol {
+    static final byte MSG_WELCOME = 0x10;
+    static final byte MSG_DELTA = 0x11;
+    /** 单帧上限，超过视为协议错误 */
+    static final int MAX_FRAME = 1 << 22;
+
+    private NetProtocol() {
+    }
+
+    /** 给 payload 加上长度前缀，返回可直接写出的缓冲（读模式） */
+    static ByteBuffer frame(ByteArrayOutputStream payload) {
+        ByteBuffer b = ByteBuffer.allocate(4 + payload.size());
+        b.putInt(payload.size());
+        b.put(payload.toByteArray());
+        b.flip();
+        return b;
+    }
+
+    /** 从 in（读模式）取出一个完整帧的内容；不完整时返回 null 且不消耗 */
+    static byte[] nextFrame(ByteBuffer in) throws IOException {
+        if (in.remaining() < 4) return null;
+        int len = in.getInt(in.position());
+        if (len < 1 || len > MAX_FRAME) throw new IOException("Bad frame length " + len);
+        if (in.remaining() < 4 + len) return null;
+        in.position(in.position() + 4);
+        byte[] payload = new byte[len];
+        in.get(payload);
+        return payload;
+    }
+
+    // ---- 命令 ----
+
+    static ByteArrayOutputStream command(byte type, List<Cell> sources, List<Cell> targets) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(16);
+        out.write(type);
+        switch (type) {
+            case ReplayLog.CMD_SEND_HALF:
+                ReplayLog.writeVarint(out, sources.get(0).id);
+                ReplayLog.writeVarint(out, targets.get(0).id);
+                break;
+            case ReplayLog.CMD_ATTACK_ALL:
+                ReplayLog.writeIds(out, sources);
+                ReplayLog.writeVarint(out, targets.get(0).id);
+                break;
+            default:
+                ReplayLog.writeIds(out, sources);
+                ReplayLog.writeIds(out, targets);
+        }
+        return out;
+    }
+
+    /**
+     * 解码客户端命令，只保留属于 seat 的来源，没有可用来源时返回 null。
+     * 格式错误（未知类型、id 越界、个数超过兵营数或剩余字节数、多余字节）抛 IOException。
+     * 返回的命令在服务器的第 tick 步之后生效（与本地操作、回放录制的语义一致）。
+     */
+    static ReplayLog.Command readCommand(byte[] payload, Simulation sim, Owner seat) throws IOException {
+        ByteArrayInputStream in = new ByteArrayInputStream(payload);
+        byte type = (byte) ReplayLog.readByte(in);
+        int n = sim.cells.size();
+        int[] sources, targets;
+        switch (type) {
+            case ReplayLog.CMD_SEND_HALF:
+                sources = new int[]{ReplayLog.readCount(in, n - 1)};
+                targets = new int[]{ReplayLog.readCount(in, n - 1)};
+                break;
+            case ReplayLog.CMD_ATTACK_ALL:
+                sources = readIds(in, n);
+                targets = new int[]{ReplayLog.readCount(in, n - 1)};
+                break;
+            case ReplayLog.CMD_DISTRIBUTE:
+                sources = readIds(in, n);
+                targets = readIds(in, n);
+                break;
+            default:
+                throw new IOException("Unknown command type " + type);
+        }
+        if (in.available() > 0) throw new IOException("Trailing bytes in command");
+        int kept = 0;
+        for (int s : sources) {
+            if (sim.cells.get(s).owner == seat) sources[kept++] = s;
+        }
+        if (kept == 0 || targets.length == 0) return null;
+        return new ReplayLog.Command(sim.tick(), type, java.util.Arrays.copyOf(sources, kept), targets);
+    }
+
+    /** id 列表的个数还受剩余字节数限制（每个 id 至少 1 字节），伪造的长度不会导致大块分配 */
+    private static int[] readIds(ByteArrayInputStream in, int cellCount) throws IOException {
+        return ReplayLog.readIds(in, Math.min(cellCount, in.available()), cellCount);
+    }
+
+    // ---- 欢迎 ----
+
+    static ByteArrayOutputStream welcome(Simulation sim, Owner seat, long tickNanos) {
+        byte[] state = sim.snapshot();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64 + sim.cells.size() * 6 + state.length);
+        out.write(MSG_WELCOME);
+        out.write(seat.ordinal());
+        ReplayLog.writeVarint(out, tickNanos);
+        ReplayLog.writeRules(out, sim.rules);
+        ReplayLog.writeVarint(out, sim.cells.size());
+        for (Cell c : sim.cells) {
+            ReplayLog.writeVarint(out, c.x);
+            ReplayLog.writeVarint(out, c.y);
+            ReplayLog.writeVarint(out, c.radius);
+        }
+        ReplayLog.writeVarint(out, state.length);
+        out.writeBytes(state);
+        return out;
+    }
+
+    /** 客户端收到的欢迎消息：座位、服务器步长与按快照重建的镜像局面 */
+    static final class Welcome {
+        final Owner seat;
+        final long tickNanos;
+        final Simulation mirror;
+
+        Welcome(byte[] payload) throws IOException {
+            ByteArrayInputStream in = new ByteArrayInputStream(payload);
+            if (ReplayLog.readByte(in) != MSG_WELCOME) throw new IOException("Expected welcome");
+            seat = Owner.values()[ReplayLog.readByte(in)];
+            tickNanos = ReplayLog.readVarint(in);
+            mirror = new Simulation(ReplayLog.readRules(in));
+            int n = ReplayLog.readCount(in, in.available());
+            for (int i = 0; i < n; i++) {
+                int x = (int) ReplayLog.readVarint(in), y = (int) ReplayLog.readVarint(in), r = (int) ReplayLog.readVarint(in);
+                mirror.addCell(new Cell(x, y, r, Owner.NEUTRAL, 0));
+            }
+            byte[] state = in.readNBytes(ReplayLog.readCount(in, in.available()));
+            mirror.restore(state);
+            mirror.clearSenders();
+        }
+    }
+
+    // ---- 增量 ----
+
+    /** 服务器端增量编码器：收集每步的出兵与到达，并与上一步的兵营状态比较 */
+    static final class DeltaEncoder implements Simulation.BatchListener {
+        private final Simulation sim;
+        private final int[] force;
+        private final Owner[] owner;
+        private final List<Simulation.Arrow> spawned = new ArrayList<>();
+        private final LongObjectMap<int[]> spawnCounts = new LongObjectMap<>();
+        private final List<Simulation.Arrow> arrived = new ArrayList<>();
+        private int[] arrivedBatches = new int[16];
+
+        DeltaEncoder(Simulation sim) {
+            this.sim = sim;
+            int n = sim.cells.size();
+            force = new int[n];
+            owner = new Owner[n];
+            for (int i = 0; i < n; i++) {
+                force[i] = sim.cells.get(i).force;
+                owner[i] = sim.cells.get(i).owner;
+            }
+            sim.setBatchListener(this);
+        }
+
+        @Override
+        public void onSpawn(Simulation.Arrow arrow, int count) {
+            int[] c = spawnCounts.get(arrow.key);
+            if (c == null) {
+                spawnCounts.put(arrow.key, c = new int[1]);
+                spawned.add(arrow);
+            }
+            c[0] += count;
+        }
+
+        @Override
+        public void onArrive(Simulation.Arrow arrow, int batches) {
+            if (arrived.size() == arrivedBatches.length) arrivedBatches = java.util.Arrays.copyOf(arrivedBatches, arrivedBatches.length * 2);
+            arrivedBatches[arrived.size()] = batches;
+            arrived.add(arrow);
+        }
+
+        /**
+         * 编码当前步的增量并清空收集，在 sim.step() 之后调用。
+         * 两次 step 之间的命令（全军出击预扣兵力）会体现在下一条增量的兵营变化里。
+         */
+        ByteArrayOutputStream encode() {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(16 + spawned.size() * 4 + arrived.size() * 4);
+            out.write(MSG_DELTA);
+            ReplayLog.writeVarint(out, sim.tick());
+            ReplayLog.writeVarint(out, spawned.size());
+            for (Simulation.Arrow a : spawned) {
+                ReplayLog.writeVarint(out, a.source.id);
+                ReplayLog.writeVarint(out, a.target.id);
+                ReplayLog.writeVarint(out, spawnCounts.get(a.key)[0]);
+            }
+            ReplayLog.writeVarint(out, arrived.size());
+            for (int i = 0; i < arrived.size(); i++) {
+                Simulation.Arrow a = arrived.get(i);
+                ReplayLog.writeVarint(out, a.source.id);
+                ReplayLog.writeVarint(out, a.target.id);
+                ReplayLog.writeVarint(out, arrivedBatches[i]);
+            }
+            int changed = 0;
+            for (int i = 0; i < force.length; i++) {
+                Cell c = sim.cells.get(i);
+                if (c.force != force[i] || c.owner != owner[i]) changed++;
+            }
+            ReplayLog.writeVarint(out, changed);
+            for (int i = 0; i < force.length; i++) {
+                Cell c = sim.cells.get(i);
+                if (c.force == force[i] && c.owner == owner[i]) continue;
+                force[i] = c.force;
+                owner[i] = c.owner;
+                ReplayLog.writeVarint(out, i);
+                ReplayLog.writeVarint(out, ((zigzag(c.force) & 0xFFFFFFFFL) << 2) | c.owner.ordinal());
+            }
+            out.write(sim.winner() == null ? 0 : sim.winner().ordinal() + 1);
+            spawned.clear();
+            spawnCounts.clear();
+            arrived.clear();
+            return out;
+        }
+    }
+
+    /** 增量的步号 */
+    static long deltaTick(byte[] payload) throws IOException {
+        ByteArrayInputStream in = new ByteArrayInputStream(payload, 1, payload.length - 1);
+        return ReplayLog.readVarint(in);
+    }
+
+    /** 把一条增量应用到镜像上；步号必须紧接镜像的当前步 */
+    static void applyDelta(Simulation mirror, byte[] payload) throws IOException {
+        ByteArrayInputStream in = new ByteArrayInputStream(payload, 1, payload.length - 1);
+        long tick = ReplayLog.readVarint(in);
+        if (tick != mirror.tick() + 1) throw new IOException("Delta for tick " + tick + " after " + mirror.tick());
+        List<Cell> cells = mirror.cells;
+        mirror.mirrorTick(tick, null);
+        // 与服务器 step 内的顺序一致：先出兵、后到达
+        for (int i = (int) ReplayLog.readVarint(in); i > 0; i--) {
+            Cell s = cells.get((int) ReplayLog.readVarint(in)), t = cells.get((int) ReplayLog.readVarint(in));
+            mirror.mirrorSpawn(s, t, (int) ReplayLog.readVarint(in));
+        }
+        for (int i = (int) ReplayLog.readVarint(in); i > 0; i--) {
+            Cell s = cells.get((int) ReplayLog.readVarint(in)), t = cells.get((int) ReplayLog.readVarint(in));
+            mirror.mirrorArrive(s, t, (int) ReplayLog.readVarint(in));
+        }
+        for (int i = (int) ReplayLog.readVarint(in); i > 0; i--) {
+            Cell c = cells.get((int) ReplayLog.readVarint(in));
+            long v = ReplayLog.readVarint(in);
+            c.owner = Owner.values()[(int) (v & 3)];
+            c.force = unzigzag((int) (v >>> 2));
+        }
+        int w = ReplayLog.readByte(in);
+        if (w != 0) mirror.mirrorTick(tick, Owner.values()[w - 1]);
+    }
+
+    private static int zigzag(int v) {
+        return (v << 1) ^ (v >> 31);
+    }
+
+    private static int unzigzag(int v) {
+        return (v >>> 1) ^ -(v & 1);
+    }
+}
@@ -0,0 +1,110 @@
+package com.david.game;
+
+import com.david.game.NeonConquest.Cell;
+import com.david.game.NeonConquest.Owner;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 本机联机测试：在回环地址上启动 {@link GameServer}（加速推进），连上 RED、BLUE 两个由 {@link AiPlayer} 操作的客户端
+ * 和若干观战客户端，各自在独立线程上收增量、下命令，直到分出胜负。
+ * <p>
+ * 结束后逐个校验每个客户端的镜像与服务器的权威局面一致（步号、胜者、发兵总数、各兵营兵力与归属、在途批次），
+ * 服务器录制的回放也要能重现同一结局；最后统计每步增量的平均大小与完整快照的对比。
+ * <p>
+ * 用法：{@code java -cp out com.david.game.NetworkBenchmark [观战客户端数=2] [加速倍数=10] [兵营数=40]}
+ */
+public class NetworkBenchmark {
+    public static void main(String[] args) throws Exception {
+        int spectators = args.length > 0 ? Integer.parseInt(args[0]) : 2;
+        double speed = args.length > 1 ? Double.parseDouble(args[1]) : 10;
+        int cells = args.length > 2 ? Integer.parseInt(args[2]) : 40;
+
+        Simulation sim = Simulation.generate(5, cells);
+        GameServer server = new GameServer(sim, 0, 2, Math.round(1e9 / Simulation.TICKS_PER_SECOND / speed));
+        Thread serverThread = new Thread(server, "server");
+        serverThread.start();
+
+        List<GameClient> clients = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        List<Throwable> errors = Collections.synchronizedList(new ArrayList<>());
+        for (int i = 0; i < 2 + spectators; i++) {
+            GameClient c = GameClient.connect("127.0.0.1", server.port());
+            clients.add(c);
+            Thread t = new Thread(() -> {
+                try {
+                    play(c);
+                } catch (Throwable ex) {
+                    errors.add(ex);
+                }
+            }, "client-" + i + "-" + c.seat());
+            threads.add(t);
+        }
+        long t0 = System.nanoTime();
+        for (Thread t : threads) t.start();
+        serverThread.join();
+        for (Thread t : threads) t.join(10_000);
+        double wall = (System.nanoTime() - t0) / 1e9;
+        if (!errors.isEmpty()) throw new IllegalStateException("Client failed", errors.get(0));
+
+        for (GameClient c : clients) {
+            String diff = compare(sim, c.mirror());
+            if (diff != null) throw new IllegalStateException(c.seat() + " client diverged: " + diff);
+        }
+        // 服务器录下的命令（按到达时的步号）回放后应得到同一结局
+        ReplayPlayer replay = new ReplayPlayer(ReplayLog.read(new java.io.ByteArrayInputStream(server.recorder().finish())));
+        replay.runToEnd();
+        if (!replay.matchesRecording()) throw new IllegalStateException("Server replay diverged");
+        int snapshotBytes = sim.snapshot().length;
+        System.out.printf("winner %s after %.1f s simulated (%.1f s wall, %.0fx), %d commands%n",
+                sim.winner(), sim.elapsedMillis() / 1000.0, wall, sim.elapsedMillis() / 1000.0 / wall, server.commandsApplied());
+        System.out.printf("%d clients in sync with the server, replay matches; %d deltas averaging %.1f bytes (full snapshot %d bytes), %.1f KB/s per client at 20 ticks/s%n",
+                clients.size(), server.deltasSent(), server.averageDeltaBytes(), snapshotBytes,
+                server.averageDeltaBytes() * Simulation.TICKS_PER_SECOND / 1024);
+    }
+
+    /** 客户端线程：收增量直到连接关闭；执 RED / BLUE 时每秒（按镜像步数）由 AI 决策一次并把命令发给服务器 */
+    private static void play(GameClient c) throws Exception {
+        AiPlayer ai = c.seat() == Owner.NEUTRAL ? null : new AiPlayer(c.seat(), AiPlayer.Difficulty.EASY);
+        Simulation mirror = c.mirror();
+        long nextDecision = AiPlayer.DECISION_TICKS;
+        while (c.isConnected() || c.latestTick() > mirror.tick()) {
+            c.poll(System.nanoTime());
+            if (ai != null && !mirror.isOver() && mirror.tick() >= nextDecision) {
+                nextDecision = mirror.tick() + AiPlayer.DECISION_TICKS;
+                AiPlayer.Move m = ai.decide(mirror);
+                if (m != null && mirror.cells.get(m.source).owner == c.seat()) {
+                    Cell s = mirror.cells.get(m.source), t = mirror.cells.get(m.target);
+                    if (m.allIn) c.attackAll(Collections.singletonList(s), t);
+                    else c.sendHalf(s, t);
+                }
+            }
+            Thread.sleep(1);
+        }
+        c.close();
+    }
+
+    /** 镜像与权威局面的第一处差异，一致时返回 null（发送器与箭头粗细不同步，不比较） */
+    private static String compare(Simulation server, Simulation mirror) {
+        if (server.tick() != mirror.tick()) return "tick " + server.tick() + " vs " + mirror.tick();
+        if (server.winner() != mirror.winner()) return "winner " + server.winner() + " vs " + mirror.winner();
+        if (server.totalTroopsSent() != mirror.totalTroopsSent()) return "troops sent " + server.totalTroopsSent() + " vs " + mirror.totalTroopsSent();
+        for (int i = 0; i < server.cells.size(); i++) {
+            Cell a = server.cells.get(i), b = mirror.cells.get(i);
+            if (a.force != b.force || a.owner != b.owner) return "cell " + i + ": " + a.owner + "/" + a.force + " vs " + b.owner + "/" + b.force;
+        }
+        if (server.arrows.size() != mirror.arrows.size()) return "arrows " + server.arrows.size() + " vs " + mirror.arrows.size();
+        for (Simulation.Arrow a : server.arrows) {
+            Simulation.Arrow b = mirror.arrow(mirror.cells.get(a.source.id), mirror.cells.get(a.target.id));
+            if (b == null || a.batchCount() != b.batchCount()) return "arrow " + a.source.id + " -> " + a.target.id;
+            for (int i = 0; i < a.batchCount(); i++) {
+                if (a.batchTroops(i) != b.batchTroops(i) || a.batchSpawnTick(i) != b.batchSpawnTick(i)) {
+                    return "batch " + i + " of " + a.source.id + " -> " + a.target.id;
+                }
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,359 @@
+package com.david.game;
+
+import com.david.game.NeonConquest.Cell;
+import com.david.game.NeonConquest.Owner;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * NeonConquest 对局的二进制命令日志：只记录初始地图与玩家命令（带生效步号），
+ * 配合确定性的 {@link Simulation} 即可完整重现整局（见 {@link ReplayPlayer}）。
+ * <p>
+ * 文件格式（整数均为无符号 varint）：
+ * <pre>
+ * "NCRP" 版本(1 字节)
+ * 地图：类型(1 字节) + 0 示例 | 1 生成（seed: 8 字节, 兵营数） | 2 逐个（兵营数, 每个 x y 半径 归属 兵力）
+ * 规则（版本 2 起）：0 默认 | 1 再生间隔, 速度(double 8 字节), 出兵间隔, 出兵比例(double 8 字节)
+ * 命令*：距上一命令的步数差, 类型(1 字节), 参数
+ *   1 拖拽出兵     来源 id, 目标 id
+ *   2 全军出击     来源数, 来源 id*, 目标 id
+ *   3 分配出击     来源数, 来源 id*, 目标数, 目标 id*
+ * 结尾：步数差, 0xFF, 胜者(ordinal + 1，0 为未分胜负), 发兵总数
+ * </pre>
+ * 一条命令通常 4~10 字节，一局几百条命令也只有几 KB。
+ */
+public final class ReplayLog {
+    static final int MAP_SAMPLE = 0;
+    static final int MAP_GENERATED = 1;
+    static final int MAP_CELLS = 2;
+
+    public static final byte CMD_SEND_HALF = 1;
+    public static final byte CMD_ATTACK_ALL = 2;
+    public static final byte CMD_DISTRIBUTE = 3;
+    private static final int CMD_END = 0xFF;
+
+    private static final byte[] MAGIC = {'N', 'C', 'R', 'P'};
+    private static final int VERSION = 2;
+
+    /** 一条命令：在第 tick 步之后生效；sources / targets 为兵营 id（拖拽与全军出击只有一个目标） */
+    public static final class Command {
+        public final long tick;
+        public final byte type;
+        public final int[] sources;
+        public final int[] targets;
+
+        Command(long tick, byte type, int[] sources, int[] targets) {
+            this.tick = tick;
+            this.type = type;
+            this.sources = sources;
+            this.targets = targets;
+        }
+
+        /** 在 sim 上执行该命令 */
+        public void apply(Simulation sim) {
+            List<Cell> cells = sim.cells;
+            switch (type) {
+                case CMD_SEND_HALF:
+                    sim.sendHalf(cells.get(sources[0]), cells.get(targets[0]));
+                    break;
+                case CMD_ATTACK_ALL:
+                    sim.attackAll(select(cells, sources), cells.get(targets[0]));
+                    break;
+                case CMD_DISTRIBUTE:
+                    sim.distribute(select(cells, sources), select(cells, targets));
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown command type " + type);
+            }
+        }
+
+        private static List<Cell> select(List<Cell> cells, int[] ids) {
+            List<Cell> out = new ArrayList<>(ids.length);
+            for (int id : ids) out.add(cells.get(id));
+            return out;
+        }
+    }
+
+    // 地图
+    private final int mapKind;
+    private final long mapSeed;
+    private final int[][] mapCells; // MAP_CELLS: {x, y, radius, owner, force}
+    private final int cellCount;
+    private final Simulation.Rules rules;
+    // 命令与结果
+    private final List<Command> commands;
+    /** 录制结束时的步数、胜者（可能为 null）与发兵总数，用于回放校验 */
+    public final long endTick;
+    public final Owner winner;
+    public final int totalTroopsSent;
+
+    private ReplayLog(int mapKind, long mapSeed, int[][] mapCells, int cellCount, Simulation.Rules rules, List<Command> commands,
+                      long endTick, Owner winner, int totalTroopsSent) {
+        this.mapKind = mapKind;
+        this.mapSeed = mapSeed;
+        this.mapCells = mapCells;
+        this.cellCount = cellCount;
+        this.rules = rules;
+        this.commands = Collections.unmodifiableList(commands);
+        this.endTick = endTick;
+        this.winner = winner;
+        this.totalTroopsSent = totalTroopsSent;
+    }
+
+    public List<Command> commands() {
+        return commands;
+    }
+
+    /** 按日志重建第 0 步的初始局面 */
+    public Simulation newSimulation() {
+        Simulation sim;
+        switch (mapKind) {
+            case MAP_SAMPLE:
+                sim = Simulation.sample(rules);
+                break;
+            case MAP_GENERATED:
+                sim = Simulation.generate(mapSeed, cellCount, rules);
+                break;
+            default:
+                sim = new Simulation(rules);
+                for (int[] c : mapCells) sim.addCell(new Cell(c[0], c[1], c[2], Owner.values()[c[3]], c[4]));
+        }
+        if (sim.cells.size() != cellCount) throw new IllegalStateException("Map does not match replay: " + sim.cells.size() + " cells");
+        return sim;
+    }
+
+    public static ReplayLog read(Path file) throws IOException {
+        try (InputStream in = new java.io.BufferedInputStream(Files.newInputStream(file))) {
+            return read(in);
+        }
+    }
+
+    public static ReplayLog read(InputStream in) throws IOException {
+        byte[] magic = in.readNBytes(4);
+        if (!Arrays.equals(magic, MAGIC)) throw new IOException("Not a NeonConquest replay");
+        int version = in.read();
+        if (version != 1 && version != VERSION) throw new IOException("Unsupported replay version " + version);
+        int kind = readByte(in);
+        long seed = 0;
+        int count;
+        int[][] cells = null;
+        if (kind == MAP_SAMPLE) {
+            count = Simulation.sample().cells.size();
+        } else if (kind == MAP_GENERATED) {
+            seed = readLong(in);
+            count = (int) readVarint(in);
+        } else if (kind == MAP_CELLS) {
+            count = (int) readVarint(in);
+            cells = new int[count][5];
+            for (int[] c : cells) {
+                for (int k = 0; k < 5; k++) c[k] = (int) readVarint(in);
+            }
+        } else {
+            throw new IOException("Unknown map kind " + kind);
+        }
+        Simulation.Rules rules = version >= 2 ? readRules(in) : Simulation.Rules.DEFAULT;
+
+        List<Command> commands = new ArrayList<>();
+        long tick = 0;
+        while (true) {
+            tick += readVarint(in);
+            int type = readByte(in);
+            if (type == CMD_END) {
+                int w = (int) readVarint(in);
+                int sent = (int) readVarint(in);
+                return new ReplayLog(kind, seed, cells, count, rules, commands, tick, w == 0 ? null : Owner.values()[w - 1], sent);
+            }
+            int[] sources, targets;
+            switch (type) {
+                case CMD_SEND_HALF:
+                    sources = new int[]{readCount(in, count - 1)};
+                    targets = new int[]{readCount(in, count - 1)};
+                    break;
+                case CMD_ATTACK_ALL:
+                    sources = readIds(in, count, count);
+                    targets = new int[]{readCount(in, count - 1)};
+                    break;
+                case CMD_DISTRIBUTE:
+                    sources = readIds(in, count, count);
+                    targets = readIds(in, count, count);
+                    break;
+                default:
+                    throw new IOException("Unknown command type " + type);
+            }
+            commands.add(new Command(tick, (byte) type, sources, targets));
+        }
+    }
+
+    /**
+     * 录制器：挂到第 0 步的模拟上，之后经由 {@link Simulation} 下达的命令都会被编码记录。
+     * 对局结束（或中途退出）时调用 {@link #finish()} / {@link #save(Path)} 写出日志。
+     */
+    public static final class Recorder implements Simulation.CommandListener {
+        private final Simulation sim;
+        private final ByteArrayOutputStream buf = new ByteArrayOutputStream(1024);
+        private long lastTick = 0;
+        private int commandCount = 0;
+
+        public Recorder(Simulation sim) {
+            if (sim.tick() != 0) throw new IllegalStateException("Recording must start at tick 0, now " + sim.tick());
+            this.sim = sim;
+            buf.writeBytes(MAGIC);
+            buf.write(VERSION);
+            buf.write(sim.mapKind);
+            if (sim.mapKind == MAP_GENERATED) {
+                writeLong(buf, sim.mapSeed);
+                writeVarint(buf, sim.cells.size());
+            } else if (sim.mapKind == MAP_CELLS) {
+                writeVarint(buf, sim.cells.size());
+                for (Cell c : sim.cells) {
+                    writeVarint(buf, c.x);
+                    writeVarint(buf, c.y);
+                    writeVarint(buf, c.radius);
+                    writeVarint(buf, c.owner.ordinal());
+                    writeVarint(buf, c.force);
+                }
+            }
+            writeRules(buf, sim.rules);
+            sim.setCommandListener(this);
+        }
+
+        public int commandCount() {
+            return commandCount;
+        }
+
+        @Override
+        public void onSendHalf(long tick, Cell source, Cell target) {
+            header(tick, CMD_SEND_HALF);
+            writeVarint(buf, source.id);
+            writeVarint(buf, target.id);
+        }
+
+        @Override
+        public void onAttackAll(long tick, List<Cell> sources, Cell target) {
+            header(tick, CMD_ATTACK_ALL);
+            writeIds(buf, sources);
+            writeVarint(buf, target.id);
+        }
+
+        @Override
+        public void onDistribute(long tick, List<Cell> sources, List<Cell> targets) {
+            header(tick, CMD_DISTRIBUTE);
+            writeIds(buf, sources);
+            writeIds(buf, targets);
+        }
+
+        private void header(long tick, byte type) {
+            writeVarint(buf, tick - lastTick);
+            buf.write(type);
+            lastTick = tick;
+            commandCount++;
+        }
+
+        /** 以当前状态收尾，返回完整日志字节（可多次调用，不影响继续录制） */
+        public byte[] finish() {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(buf.size() + 16);
+            out.writeBytes(buf.toByteArray());
+            writeVarint(out, sim.tick() - lastTick);
+            out.write(CMD_END);
+            writeVarint(out, sim.winner() == null ? 0 : sim.winner().ordinal() + 1);
+            writeVarint(out, sim.totalTroopsSent());
+            return out.toByteArray();
+        }
+
+        public void save(Path file) throws IOException {
+            Path dir = file.toAbsolutePath().getParent();
+            if (dir != null) Files.createDirectories(dir);
+            Files.write(file, finish());
+        }
+    }
+
+    // ---- 编解码（联机协议 NetProtocol 共用） ----
+
+    /** 规则：0 为默认；1 后跟再生间隔、速度、出兵间隔、出兵比例 */
+    static void writeRules(ByteArrayOutputStream out, Simulation.Rules rules) {
+        if (rules.isDefault()) {
+            out.write(0);
+            return;
+        }
+        out.write(1);
+        writeVarint(out, rules.regenIntervalTicks);
+        writeLong(out, Double.doubleToLongBits(rules.troopSpeed));
+        writeVarint(out, rules.sendIntervalTicks);
+        writeLong(out, Double.doubleToLongBits(rules.sendFraction));
+    }
+
+    static Simulation.Rules readRules(InputStream in) throws IOException {
+        if (readByte(in) == 0) return Simulation.Rules.DEFAULT;
+        int regen = (int) readVarint(in);
+        double speed = Double.longBitsToDouble(readLong(in));
+        int send = (int) readVarint(in);
+        return new Simulation.Rules(regen, speed, send, Double.longBitsToDouble(readLong(in)));
+    }
+
+    static void writeVarint(OutputStream out, long v) {
+        try {
+            while ((v & ~0x7FL) != 0) {
+                out.write((int) ((v & 0x7F) | 0x80));
+                v >>>= 7;
+            }
+            out.write((int) v);
+        } catch (IOException ex) {
+            throw new java.io.UncheckedIOException(ex);
+        }
+    }
+
+    static void writeLong(ByteArrayOutputStream out, long v) {
+        for (int i = 7; i >= 0; i--) out.write((int) (v >>> (i * 8)));
+    }
+
+    static long readLong(InputStream in) throws IOException {
+        long v = 0;
+        for (int i = 0; i < 8; i++) v = (v << 8) | readByte(in);
+        return v;
+    }
+
+    static void writeIds(OutputStream out, List<Cell> cells) {
+        writeVarint(out, cells.size());
+        for (Cell c : cells) writeVarint(out, c.id);
+    }
+
+    static long readVarint(InputStream in) throws IOException {
+        long v = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = readByte(in);
+            v |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return v;
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    /** 读取 [0, max] 内的无符号整数，越界视为数据损坏（避免按伪造的长度分配数组） */
+    static int readCount(InputStream in, int max) throws IOException {
+        long v = readVarint(in);
+        if (v < 0 || v > max) throw new IOException("Value " + v + " out of range [0, " + max + "]");
+        return (int) v;
+    }
+
+    /** 兵营 id 列表：个数不超过 maxIds，每个 id 在 [0, cellCount) 内 */
+    static int[] readIds(InputStream in, int maxIds, int cellCount) throws IOException {
+        int[] ids = new int[readCount(in, maxIds)];
+        for (int i = 0; i < ids.length; i++) ids[i] = readCount(in, cellCount - 1);
+        return ids;
+    }
+
+    static int readByte(InputStream in) throws IOException {
+        int b = in.read();
+        if (b < 0) throw new EOFException("Truncated replay");
+        return b;
+    }
+}
@@ -0,0 +1,129 @@
+package com.david.game;
+
+import com.david.game.NeonConquest.Cell;
+import com.david.game.NeonConquest.Owner;
+
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 无界面回放：按 {@link ReplayLog} 重建初始局面，在记录的步号执行命令并推进确定性模拟，速度只受 CPU 限制。
+ * <p>
+ * 前进时每 {@link #SNAPSHOT_INTERVAL_TICKS} 步保存一次状态快照；{@link #seek(long)} 向后跳转时
+ * 从不晚于目标的最近快照恢复再前进，最多重放一个快照间隔。
+ * <p>
+ * 用法：{@code java -cp out com.david.game.ReplayPlayer <回放文件> [--seek 秒]}
+ */
+public class ReplayPlayer {
+    /** 快照间隔：30 秒模拟时间 */
+    public static final int SNAPSHOT_INTERVAL_TICKS = 30 * Simulation.TICKS_PER_SECOND;
+
+    private final ReplayLog log;
+    private final List<ReplayLog.Command> commands;
+    private final Simulation sim;
+    private int cursor = 0; // 下一条待执行命令
+    private final TreeMap<Long, Snapshot> snapshots = new TreeMap<>();
+
+    /** 第 tick 步的状态（该步命令执行前）与对应的命令游标 */
+    private static final class Snapshot {
+        final byte[] state;
+        final int cursor;
+
+        Snapshot(byte[] state, int cursor) {
+            this.state = state;
+            this.cursor = cursor;
+        }
+    }
+
+    public ReplayPlayer(ReplayLog log) {
+        this.log = log;
+        this.commands = log.commands();
+        this.sim = log.newSimulation();
+    }
+
+    public Simulation simulation() {
+        return sim;
+    }
+
+    public long tick() {
+        return sim.tick();
+    }
+
+    /** 前进到第 target 步（对局提前结束则停在结束步） */
+    public void advanceTo(long target) {
+        while (sim.tick() < target && !sim.isOver()) {
+            long t = sim.tick();
+            if (t % SNAPSHOT_INTERVAL_TICKS == 0 && !snapshots.containsKey(t)) {
+                snapshots.put(t, new Snapshot(sim.snapshot(), cursor));
+            }
+            while (cursor < commands.size() && commands.get(cursor).tick <= t) {
+                commands.get(cursor++).apply(sim);
+            }
+            sim.step();
+        }
+    }
+
+    /** 跳到第 target 步：向前直接推进，向后从最近的快照恢复后推进 */
+    public void seek(long target) {
+        if (target < sim.tick()) {
+            Map.Entry<Long, Snapshot> e = snapshots.floorEntry(target);
+            // 第 0 步总在首次前进时存档
+            sim.restore(e.getValue().state);
+            cursor = e.getValue().cursor;
+        }
+        advanceTo(target);
+    }
+
+    /** 播放到录制结束的步数 */
+    public void runToEnd() {
+        advanceTo(log.endTick);
+    }
+
+    /** 回放结果是否与录制时一致（结束步、胜者、发兵总数） */
+    public boolean matchesRecording() {
+        return sim.tick() == log.endTick && sim.winner() == log.winner && sim.totalTroopsSent() == log.totalTroopsSent;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("用法: java -cp out com.david.game.ReplayPlayer <回放文件> [--seek 秒]");
+            System.exit(1);
+        }
+        ReplayLog log = ReplayLog.read(Paths.get(args[0]));
+        double seekSeconds = -1;
+        for (int i = 1; i < args.length; i++) {
+            if ("--seek".equals(args[i])) seekSeconds = Double.parseDouble(args[++i]);
+        }
+
+        ReplayPlayer player = new ReplayPlayer(log);
+        long t0 = System.nanoTime();
+        player.runToEnd();
+        double s = (System.nanoTime() - t0) / 1e9;
+        Simulation sim = player.simulation();
+        System.out.printf("Replayed %d commands, %.1f s of play in %.3f s (%.0fx real time)%n",
+                log.commands().size(), sim.elapsedMillis() / 1000.0, s, sim.elapsedMillis() / 1000.0 / Math.max(s, 1e-9));
+        System.out.printf("winner %s, troops sent %d -> %s%n", sim.winner(), sim.totalTroopsSent(),
+                player.matchesRecording() ? "matches recording" : "DIFFERS from recording (" + log.winner + ", " + log.totalTroopsSent + ")");
+
+        if (seekSeconds >= 0) {
+            t0 = System.nanoTime();
+            player.seek(Math.round(seekSeconds * Simulation.TICKS_PER_SECOND));
+            System.out.printf("seek to %.1f s took %.2f ms: %s%n", seekSeconds, (System.nanoTime() - t0) / 1e6, summary(sim));
+        }
+        if (!player.matchesRecording() && seekSeconds < 0) System.exit(2);
+    }
+
+    /** 各阵营兵营数、兵力与在途兵力 */
+    static String summary(Simulation sim) {
+        int[] cells = new int[Owner.values().length], force = new int[Owner.values().length];
+        for (Cell c : sim.cells) {
+            cells[c.owner.ordinal()]++;
+            force[c.owner.ordinal()] += c.force;
+        }
+        StringBuilder sb = new StringBuilder("t=" + sim.elapsedMillis() / 1000.0 + "s");
+        for (Owner o : Owner.values()) sb.append(' ').append(o).append(' ').append(cells[o.ordinal()]).append(" cells/").append(force[o.ordinal()]);
+        return sb.append(", in flight ").append(sim.inFlight()).toString();
+    }
+}
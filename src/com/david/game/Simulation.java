@@ -0,0 +1,724 @@
+package com.david.game;
+
+import com.david.game.NeonConquest.Cell;
+import com.david.game.NeonConquest.Owner;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * NeonConquest 的无界面模拟核心：固定步长、确定性推进，不依赖 Swing。
+ * <p>
+ * 兵营再生、发送器按间隔出兵、在途批次到达结算、胜负判定都在 {@link #step()} 中按模拟时间推进，
+ * 每步固定 {@link #DT} 秒，因此同样的初始局面加同样的命令序列总会得到同样的结果。
+ * 所有发送器由同一个按模拟步排序的事件队列（{@link SpawnQueue}）驱动，每次出兵 O(log n)；在途批次存放在每个箭头的
+ * 原始类型环形缓冲中（{@link Arrow}），稳态下步进本身不分配对象。
+ * 界面（GamePanel）只把真实时间累积成整数步并渲染当前状态；无界面时直接循环 {@link #step()}，
+ * 即可远快于实时地跑完整局（见 {@link SimulationBenchmark}）。
+ * <p>
+ * 非线程安全：同一局只应由一个线程推进与读取（界面中为 EDT）。
+ */
+public class Simulation {
+    /** 每秒模拟步数 */
+    public static final int TICKS_PER_SECOND = 20;
+    /** 每步的模拟时长（秒） */
+    public static final double DT = 1.0 / TICKS_PER_SECOND;
+    /** 默认兵营再生间隔：每秒 +1 */
+    public static final int REGEN_INTERVAL_TICKS = TICKS_PER_SECOND;
+    /** 默认发送器出兵间隔：250ms 一个（每秒 4 个） */
+    public static final int SEND_INTERVAL_TICKS = TICKS_PER_SECOND / 4;
+    /** 默认部队移动速度（像素/秒） */
+    public static final double TROOP_SPEED = 120.0;
+    /** 默认拖拽出兵比例：派出一半兵力 */
+    public static final double SEND_FRACTION = 0.5;
+    /** 程序化地图的网格间距（像素） */
+    public static final int MAP_PITCH = 100;
+
+    /** 本局规则（再生、速度、出兵间隔与比例），对局中不变 */
+    public final Rules rules;
+
+    // 兵营只能通过 addCell 加入（分配稳定 id），对外只读
+    private final List<Cell> cellList = new ArrayList<>();
+    public final List<Cell> cells = Collections.unmodifiableList(cellList);
+    // 用聚合箭头表示移动（每对 source -> target 一个）；arrowIndex 以 (sourceId, targetId) 打包的 long 为键
+    public final List<Arrow> arrows = new ArrayList<>();
+    private final LongObjectMap<Arrow> arrowIndex = new LongObjectMap<>();
+    private final SpawnQueue spawns = new SpawnQueue();
+
+    private CellGrid index;
+    private int indexedCells = -1;
+
+    private long tick = 0L;
+    private int totalTroopsSent = 0;
+    private Owner winner = null;
+
+    // 地图来源（回放文件据此重建初始局面）：示例 / 按种子生成 / 逐个加入
+    int mapKind = ReplayLog.MAP_CELLS;
+    long mapSeed;
+    private CommandListener listener;
+    private BatchListener batchListener;
+
+    /** 命令监听器：命令生效前以当前步号回调（用于录制回放）。命令在第 tick 步之后、第 tick+1 步之前生效。 */
+    public interface CommandListener {
+        void onSendHalf(long tick, Cell source, Cell target);
+
+        void onAttackAll(long tick, List<Cell> sources, Cell target);
+
+        void onDistribute(long tick, List<Cell> sources, List<Cell> targets);
+    }
+
+    /** 默认规则的空局面 */
+    public Simulation() {
+        this(Rules.DEFAULT);
+    }
+
+    /** 指定规则的空局面 */
+    public Simulation(Rules rules) {
+        this.rules = rules;
+    }
+
+    public void setCommandListener(CommandListener listener) {
+        this.listener = listener;
+    }
+
+    /** 批次监听器：在 {@link #step()} 中出兵与到达时回调（联机服务器据此生成增量）。同一步内先出兵、后到达。 */
+    public interface BatchListener {
+        /** arrow 在当前步新出发 count 个兵（同一步可能多次回调，客户端合并为一个批次） */
+        void onSpawn(Arrow arrow, int count);
+
+        /** arrow 头部 batches 个批次在当前步到达 */
+        void onArrive(Arrow arrow, int batches);
+    }
+
+    public void setBatchListener(BatchListener batchListener) {
+        this.batchListener = batchListener;
+    }
+
+    /** 默认示例局面（与原界面一致的 5 个兵营） */
+    public static Simulation sample() {
+        return sample(Rules.DEFAULT);
+    }
+
+    /** 指定规则的示例局面 */
+    public static Simulation sample(Rules rules) {
+        Simulation sim = new Simulation(rules);
+        sim.addCell(new Cell(150, 150, 32, Owner.RED, 10));
+        sim.addCell(new Cell(400, 120, 28, Owner.NEUTRAL, 0));
+        sim.addCell(new Cell(650, 180, 40, Owner.BLUE, 20));
+        sim.addCell(new Cell(200, 400, 32, Owner.NEUTRAL, 0));
+        sim.addCell(new Cell(500, 380, 36, Owner.NEUTRAL, 0));
+        sim.mapKind = ReplayLog.MAP_SAMPLE;
+        return sim;
+    }
+
+    /**
+     * 程序化生成大地图：count 个兵营放在间距 {@value #MAP_PITCH} 像素的抖动网格上（互不重叠），
+     * 左上角第一个为 RED、右下角最后一个为 BLUE，其余为带少量守军的中立兵营。同一 seed 生成同一地图。
+     */
+    public static Simulation generate(long seed, int count) {
+        return generate(seed, count, Rules.DEFAULT);
+    }
+
+    /** 指定规则的程序化地图 */
+    public static Simulation generate(long seed, int count, Rules rules) {
+        if (count < 2) throw new IllegalArgumentException("count must be >= 2: " + count);
+        java.util.Random rnd = new java.util.Random(seed);
+        int cols = (int) Math.ceil(Math.sqrt(count * 4.0 / 3.0));
+        Simulation sim = new Simulation(rules);
+        for (int i = 0; i < count; i++) {
+            int radius = 16 + rnd.nextInt(21);
+            int jitter = MAP_PITCH / 2 - radius - 6;
+            int x = (i % cols) * MAP_PITCH + MAP_PITCH / 2 + rnd.nextInt(2 * jitter + 1) - jitter;
+            int y = (i / cols) * MAP_PITCH + MAP_PITCH / 2 + rnd.nextInt(2 * jitter + 1) - jitter;
+            Owner owner = i == 0 ? Owner.RED : i == count - 1 ? Owner.BLUE : Owner.NEUTRAL;
+            int force = owner == Owner.NEUTRAL ? rnd.nextInt(11) : 30;
+            sim.addCell(new Cell(x, y, radius, owner, force));
+        }
+        sim.mapKind = ReplayLog.MAP_GENERATED;
+        sim.mapSeed = seed;
+        return sim;
+    }
+
+    /** 加入兵营并分配 id（等于其在 {@link #cells} 中的下标，对局内不变） */
+    public Cell addCell(Cell c) {
+        if (c.id >= 0) throw new IllegalArgumentException("Cell already belongs to a simulation: " + c.id);
+        c.id = cellList.size();
+        cellList.add(c);
+        return c;
+    }
+
+    /** 兵营空间索引；兵营列表变化（数量改变）后自动重建 */
+    public CellGrid index() {
+        if (index == null || indexedCells != cells.size()) {
+            index = CellGrid.build(cells);
+            indexedCells = cells.size();
+        }
+        return index;
+    }
+
+    /** 推进一步；对局结束后不再变化 */
+    public void step() {
+        if (winner != null) return;
+        tick++;
+        if (tick % rules.regenIntervalTicks == 0) {
+            for (int i = 0, n = cellList.size(); i < n; i++) cellList.get(i).tick();
+        }
+        // 只处理到期的发送器：出兵后改期并下沉，结束的出队
+        Sender s;
+        while ((s = spawns.peek()) != null && s.nextTick <= tick) {
+            if (spawnOne(s)) {
+                s.nextTick += rules.sendIntervalTicks;
+                spawns.rescheduleTop();
+            } else {
+                spawns.removeTop();
+            }
+        }
+        // 结算到达并原地压缩掉已空的箭头（保持顺序，不分配）
+        int kept = 0;
+        for (int i = 0, n = arrows.size(); i < n; i++) {
+            Arrow a = arrows.get(i);
+            int arrived = a.update(tick);
+            if (arrived > 0 && batchListener != null) batchListener.onArrive(a, arrived);
+            if (!a.isEmpty()) arrows.set(kept++, a);
+            else arrowIndex.remove(a.key);
+        }
+        for (int i = arrows.size() - 1; i >= kept; i--) arrows.remove(i);
+        winner = checkWinner();
+    }
+
+    /** 连续推进 n 步 */
+    public void advance(long n) {
+        for (long i = 0; i < n && winner == null; i++) step();
+    }
+
+    /** 推进到分出胜负或达到 maxTicks，返回胜者（未分胜负为 null） */
+    public Owner runUntilOver(long maxTicks) {
+        while (winner == null && tick < maxTicks) step();
+        return winner;
+    }
+
+    public long tick() { return tick; }
+
+    /** 已经过的模拟时间（毫秒） */
+    public long elapsedMillis() { return tick * 1000L / TICKS_PER_SECOND; }
+
+    public int totalTroopsSent() { return totalTroopsSent; }
+
+    public boolean isOver() { return winner != null; }
+
+    /** 胜者：所有兵营归同一阵营时为该阵营，否则为 null */
+    public Owner winner() { return winner; }
+
+    /** 仍在出兵的发送器数 */
+    public int activeSenders() { return spawns.size(); }
+
+    /** 当前在途兵力总数 */
+    public int inFlight() {
+        int n = 0; // 每个箭头的在途数是增量维护的，这里只是求和
+        for (Arrow a : arrows) n += a.inFlight();
+        return n;
+    }
+
+    // ---- 命令 ----
+
+    /** 拖拽出兵：从 source 派出 {@link Rules#sendFraction} 的兵力（默认一半，至少 1）逐个出发，出发时才从 source 扣减 */
+    public void sendHalf(Cell source, Cell target) {
+        if (source == target || winner != null) return;
+        if (listener != null) listener.onSendHalf(tick, source, target);
+        int sendCount = Math.max(1, (int) (source.force * rules.sendFraction));
+        spawns.add(new Sender(source, target, sendCount, false, tick + rules.sendIntervalTicks));
+    }
+
+    /** 全军出击：所有 sources 的全部兵力立即扣除后发往 target，返回发兵总数 */
+    public int attackAll(List<Cell> sources, Cell target) {
+        if (winner != null) return 0;
+        if (listener != null) listener.onAttackAll(tick, sources, target);
+        int totalSent = 0;
+        for (Cell s : sources) {
+            int sendCount = s.force;
+            if (sendCount <= 0 || s == target) continue;
+            // 预先扣减（preConsumed），spawn 时不再重复扣减
+            s.force -= sendCount;
+            spawns.add(new Sender(s, target, sendCount, true, tick + rules.sendIntervalTicks));
+            totalSent += sendCount;
+        }
+        return totalSent;
+    }
+
+    /**
+     * 分配出击：把 sources 的全部兵力平均分给 targets（余数给靠前的目标），按来源顺序依次凑足每个目标，
+     * 每对 (来源, 目标) 一个发送器。没有可用兵力时返回 null。
+     */
+    public AttackSummary distribute(List<Cell> sources, List<Cell> targets) {
+        if (sources.isEmpty() || targets.isEmpty() || winner != null) return null;
+        if (listener != null) listener.onDistribute(tick, sources, targets);
+        int total = 0;
+        for (Cell s : sources) total += s.force;
+        if (total <= 0) return null;
+
+        int nTargets = targets.size();
+        int base = total / nTargets;
+        int rem = total % nTargets;
+
+        // pre-deduct all source forces and track remaining per source
+        int[] sourceRem = new int[sources.size()];
+        for (int i = 0; i < sources.size(); i++) {
+            sourceRem[i] = sources.get(i).force;
+            sources.get(i).force = 0;
+        }
+
+        AttackSummary summary = new AttackSummary();
+        summary.totalSent = total;
+        for (int ti = 0; ti < nTargets; ti++) {
+            Cell t = targets.get(ti);
+            int need = base + (ti < rem ? 1 : 0);
+            for (int si = 0; si < sources.size() && need > 0; si++) {
+                if (sourceRem[si] <= 0) continue;
+                int give = Math.min(sourceRem[si], need);
+                sourceRem[si] -= give;
+                need -= give;
+                Cell s = sources.get(si);
+                spawns.add(new Sender(s, t, give, true, tick + rules.sendIntervalTicks));
+                summary.perSource.merge(s, give, Integer::sum);
+            }
+        }
+        return summary;
+    }
+
+    // ---- 快照 ----
+
+    /**
+     * 动态状态快照（步号、各兵营兵力与归属、在途箭头与批次、发送器队列），不含兵营位置等静态属性，
+     * 只能 {@link #restore(byte[]) 恢复} 到同一地图的模拟上。用于回放时按周期存档与快速定位。
+     */
+    public byte[] snapshot() {
+        java.io.ByteArrayOutputStream bytes = new java.io.ByteArrayOutputStream();
+        try (java.io.DataOutputStream out = new java.io.DataOutputStream(bytes)) {
+            out.writeLong(tick);
+            out.writeInt(totalTroopsSent);
+            out.writeByte(winner == null ? -1 : winner.ordinal());
+            out.writeInt(cellList.size());
+            for (Cell c : cellList) {
+                out.writeInt(c.force);
+                out.writeByte(c.owner.ordinal());
+                out.writeBoolean(c.isRegenerating);
+            }
+            out.writeInt(arrows.size());
+            for (Arrow a : arrows) {
+                out.writeInt(a.source.id);
+                out.writeInt(a.target.id);
+                out.writeInt(a.sourcePower);
+                out.writeInt(a.batchCount());
+                for (int i = 0; i < a.batchCount(); i++) {
+                    out.writeInt(a.batchTroops(i));
+                    out.writeLong(a.batchSpawnTick(i));
+                }
+            }
+            out.writeLong(spawns.nextSeq);
+            out.writeInt(spawns.size());
+            for (int i = 0; i < spawns.size(); i++) {
+                Sender sd = spawns.heap[i];
+                out.writeInt(sd.source.id);
+                out.writeInt(sd.target.id);
+                out.writeInt(sd.remaining);
+                out.writeBoolean(sd.preConsumed);
+                out.writeLong(sd.nextTick);
+                out.writeLong(sd.seq);
+            }
+        } catch (java.io.IOException ex) {
+            throw new java.io.UncheckedIOException(ex);
+        }
+        return bytes.toByteArray();
+    }
+
+    /** 恢复 {@link #snapshot()} 保存的状态（兵营数必须一致） */
+    public void restore(byte[] snapshot) {
+        try (java.io.DataInputStream in = new java.io.DataInputStream(new java.io.ByteArrayInputStream(snapshot))) {
+            tick = in.readLong();
+            totalTroopsSent = in.readInt();
+            int w = in.readByte();
+            winner = w < 0 ? null : Owner.values()[w];
+            int n = in.readInt();
+            if (n != cellList.size()) throw new IllegalArgumentException("Snapshot has " + n + " cells, simulation has " + cellList.size());
+            for (Cell c : cellList) {
+                c.force = in.readInt();
+                c.owner = Owner.values()[in.readByte()];
+                c.isRegenerating = in.readBoolean();
+            }
+            arrows.clear();
+            arrowIndex.clear();
+            int na = in.readInt();
+            for (int i = 0; i < na; i++) {
+                Cell src = cellList.get(in.readInt()), dst = cellList.get(in.readInt());
+                Arrow a = new Arrow(src, dst, arrowKey(src, dst), rules.troopSpeed);
+                int power = in.readInt();
+                int nb = in.readInt();
+                for (int b = 0; b < nb; b++) {
+                    int count = in.readInt();
+                    a.addBatch(count, in.readLong());
+                }
+                a.sourcePower = power;
+                arrows.add(a);
+                arrowIndex.put(a.key, a);
+            }
+            spawns.clear();
+            long nextSeq = in.readLong();
+            int ns = in.readInt();
+            for (int i = 0; i < ns; i++) {
+                Cell src = cellList.get(in.readInt()), dst = cellList.get(in.readInt());
+                Sender sd = new Sender(src, dst, in.readInt(), in.readBoolean(), 0);
+                sd.nextTick = in.readLong();
+                spawns.restore(sd, in.readLong());
+            }
+            spawns.nextSeq = nextSeq;
+        } catch (java.io.IOException ex) {
+            throw new java.io.UncheckedIOException(ex);
+        }
+    }
+
+    /** 独立副本：同样的地图（新的 Cell 对象，id 相同）与同样的动态状态，不带命令监听器 */
+    public Simulation copy() {
+        Simulation sim = new Simulation(rules);
+        for (Cell c : cellList) sim.addCell(new Cell(c.x, c.y, c.radius, c.owner, c.force));
+        sim.mapKind = mapKind;
+        sim.mapSeed = mapSeed;
+        sim.restore(snapshot());
+        return sim;
+    }
+
+    // ---- 联机镜像：客户端只应用服务器发来的增量，不自行推进 ----
+
+    /** 进入服务器的第 tick 步（随后应用该步的出兵、到达与兵营变化） */
+    void mirrorTick(long tick, Owner winner) {
+        this.tick = tick;
+        this.winner = winner;
+    }
+
+    /** source -> target 在当前步出发 count 个兵 */
+    void mirrorSpawn(Cell source, Cell target, int count) {
+        getOrCreateArrow(source, target).addBatch(count, tick);
+        totalTroopsSent += count;
+    }
+
+    /** source -> target 头部 batches 个批次到达（兵力变化由兵营增量给出） */
+    void mirrorArrive(Cell source, Cell target, int batches) {
+        Arrow a = arrow(source, target);
+        if (a == null || a.batchCount() < batches) throw new IllegalStateException("No such batches: " + source.id + " -> " + target.id);
+        for (int i = 0; i < batches; i++) a.popHead();
+        if (a.isEmpty()) {
+            arrows.remove(a);
+            arrowIndex.remove(a.key);
+        }
+    }
+
+    /** 清空发送器（镜像不推进，发送器只由服务器持有） */
+    void clearSenders() {
+        spawns.clear();
+    }
+
+    // ---- 内部 ----
+
+    /** 发送器出一个兵；返回 false 表示该发送器已结束 */
+    private boolean spawnOne(Sender s) {
+        if (s.remaining <= 0) return false;
+        if (!s.preConsumed && s.source.force <= 0) return false;
+        // 以聚合箭头表示：找到或创建 Arrow，添加一个批次（行程由距离 / 速度决定）
+        Arrow a = getOrCreateArrow(s.source, s.target);
+        a.addBatch(1, tick);
+        if (batchListener != null) batchListener.onSpawn(a, 1);
+        if (!s.preConsumed) {
+            s.source.force -= 1; // 每生成一个，源点力量减少 1
+        }
+        totalTroopsSent++;
+        s.remaining--;
+        return s.remaining > 0;
+    }
+
+    /** source -> target 的在途箭头，没有则为 null */
+    public Arrow arrow(Cell source, Cell target) {
+        return arrowIndex.get(arrowKey(source, target));
+    }
+
+    /** 箭头键：高 32 位为来源 id，低 32 位为目标 id */
+    static long arrowKey(Cell source, Cell target) {
+        return ((long) source.id << 32) | (target.id & 0xFFFFFFFFL);
+    }
+
+    private Arrow getOrCreateArrow(Cell source, Cell target) {
+        long key = arrowKey(source, target);
+        Arrow a = arrowIndex.get(key);
+        if (a == null) {
+            a = new Arrow(source, target, key, rules.troopSpeed);
+            arrowIndex.put(key, a);
+            arrows.add(a);
+        }
+        return a;
+    }
+
+    private Owner checkWinner() {
+        if (cellList.isEmpty()) return null;
+        Owner o = cellList.get(0).owner;
+        if (o == Owner.NEUTRAL) return null;
+        for (int i = 1, n = cellList.size(); i < n; i++) {
+            if (cellList.get(i).owner != o) return null;
+        }
+        return o;
+    }
+
+    /**
+     * Arrow: 聚合表征从 source -> target 的所有在途部队。
+     * <p>
+     * 同一箭头上每个批次的行程相同，按出发顺序到达，因此批次存放在原始类型的环形缓冲（结构数组）中：
+     * 出发从尾部追加，到达从头部弹出，均为 O(1)，稳态下不分配对象。行程按步数预先算好，
+     * 到达步 = 出发步 + travelTicks - 1（出发当步即开始移动）。
+     */
+    public static class Arrow {
+        public final Cell source;
+        public final Cell target;
+        final long key;
+        public int sourcePower; // 用于影响箭头粗细（基于发起时兵力）
+        /** 行程时间（秒）与对应步数 */
+        public final double travelTime;
+        final int travelTicks;
+
+        // 环形缓冲：第 i 个批次（i 从 0 起，0 为最早出发）位于 (head + i) & mask
+        private int[] counts = new int[8];
+        private long[] spawnTicks = new long[8];
+        private int head;
+        private int size;
+        private int inFlight;
+
+        Arrow(Cell s, Cell t, long key, double speed) {
+            this.source = s;
+            this.target = t;
+            this.key = key;
+            this.sourcePower = Math.max(0, s.force);
+            this.travelTime = Math.hypot(t.x - s.x, t.y - s.y) / speed;
+            // 与逐步 timeLeft -= DT、timeLeft <= 0 即到达的判定一致
+            int n = 0;
+            for (double left = travelTime; left > 0; left -= DT) n++;
+            this.travelTicks = Math.max(1, n);
+        }
+
+        /** 在第 tick 步出发 count 个兵；同一步出发的合并为一个批次 */
+        void addBatch(int count, long tick) {
+            sourcePower += count;
+            inFlight += count;
+            if (size > 0) {
+                int last = (head + size - 1) & (counts.length - 1);
+                if (spawnTicks[last] == tick) {
+                    counts[last] += count;
+                    return;
+                }
+            }
+            if (size == counts.length) grow();
+            int i = (head + size) & (counts.length - 1);
+            counts[i] = count;
+            spawnTicks[i] = tick;
+            size++;
+        }
+
+        /** 结算第 tick 步到达的批次（都在头部），返回到达的批次数 */
+        int update(long tick) {
+            int arrived = 0;
+            while (size > 0 && spawnTicks[head] + travelTicks - 1 <= tick) {
+                int count = popHead();
+                arrived++;
+                if (source.owner == target.owner) {
+                    target.force += count;
+                } else {
+                    target.force -= count;
+                    if (target.force < 0) {
+                        target.owner = source.owner;
+                        target.force = Math.abs(target.force);
+                    }
+                }
+            }
+            return arrived;
+        }
+
+        /** 移除最早的批次，返回其兵数 */
+        int popHead() {
+            int count = counts[head];
+            head = (head + 1) & (counts.length - 1);
+            size--;
+            inFlight -= count;
+            // 当批次到达，减少 sourcePower 显示
+            sourcePower = Math.max(0, sourcePower - count);
+            return count;
+        }
+
+        private void grow() {
+            int n = counts.length;
+            int[] nc = new int[n * 2];
+            long[] nt = new long[n * 2];
+            for (int i = 0; i < size; i++) {
+                nc[i] = counts[(head + i) & (n - 1)];
+                nt[i] = spawnTicks[(head + i) & (n - 1)];
+            }
+            counts = nc;
+            spawnTicks = nt;
+            head = 0;
+        }
+
+        /** 在途批次数 */
+        public int batchCount() { return size; }
+
+        /** 第 i 个批次的出发步 */
+        long batchSpawnTick(int i) { return spawnTicks[(head + i) & (counts.length - 1)]; }
+
+        /** 第 i 个批次（0 为最早出发）的兵数 */
+        public int batchTroops(int i) { return counts[(head + i) & (counts.length - 1)]; }
+
+        /**
+         * 第 i 个批次在第 now 步结束时的行程进度（0..1）；alpha 为距下一步的比例（0..1），用于渲染插值。
+         */
+        public double batchProgress(int i, long now, double alpha) {
+            long spawn = spawnTicks[(head + i) & (counts.length - 1)];
+            double p = (now - spawn + 1 + alpha) * DT / travelTime;
+            return p < 1.0 ? p : 1.0;
+        }
+
+        public int inFlight() { return inFlight; }
+
+        public boolean isEmpty() { return size == 0; }
+    }
+
+    /** 出击统计：总发兵数与各来源发兵数（按来源顺序） */
+    public static class AttackSummary {
+        public int totalSent;
+        public final Map<Cell, Integer> perSource = new LinkedHashMap<>();
+    }
+
+    /**
+     * 发送器：在 source -> target 之间每 {@link Rules#sendIntervalTicks} 步出一个兵，首个兵在创建一个间隔后出发（nextTick）。
+     * preConsumed=true 表示 source.force 已在创建前扣除（全军出击 / 分配出击），spawn 时不再扣减。
+     */
+    private static class Sender {
+        final Cell source;
+        final Cell target;
+        final boolean preConsumed;
+        int remaining;
+        long nextTick;
+        long seq; // 入队序号：同一步到期的发送器按创建顺序出兵，保证确定性
+
+        Sender(Cell source, Cell target, int count, boolean preConsumed, long nextTick) {
+            this.source = source;
+            this.target = target;
+            this.remaining = count;
+            this.preConsumed = preConsumed;
+            this.nextTick = nextTick;
+        }
+    }
+
+    /**
+     * 对局规则：兵营每 regenIntervalTicks 步 +1、部队速度（像素/秒）、发送器出兵间隔（步）与拖拽出兵比例。
+     * 不可变；{@link #DEFAULT} 为界面使用的原始数值。
+     */
+    public static final class Rules {
+        public static final Rules DEFAULT = new Rules(REGEN_INTERVAL_TICKS, TROOP_SPEED, SEND_INTERVAL_TICKS, SEND_FRACTION);
+
+        public final int regenIntervalTicks;
+        public final double troopSpeed;
+        public final int sendIntervalTicks;
+        public final double sendFraction;
+
+        public Rules(int regenIntervalTicks, double troopSpeed, int sendIntervalTicks, double sendFraction) {
+            if (regenIntervalTicks < 1 || sendIntervalTicks < 1) throw new IllegalArgumentException("intervals must be >= 1 tick");
+            if (!(troopSpeed > 0)) throw new IllegalArgumentException("troopSpeed must be > 0: " + troopSpeed);
+            if (!(sendFraction > 0 && sendFraction <= 1)) throw new IllegalArgumentException("sendFraction must be in (0, 1]: " + sendFraction);
+            this.regenIntervalTicks = regenIntervalTicks;
+            this.troopSpeed = troopSpeed;
+            this.sendIntervalTicks = sendIntervalTicks;
+            this.sendFraction = sendFraction;
+        }
+
+        public boolean isDefault() {
+            return regenIntervalTicks == DEFAULT.regenIntervalTicks && troopSpeed == DEFAULT.troopSpeed
+                    && sendIntervalTicks == DEFAULT.sendIntervalTicks && sendFraction == DEFAULT.sendFraction;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("regen %d ticks, speed %.0f px/s, send every %d ticks, send %.2f", regenIntervalTicks, troopSpeed, sendIntervalTicks, sendFraction);
+        }
+    }
+
+    /**
+     * 出兵事件队列：以 (nextTick, seq) 为键的数组二叉堆。
+     * 取最早到期 O(1)，改期 / 出队 O(log n)；容量按需翻倍，稳态下不分配。
+     */
+    private static final class SpawnQueue {
+        private Sender[] heap = new Sender[16];
+        private int size;
+        private long nextSeq;
+
+        int size() { return size; }
+
+        Sender peek() { return size == 0 ? null : heap[0]; }
+
+        void add(Sender s) {
+            if (size == heap.length) heap = java.util.Arrays.copyOf(heap, size * 2);
+            s.seq = nextSeq++;
+            heap[size] = s;
+            siftUp(size++);
+        }
+
+        /** 按快照中的序号重新入队 */
+        void restore(Sender s, long seq) {
+            if (size == heap.length) heap = java.util.Arrays.copyOf(heap, size * 2);
+            s.seq = seq;
+            heap[size] = s;
+            siftUp(size++);
+        }
+
+        void clear() {
+            java.util.Arrays.fill(heap, 0, size, null);
+            size = 0;
+            nextSeq = 0;
+        }
+
+        /** 堆顶的 nextTick 已推后，重新下沉 */
+        void rescheduleTop() { siftDown(0); }
+
+        void removeTop() {
+            Sender last = heap[--size];
+            heap[size] = null;
+            if (size > 0) {
+                heap[0] = last;
+                siftDown(0);
+            }
+        }
+
+        private static boolean before(Sender a, Sender b) {
+            return a.nextTick < b.nextTick || (a.nextTick == b.nextTick && a.seq < b.seq);
+        }
+
+        private void siftUp(int i) {
+            Sender x = heap[i];
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (!before(x, heap[parent])) break;
+                heap[i] = heap[parent];
+                i = parent;
+            }
+            heap[i] = x;
+        }
+
+        private void siftDown(int i) {
+            Sender x = heap[i];
+            int half = size >>> 1;
+            while (i < half) {
+                int c = 2 * i + 1;
+                if (c + 1 < size && before(heap[c + 1], heap[c])) c++;
+                if (!before(heap[c], x)) break;
+                heap[i] = heap[c];
+                i = c;
+            }
+            heap[i] = x;
+        }
+    }
+}
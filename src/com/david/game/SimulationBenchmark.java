@@ -0,0 +1,274 @@
+package com.david.game;
+
+import com.david.game.NeonConquest.Cell;
+import com.david.game.NeonConquest.Owner;
+
+/**
+ * 无界面加速对局基准：用简单脚本策略让 RED / BLUE 在示例局面上对战，统计每秒可跑完的对局数。
+ * <p>
+ * 用法：{@code java -cp out com.david.game.SimulationBenchmark [matches]}
+ * <p>
+ * 同时验证确定性：同一对局跑两遍，结束步数、胜者与发兵总数必须完全一致。
+ * 最后做一次大规模出兵压力测试：20 个来源各向 20 个目标出兵（400 个发送器），测量单步耗时；
+ * 同一场景进入稳态后（缓冲容量不再增长）统计每步分配的字节数，应为 0；
+ * 并在 5000 / 50000 兵营的生成地图上对比空间索引与线性扫描的点查询、视口查询耗时（结果须一致）。
+ * 回放部分录制一局生成地图上的对局，校验回放终局状态、前后跳转与直接推进逐字节一致，并给出日志大小与回放速度。
+ * 电脑对手部分让各难度与 EASY 交换座位自我对战，统计胜场与单次决策耗时，并在 2000 兵营的地图上检查时间预算。
+ */
+public class SimulationBenchmark {
+    /** 单局上限：10 分钟模拟时间 */
+    private static final long MAX_TICKS = 10L * 60 * Simulation.TICKS_PER_SECOND;
+
+    public static void main(String[] args) {
+        int matches = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+
+        // 预热
+        for (int i = 0; i < 500; i++) play(i);
+
+        long[] a = play(42), b = play(42);
+        if (a[0] != b[0] || a[1] != b[1] || a[2] != b[2]) {
+            throw new IllegalStateException("Simulation is not deterministic");
+        }
+
+        int red = 0, blue = 0, draw = 0;
+        long ticks = 0;
+        long t0 = System.nanoTime();
+        for (int i = 0; i < matches; i++) {
+            long[] r = play(i);
+            ticks += r[0];
+            if (r[1] == Owner.RED.ordinal()) red++;
+            else if (r[1] == Owner.BLUE.ordinal()) blue++;
+            else draw++;
+        }
+        double s = (System.nanoTime() - t0) / 1e9;
+        System.out.printf("%d matches in %.2f s: %.0f matches/s, %.1f M ticks/s (%.0fx real time)%n",
+                matches, s, matches / s, ticks / s / 1e6, ticks / s / Simulation.TICKS_PER_SECOND);
+        System.out.printf("RED %d / BLUE %d / unfinished %d, avg match %.1f s simulated%n",
+                red, blue, draw, (double) ticks / matches / Simulation.TICKS_PER_SECOND);
+
+        stress();
+        allocation();
+        spatial(5000);
+        spatial(50000);
+        replay();
+        ai(AiPlayer.Difficulty.NORMAL, 6);
+        ai(AiPlayer.Difficulty.HARD, 6);
+        aiBudget();
+    }
+
+    /** difficulty 与 EASY 在 maps 张 30 兵营地图上各执 RED / BLUE 对战一次（不限时，可复现） */
+    private static void ai(AiPlayer.Difficulty difficulty, int maps) {
+        int wins = 0, losses = 0;
+        double avg = 0, max = 0;
+        long decisions = 0;
+        for (int seed = 0; seed < maps; seed++) {
+            for (Owner seat : new Owner[]{Owner.RED, Owner.BLUE}) {
+                Owner other = seat == Owner.RED ? Owner.BLUE : Owner.RED;
+                AiPlayer p = new AiPlayer(seat, difficulty.depth, Long.MAX_VALUE);
+                AiPlayer easy = new AiPlayer(other, AiPlayer.Difficulty.EASY.depth, Long.MAX_VALUE);
+                Simulation sim = Simulation.generate(seed, 30);
+                Owner w = seat == Owner.RED ? AiPlayer.play(sim, MAX_TICKS, p, easy) : AiPlayer.play(sim, MAX_TICKS, easy, p);
+                if (w == seat) wins++;
+                else if (w == other) losses++;
+                avg += p.averageDecisionMillis() * p.decisions();
+                decisions += p.decisions();
+                max = Math.max(max, p.maxDecisionMillis());
+            }
+        }
+        System.out.printf("ai %s vs EASY: %d wins / %d losses / %d unfinished, decision avg %.2f ms, max %.1f ms%n",
+                difficulty, wins, losses, 2 * maps - wins - losses, avg / decisions, max);
+    }
+
+    /** HARD 在 2000 兵营地图上按默认预算决策：推演中按步检查预算，超出量只有几步模拟，完成的深度随之降低 */
+    private static void aiBudget() {
+        Simulation sim = Simulation.generate(11, 2000);
+        AiPlayer ai = new AiPlayer(Owner.BLUE, AiPlayer.Difficulty.HARD);
+        int minDepth = Integer.MAX_VALUE;
+        for (int i = 0; i < 20; i++) {
+            ai.apply(sim, ai.decide(sim));
+            minDepth = Math.min(minDepth, ai.lastDepth());
+            sim.advance(AiPlayer.DECISION_TICKS);
+        }
+        System.out.printf("ai budget %.0f ms on 2000 cells: decision avg %.1f ms, max %.1f ms, min completed depth %d of %d%n",
+                AiPlayer.DEFAULT_BUDGET_NANOS / 1e6, ai.averageDecisionMillis(), ai.maxDecisionMillis(), minDepth, ai.depth);
+    }
+
+    /** 录制 -> 序列化 -> 回放：终局快照须与原局一致；向后跳转再向前，状态须与从头直接推进一致 */
+    private static void replay() {
+        Simulation sim = Simulation.generate(3, 400);
+        ReplayLog.Recorder recorder = new ReplayLog.Recorder(sim);
+        script(sim, 5);
+        byte[] bytes = recorder.finish();
+        byte[] expected = sim.snapshot();
+
+        ReplayLog log;
+        try {
+            log = ReplayLog.read(new java.io.ByteArrayInputStream(bytes));
+        } catch (java.io.IOException ex) {
+            throw new java.io.UncheckedIOException(ex);
+        }
+        double best = Double.MAX_VALUE;
+        ReplayPlayer player = null;
+        for (int round = 0; round < 5; round++) {
+            player = new ReplayPlayer(log);
+            long t0 = System.nanoTime();
+            player.runToEnd();
+            best = Math.min(best, (System.nanoTime() - t0) / 1e9);
+        }
+        if (!player.matchesRecording() || !java.util.Arrays.equals(player.simulation().snapshot(), expected)) {
+            throw new IllegalStateException("Replay diverged from recording");
+        }
+
+        long mid = log.endTick / 2 + 7;
+        long t0 = System.nanoTime();
+        player.seek(mid);
+        double seekMs = (System.nanoTime() - t0) / 1e6;
+        ReplayPlayer straight = new ReplayPlayer(log);
+        straight.advanceTo(mid);
+        if (!java.util.Arrays.equals(player.simulation().snapshot(), straight.simulation().snapshot())) {
+            throw new IllegalStateException("Seek diverged from straight playback");
+        }
+        player.seek(log.endTick);
+        if (!java.util.Arrays.equals(player.simulation().snapshot(), expected)) {
+            throw new IllegalStateException("Seek forward diverged from recording");
+        }
+        System.out.printf("replay: %d commands, %.1f s of play in %d bytes; replayed in %.1f ms (%.0fx real time), seek back %.2f ms%n",
+                recorder.commandCount(), log.endTick / (double) Simulation.TICKS_PER_SECOND, bytes.length,
+                best * 1e3, log.endTick / (double) Simulation.TICKS_PER_SECOND / best, seekMs);
+    }
+
+    /** 400 条出兵通道持续出兵与到达：跳过前 15 秒（箭头创建、缓冲扩容）后，统计 20 秒内本线程每步分配的字节数 */
+    private static void allocation() {
+        com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean) java.lang.management.ManagementFactory.getThreadMXBean();
+        long tid = Thread.currentThread().getId();
+        long bytes = 0;
+        int measured = 20 * Simulation.TICKS_PER_SECOND;
+        for (int round = 0; round < 3; round++) {
+            Simulation sim = lanes(1_000_000);
+            sim.advance(15 * Simulation.TICKS_PER_SECOND);
+            long b0 = mx.getThreadAllocatedBytes(tid);
+            sim.advance(measured);
+            bytes = mx.getThreadAllocatedBytes(tid) - b0;
+        }
+        System.out.printf("allocation: %.1f bytes/step in steady state (%d senders)%n",
+                (double) bytes / measured, lanes(1_000_000).activeSenders());
+    }
+
+    /** 20 个来源各向 20 个目标拖拽出兵的场景；targetForce 足够大时目标不会被攻下，对局不会结束 */
+    private static Simulation lanes(int targetForce) {
+        Simulation sim = new Simulation();
+        java.util.List<Cell> sources = new java.util.ArrayList<>(), targets = new java.util.ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            Cell s = new Cell(100, 40 + i * 60, 20, Owner.RED, 4000);
+            Cell t = new Cell(1400, 40 + i * 60, 20, Owner.BLUE, targetForce);
+            sources.add(s);
+            targets.add(t);
+            sim.addCell(s);
+            sim.addCell(t);
+        }
+        for (Cell s : sources) {
+            for (Cell t : targets) sim.sendHalf(s, t);
+        }
+        return sim;
+    }
+
+    /** 生成 count 个兵营的地图，随机点查询与 800x600 视口查询：索引 vs 线性扫描 */
+    private static void spatial(int count) {
+        Simulation sim = Simulation.generate(7, count);
+        CellGrid grid = sim.index();
+        java.util.Random rnd = new java.util.Random(1);
+        int side = (int) Math.ceil(Math.sqrt(count * 4.0 / 3.0)) * Simulation.MAP_PITCH;
+        int n = 200_000;
+        double[] px = new double[n], py = new double[n];
+        for (int i = 0; i < n; i++) {
+            px[i] = rnd.nextDouble() * side;
+            py[i] = rnd.nextDouble() * side;
+        }
+        for (int i = 0; i < n; i += 97) {
+            if (grid.cellAt(px[i], py[i]) != linearAt(sim, px[i], py[i])) throw new IllegalStateException("Index mismatch");
+        }
+        int hits = 0;
+        long t0 = System.nanoTime();
+        for (int i = 0; i < n; i++) if (grid.cellAt(px[i], py[i]) != null) hits++;
+        double indexed = (System.nanoTime() - t0) / 1e3 / n;
+        int m = Math.max(200, n / count);
+        t0 = System.nanoTime();
+        for (int i = 0; i < m; i++) if (linearAt(sim, px[i], py[i]) != null) hits++;
+        double linear = (System.nanoTime() - t0) / 1e3 / m;
+
+        java.util.List<Cell> out = new java.util.ArrayList<>();
+        int views = 2000, found = 0;
+        t0 = System.nanoTime();
+        for (int i = 0; i < views; i++) {
+            out.clear();
+            found += grid.overlapping(px[i], py[i], px[i] + 800, py[i] + 600, out);
+        }
+        double view = (System.nanoTime() - t0) / 1e3 / views;
+        System.out.printf("spatial %d cells: point %.3f us (linear %.1f us), viewport %.1f us / %d cells (hits %d)%n",
+                count, indexed, linear, view, found / views, hits);
+    }
+
+    private static Cell linearAt(Simulation sim, double x, double y) {
+        for (Cell c : sim.cells) {
+            double dx = c.x - x, dy = c.y - y;
+            if (dx * dx + dy * dy <= c.radius * c.radius) return c;
+        }
+        return null;
+    }
+
+    /** 20 x 20 出兵：400 个发送器同时出兵，统计推进到全部到达的平均单步耗时 */
+    private static void stress() {
+        long best = Long.MAX_VALUE;
+        int steps = 0, senders = 0;
+        for (int round = 0; round < 5; round++) {
+            Simulation sim = lanes(10);
+            senders = sim.activeSenders();
+            steps = 0;
+            long t0 = System.nanoTime();
+            while ((sim.activeSenders() > 0 || sim.inFlight() > 0) && !sim.isOver()) {
+                sim.step();
+                steps++;
+            }
+            best = Math.min(best, System.nanoTime() - t0);
+        }
+        System.out.printf("stress: %d senders, %d steps, %.1f us/step%n", senders, steps, best / 1e3 / steps);
+    }
+
+    /** 跑一局，返回 {结束步数, 胜者 ordinal（未分胜负为 -1）, 发兵总数} */
+    static long[] play(int seed) {
+        Simulation sim = script(Simulation.sample(), seed);
+        Owner w = sim.winner();
+        return new long[]{sim.tick(), w == null ? -1 : w.ordinal(), sim.totalTroopsSent()};
+    }
+
+    /** 在 sim 上按脚本双方对战直到分出胜负或到达上限 */
+    private static Simulation script(Simulation sim, int seed) {
+        // 两方出手间隔随 seed 变化（1~4 秒），让各局走向不同
+        int redPeriod = Simulation.TICKS_PER_SECOND * (1 + seed % 4);
+        int bluePeriod = Simulation.TICKS_PER_SECOND * (1 + (seed / 4) % 4);
+        while (!sim.isOver() && sim.tick() < MAX_TICKS) {
+            long t = sim.tick();
+            if (t % redPeriod == 0) act(sim, Owner.RED);
+            if (t % bluePeriod == bluePeriod / 2) act(sim, Owner.BLUE);
+            sim.step();
+        }
+        return sim;
+    }
+
+    /** 脚本策略：己方最强兵营向最近的非己方兵营派出一半兵力 */
+    private static void act(Simulation sim, Owner side) {
+        Cell from = null;
+        for (Cell c : sim.cells) {
+            if (c.owner == side && c.force > 1 && (from == null || c.force > from.force)) from = c;
+        }
+        if (from == null) return;
+        Cell to = null;
+        double best = Double.MAX_VALUE;
+        for (Cell c : sim.cells) {
+            if (c.owner == side) continue;
+            double d = Math.hypot(c.x - from.x, c.y - from.y);
+            if (d < best) { best = d; to = c; }
+        }
+        if (to != null) sim.sendHalf(from, to);
+    }
+}
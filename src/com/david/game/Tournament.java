@@ -0,0 +1,228 @@
+package com.david.game;
+
+import com.david.game.NeonConquest.Owner;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * 平衡调参用的无界面锦标赛：对参数网格（再生间隔、部队速度、出兵间隔、拖拽出兵比例）中的每一组 {@link Simulation.Rules}，
+ * 让两个 AI（深度 A、深度 B）在同一批生成地图上各执 RED / BLUE 对战一次。全部对局分给所有 CPU 核心并行，
+ * 按规则汇总胜率、对局时长与发兵总数，写出 CSV 与 JSON 报告。
+ * <p>
+ * AI 不限时，结果只取决于规则、地图与深度，同样的参数总得到同样的报告，与线程数无关。
+ * <p>
+ * 用法：{@code java -cp out com.david.game.Tournament [--maps N] [--cells N] [--depth A,B] [--max-seconds S]
+ * [--threads N] [--out 目录] [--regen 10,20,40] [--speed 80,120,180] [--send 3,5,8] [--fraction 0.33,0.5,0.75]}
+ * （间隔单位为模拟步，每秒 {@value Simulation#TICKS_PER_SECOND} 步）
+ */
+public class Tournament {
+    private int maps = 8;
+    private int cells = 30;
+    private int depthA = AiPlayer.Difficulty.NORMAL.depth;
+    private int depthB = AiPlayer.Difficulty.EASY.depth;
+    private int maxSeconds = 600;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private Path outDir = Paths.get("reports");
+    private int[] regen = {10, 20, 40};
+    private double[] speed = {80, 120, 180};
+    private int[] send = {3, 5, 8};
+    private double[] fraction = {0.33, 0.5, 0.75};
+
+    /** 一局的结果 */
+    private static final class Match {
+        Owner winner;
+        boolean aIsRed;
+        long ticks;
+        int troopsSent;
+        double decisionMillis; // 双方平均单次决策耗时
+    }
+
+    /** 一组规则的汇总 */
+    private static final class Result {
+        final Simulation.Rules rules;
+        int matches, aWins, bWins, redWins, blueWins, unfinished;
+        double durationMean, durationP50, durationP90, troopsMean, decisionMean;
+
+        Result(Simulation.Rules rules) {
+            this.rules = rules;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Tournament t = new Tournament();
+        for (int i = 0; i < args.length; i++) {
+            String v = i + 1 < args.length ? args[i + 1] : "";
+            switch (args[i]) {
+                case "--maps": t.maps = Integer.parseInt(v); break;
+                case "--cells": t.cells = Integer.parseInt(v); break;
+                case "--depth": {
+                    int[] d = ints(v);
+                    t.depthA = d[0];
+                    t.depthB = d[1];
+                    break;
+                }
+                case "--max-seconds": t.maxSeconds = Integer.parseInt(v); break;
+                case "--threads": t.threads = Integer.parseInt(v); break;
+                case "--out": t.outDir = Paths.get(v); break;
+                case "--regen": t.regen = ints(v); break;
+                case "--speed": t.speed = doubles(v); break;
+                case "--send": t.send = ints(v); break;
+                case "--fraction": t.fraction = doubles(v); break;
+                default: throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+            i++;
+        }
+        t.run();
+    }
+
+    private void run() throws Exception {
+        List<Simulation.Rules> grid = new ArrayList<>();
+        for (int r : regen) for (double s : speed) for (int i : send) for (double f : fraction) grid.add(new Simulation.Rules(r, s, i, f));
+        int perRules = 2 * maps;
+        int total = grid.size() * perRules;
+        System.out.printf("%d rule sets x %d maps x 2 seats = %d matches (depth %d vs %d, %d cells) on %d threads%n",
+                grid.size(), maps, total, depthA, depthB, cells, threads);
+
+        long t0 = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<Match>> futures = new ArrayList<>(total);
+        try {
+            for (Simulation.Rules rules : grid) {
+                for (int m = 0; m < maps; m++) {
+                    for (int seat = 0; seat < 2; seat++) {
+                        long seed = m;
+                        boolean aIsRed = seat == 0;
+                        futures.add(pool.submit(() -> play(rules, seed, aIsRed)));
+                    }
+                }
+            }
+            Match[] matches = new Match[total];
+            int step = Math.max(1, total / 10);
+            for (int i = 0; i < total; i++) {
+                matches[i] = futures.get(i).get();
+                if ((i + 1) % step == 0 || i + 1 == total) {
+                    double s = (System.nanoTime() - t0) / 1e9;
+                    System.out.printf("  %d / %d matches, %.1f s%n", i + 1, total, s);
+                }
+            }
+            double wall = (System.nanoTime() - t0) / 1e9;
+
+            List<Result> results = new ArrayList<>(grid.size());
+            for (int g = 0; g < grid.size(); g++) {
+                results.add(aggregate(grid.get(g), Arrays.copyOfRange(matches, g * perRules, (g + 1) * perRules)));
+            }
+            String stamp = new java.text.SimpleDateFormat("yyyyMMdd_HHmmss").format(new java.util.Date());
+            Files.createDirectories(outDir);
+            Path csv = outDir.resolve("tournament_" + stamp + ".csv");
+            Path json = outDir.resolve("tournament_" + stamp + ".json");
+            writeCsv(csv, results);
+            writeJson(json, results, total, wall);
+            System.out.printf("%d matches in %.1f s (%.1f matches/s)%n", total, wall, total / wall);
+            System.out.println("Reports: " + csv.toAbsolutePath() + ", " + json.toAbsolutePath());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /** 一局：地图 seed、规则 rules，深度 A 的 AI 执 RED（aIsRed）或 BLUE */
+    private Match play(Simulation.Rules rules, long seed, boolean aIsRed) {
+        Simulation sim = Simulation.generate(seed, cells, rules);
+        AiPlayer red = new AiPlayer(Owner.RED, aIsRed ? depthA : depthB, Long.MAX_VALUE);
+        AiPlayer blue = new AiPlayer(Owner.BLUE, aIsRed ? depthB : depthA, Long.MAX_VALUE);
+        Match m = new Match();
+        m.winner = AiPlayer.play(sim, (long) maxSeconds * Simulation.TICKS_PER_SECOND, red, blue);
+        m.aIsRed = aIsRed;
+        m.ticks = sim.tick();
+        m.troopsSent = sim.totalTroopsSent();
+        m.decisionMillis = (red.averageDecisionMillis() + blue.averageDecisionMillis()) / 2;
+        return m;
+    }
+
+    private static Result aggregate(Simulation.Rules rules, Match[] matches) {
+        Result r = new Result(rules);
+        r.matches = matches.length;
+        double[] seconds = new double[matches.length];
+        for (int i = 0; i < matches.length; i++) {
+            Match m = matches[i];
+            Owner a = m.aIsRed ? Owner.RED : Owner.BLUE;
+            if (m.winner == null) r.unfinished++;
+            else if (m.winner == a) r.aWins++;
+            else r.bWins++;
+            if (m.winner == Owner.RED) r.redWins++;
+            else if (m.winner == Owner.BLUE) r.blueWins++;
+            seconds[i] = (double) m.ticks / Simulation.TICKS_PER_SECOND;
+            r.durationMean += seconds[i];
+            r.troopsMean += m.troopsSent;
+            r.decisionMean += m.decisionMillis;
+        }
+        r.durationMean /= matches.length;
+        r.troopsMean /= matches.length;
+        r.decisionMean /= matches.length;
+        Arrays.sort(seconds);
+        r.durationP50 = seconds[(seconds.length - 1) * 50 / 100];
+        r.durationP90 = seconds[(seconds.length - 1) * 90 / 100];
+        return r;
+    }
+
+    private static double rate(int wins, int matches) {
+        return matches == 0 ? 0 : (double) wins / matches;
+    }
+
+    private static void writeCsv(Path file, List<Result> results) throws IOException {
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8))) {
+            out.println("regen_interval_ticks,troop_speed,send_interval_ticks,send_fraction,matches,a_wins,b_wins,unfinished,a_win_rate,"
+                    + "red_wins,blue_wins,red_win_rate,duration_mean_s,duration_p50_s,duration_p90_s,troops_sent_mean,decision_mean_ms");
+            for (Result r : results) {
+                out.println(String.format(Locale.ROOT, "%d,%.1f,%d,%.3f,%d,%d,%d,%d,%.4f,%d,%d,%.4f,%.2f,%.2f,%.2f,%.1f,%.3f",
+                        r.rules.regenIntervalTicks, r.rules.troopSpeed, r.rules.sendIntervalTicks, r.rules.sendFraction,
+                        r.matches, r.aWins, r.bWins, r.unfinished, rate(r.aWins, r.matches),
+                        r.redWins, r.blueWins, rate(r.redWins, r.matches),
+                        r.durationMean, r.durationP50, r.durationP90, r.troopsMean, r.decisionMean));
+            }
+        }
+    }
+
+    private void writeJson(Path file, List<Result> results, int total, double wall) throws IOException {
+        StringBuilder sb = new StringBuilder(256 + results.size() * 400);
+        sb.append(String.format(Locale.ROOT,
+                "{\n  \"depthA\": %d,\n  \"depthB\": %d,\n  \"maps\": %d,\n  \"cells\": %d,\n  \"maxSeconds\": %d,\n"
+                        + "  \"threads\": %d,\n  \"matches\": %d,\n  \"wallSeconds\": %.2f,\n  \"results\": [",
+                depthA, depthB, maps, cells, maxSeconds, threads, total, wall));
+        for (int i = 0; i < results.size(); i++) {
+            Result r = results.get(i);
+            sb.append(i == 0 ? "\n" : ",\n");
+            sb.append(String.format(Locale.ROOT,
+                    "    {\"regenIntervalTicks\": %d, \"troopSpeed\": %.1f, \"sendIntervalTicks\": %d, \"sendFraction\": %.3f, "
+                            + "\"matches\": %d, \"aWins\": %d, \"bWins\": %d, \"unfinished\": %d, \"aWinRate\": %.4f, "
+                            + "\"redWins\": %d, \"blueWins\": %d, \"redWinRate\": %.4f, "
+                            + "\"durationMeanS\": %.2f, \"durationP50S\": %.2f, \"durationP90S\": %.2f, "
+                            + "\"troopsSentMean\": %.1f, \"decisionMeanMs\": %.3f}",
+                    r.rules.regenIntervalTicks, r.rules.troopSpeed, r.rules.sendIntervalTicks, r.rules.sendFraction,
+                    r.matches, r.aWins, r.bWins, r.unfinished, rate(r.aWins, r.matches),
+                    r.redWins, r.blueWins, rate(r.redWins, r.matches),
+                    r.durationMean, r.durationP50, r.durationP90, r.troopsMean, r.decisionMean));
+        }
+        sb.append("\n  ]\n}\n");
+        Files.write(file, sb.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static int[] ints(String csv) {
+        return Arrays.stream(csv.split(",")).mapToInt(s -> Integer.parseInt(s.trim())).toArray();
+    }
+
+    private static double[] doubles(String csv) {
+        return Arrays.stream(csv.split(",")).mapToDouble(s -> Double.parseDouble(s.trim())).toArray();
+    }
+}
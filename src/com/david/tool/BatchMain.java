@@ -0,0 +1,290 @@
+package com.david.tool;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * 无界面批处理：遍历目录中的地图图片，逐个分割并导出地图包。
+ * <p>
+ * 用法：{@code java -cp out com.david.tool.BatchMain <输入目录> [--out 目录] [--threads N] [--ai] [--zip]}
+ * <p>
+ * 流水线：解码（IO）→ 分割（CPU，N 线程）→ 识别名称（可选，OCR）→ 导出（IO），各阶段独立线程池并行，
+ * 同时在途的地图数受信号量限制，避免大图堆积占满内存。分割与导出复用 {@link ImageProcessor} / {@link MapExporter} /
+ * {@link OutputSink#forConfig(Config, String)}，与 HTTP 服务端一致。
+ * <p>
+ * 断点续跑：输出目录下的 {@value #MANIFEST} 每完成一项追加一行（状态、相对路径、大小、修改时间、输出位置），
+ * 重新运行时跳过已成功且文件未变化的项；失败项会重试。
+ */
+public class BatchMain {
+    static final String MANIFEST = "batch_manifest.tsv";
+    private static final Set<String> EXTENSIONS = new HashSet<>(Arrays.asList("png", "jpg", "jpeg", "bmp", "gif"));
+
+    public static void main(String[] args) throws Exception {
+        Path input = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        boolean runAI = false;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--out": System.setProperty("maptool.output.dir", args[++i]); break;
+                case "--threads": threads = Integer.parseInt(args[++i]); break;
+                case "--ai": runAI = true; break;
+                case "--zip": System.setProperty("maptool.output.format", "zip"); break;
+                default:
+                    if (args[i].startsWith("--") || input != null) usage("未知参数：" + args[i]);
+                    input = Paths.get(args[i]);
+            }
+        }
+        if (input == null || !Files.isDirectory(input)) usage("输入目录不存在：" + input);
+        if (threads < 1) usage("--threads 必须 >= 1");
+        Config cfg = Config.reload();
+
+        Path outDir = Paths.get(cfg.outputDir);
+        Files.createDirectories(outDir);
+        Batch batch = new Batch(input, outDir.resolve(MANIFEST), threads, runAI);
+        System.exit(batch.run(cfg) == 0 ? 0 : 2);
+    }
+
+    private static void usage(String msg) {
+        System.err.println(msg);
+        System.err.println("用法: java -cp out com.david.tool.BatchMain <输入目录> [--out 目录] [--threads N] [--ai] [--zip]");
+        System.exit(1);
+    }
+
+    /** 一次批处理运行；返回失败项数 */
+    static class Batch {
+        final Path input;
+        final Path manifest;
+        final int threads;
+        final boolean runAI;
+
+        final AtomicInteger done = new AtomicInteger(), failed = new AtomicInteger();
+        final AtomicLong pixels = new AtomicLong();
+        // 各阶段累计耗时（纳秒）：解码、分割、识别、导出
+        final AtomicLong tDecode = new AtomicLong(), tSegment = new AtomicLong(), tLabel = new AtomicLong(), tExport = new AtomicLong();
+        private BufferedWriter manifestOut;
+
+        Batch(Path input, Path manifest, int threads, boolean runAI) {
+            this.input = input;
+            this.manifest = manifest;
+            this.threads = threads;
+            this.runAI = runAI;
+        }
+
+        int run(Config cfg) throws IOException, InterruptedException {
+            Set<String> completed = loadManifest(manifest);
+            List<Item> items = new ArrayList<>();
+            int skipped = 0;
+            try (Stream<Path> walk = Files.walk(input)) {
+                for (Path p : (Iterable<Path>) walk.sorted()::iterator) {
+                    if (!Files.isRegularFile(p) || !EXTENSIONS.contains(extension(p))) continue;
+                    BasicFileAttributes attr = Files.readAttributes(p, BasicFileAttributes.class);
+                    Item it = new Item(p, input.relativize(p).toString().replace('\\', '/'), attr.size(), attr.lastModifiedTime().toMillis());
+                    if (completed.contains(it.key())) skipped++;
+                    else items.add(it);
+                }
+            }
+            System.out.printf("Batch: %d to process, %d already done (%s)%n", items.size(), skipped, manifest);
+
+            ExecutorService decodePool = Executors.newFixedThreadPool(2, named("batch-decode"));
+            ExecutorService segmentPool = Executors.newFixedThreadPool(threads, named("batch-segment"));
+            ExecutorService labelPool = Executors.newFixedThreadPool(runAI ? Math.max(1, threads / 2) : 1, named("batch-label"));
+            // 归档级 PNG 压缩与分割耗时相近，导出线程数随分割线程数增长
+            int exportThreads = Math.max(2, threads / 2);
+            ExecutorService exportPool = Executors.newFixedThreadPool(exportThreads, named("batch-export"));
+            // 在途上限：每个分割 / 导出线程一张，外加两张解码缓冲
+            Semaphore inFlight = new Semaphore(threads + exportThreads + 2);
+            List<CompletableFuture<Void>> futures = new ArrayList<>(items.size());
+            long t0 = System.nanoTime();
+            try (BufferedWriter w = Files.newBufferedWriter(manifest, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                manifestOut = w;
+                for (Item it : items) {
+                    inFlight.acquire();
+                    CompletableFuture<Void> f = CompletableFuture
+                            .supplyAsync(() -> decode(it), decodePool)
+                            .thenApplyAsync(img -> segment(img, cfg), segmentPool)
+                            .thenApplyAsync(seg -> label(seg), labelPool)
+                            .thenAcceptAsync(seg -> export(it, seg, cfg), exportPool)
+                            .handle((v, ex) -> {
+                                it.image = null;
+                                if (ex != null) fail(it, ex instanceof CompletionException ? ex.getCause() : ex);
+                                else record("OK", it);
+                                inFlight.release();
+                                progress(items.size(), t0);
+                                return null;
+                            });
+                    futures.add(f);
+                }
+                CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+            } finally {
+                decodePool.shutdown();
+                segmentPool.shutdown();
+                labelPool.shutdown();
+                exportPool.shutdown();
+            }
+            summary(System.nanoTime() - t0, skipped);
+            return failed.get();
+        }
+
+        private BufferedImage decode(Item it) {
+            long t = System.nanoTime();
+            try {
+                BufferedImage img = ImageIO.read(it.path.toFile());
+                if (img == null) throw new IOException("无法识别该图片格式");
+                it.image = img;
+                pixels.addAndGet((long) img.getWidth() * img.getHeight());
+                return img;
+            } catch (IOException ex) {
+                throw new CompletionException(ex);
+            } finally {
+                tDecode.addAndGet(System.nanoTime() - t);
+            }
+        }
+
+        private Segmentation segment(BufferedImage img, Config cfg) {
+            long t = System.nanoTime();
+            try {
+                return ImageProcessor.segment(img, cfg.quantizeStep);
+            } finally {
+                tSegment.addAndGet(System.nanoTime() - t);
+            }
+        }
+
+        private Segmentation label(Segmentation seg) {
+            if (!runAI) return seg;
+            long t = System.nanoTime();
+            AIClient ai = new DummyAIClient();
+            for (Region r : seg.regions) {
+                try { r.name = ai.identifyLabel(r.image()); } catch (Exception ignored) {}
+            }
+            tLabel.addAndGet(System.nanoTime() - t);
+            return seg;
+        }
+
+        private void export(Item it, Segmentation seg, Config cfg) {
+            long t = System.nanoTime();
+            String id = OutputIds.newId("batch_");
+            try (OutputSink sink = OutputSink.forConfig(cfg, id)) {
+                MapExporter.export(it.image, seg.regions, seg.graph, sink, id, ExportEncoder.forArchive(cfg));
+                it.location = sink.location();
+            } catch (IOException ex) {
+                throw new CompletionException(ex);
+            } finally {
+                tExport.addAndGet(System.nanoTime() - t);
+            }
+        }
+
+        private void fail(Item it, Throwable ex) {
+            failed.incrementAndGet();
+            System.err.println("FAILED " + it.relPath + ": " + ex);
+            record("FAILED", it);
+        }
+
+        /** 追加一行并立即刷出，进程崩溃时最多丢失正在写的那一行（读取时会被忽略） */
+        private synchronized void record(String status, Item it) {
+            try {
+                manifestOut.write(status + "\t" + escape(it.relPath) + "\t" + it.size + "\t" + it.mtime + "\t"
+                        + escape(it.location == null ? "" : it.location) + "\n");
+                manifestOut.flush();
+            } catch (IOException ex) {
+                System.err.println("Cannot write manifest: " + ex.getMessage());
+            }
+        }
+
+        private void progress(int total, long t0) {
+            int n = done.incrementAndGet();
+            if (n % 50 == 0 || n == total) {
+                double s = (System.nanoTime() - t0) / 1e9;
+                System.out.printf("  %d/%d  %.1f maps/s%n", n, total, n / s);
+            }
+        }
+
+        private void summary(long elapsedNs, int skipped) {
+            double s = elapsedNs / 1e9;
+            int n = done.get(), ok = n - failed.get();
+            System.out.println("==== Batch summary ====");
+            System.out.printf("processed %d (ok %d, failed %d), skipped %d, elapsed %.1f s%n", n, ok, failed.get(), skipped, s);
+            if (n > 0 && s > 0) {
+                System.out.printf("throughput %.2f maps/s, %.1f MP/s%n", n / s, pixels.get() / 1e6 / s);
+                System.out.printf("avg per map: decode %.0f ms, segment %.0f ms, label %.0f ms, export %.0f ms%n",
+                        tDecode.get() / 1e6 / n, tSegment.get() / 1e6 / n, tLabel.get() / 1e6 / n, tExport.get() / 1e6 / n);
+            }
+        }
+    }
+
+    static class Item {
+        final Path path;
+        final String relPath;
+        final long size;
+        final long mtime;
+        volatile BufferedImage image;
+        volatile String location;
+
+        Item(Path path, String relPath, long size, long mtime) {
+            this.path = path;
+            this.relPath = relPath;
+            this.size = size;
+            this.mtime = mtime;
+        }
+
+        /** 清单中判定“已完成”的键：路径 + 大小 + 修改时间，文件变化后会重新处理 */
+        String key() {
+            return relPath + "\t" + size + "\t" + mtime;
+        }
+    }
+
+    /** 读取清单中状态为 OK 的项；格式不完整的行（崩溃时写了一半）忽略 */
+    static Set<String> loadManifest(Path manifest) throws IOException {
+        Set<String> done = new HashSet<>();
+        if (!Files.isRegularFile(manifest)) return done;
+        for (String line : Files.readAllLines(manifest, StandardCharsets.UTF_8)) {
+            String[] f = line.split("\t", -1);
+            if (f.length != 5 || !"OK".equals(f[0])) continue;
+            done.add(unescape(f[1]) + "\t" + f[2] + "\t" + f[3]);
+        }
+        return done;
+    }
+
+    private static String escape(String s) {
+        return s.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n");
+    }
+
+    private static String unescape(String s) {
+        StringBuilder sb = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '\\' && i + 1 < s.length()) {
+                char n = s.charAt(++i);
+                sb.append(n == 't' ? '\t' : n == 'n' ? '\n' : n);
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String extension(Path p) {
+        String name = p.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return dot < 0 ? "" : name.substring(dot + 1).toLowerCase(Locale.ROOT);
+    }
+
+    private static ThreadFactory named(String prefix) {
+        AtomicInteger n = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, prefix + "-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+}
@@ -1,17 +1,248 @@
 package com.david.tool;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.*;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
 /**
- * 全局配置点（目前仅示例），可以扩展为读取配置文件或环境变量。
+ * 全局配置：不可变快照 + 热加载。
+ * <p>
+ * 加载优先级（后者覆盖前者）：内置默认值 → 配置文件 → 环境变量 → 系统属性。
+ * - 配置文件：系统属性 {@code maptool.config} 或环境变量 {@code MAPTOOL_CONFIG} 指定，默认 {@code maptool.properties}
+ * - 环境变量：键名转大写并把 '.' 换成 '_'，加前缀 {@code MAPTOOL_}，如 {@code server.port -> MAPTOOL_SERVER_PORT}
+ * - 系统属性：加前缀 {@code maptool.}，如 {@code -Dmaptool.server.port=9090}
+ * <p>
+ * 热路径通过 {@link #get()} 读取当前快照（一次 volatile 读，无锁）；一次请求内应只取一次快照，保证前后一致。
+ * 调用 {@link #startWatching()} 后，配置文件变化会自动重新加载并通知监听器。
  */
-public class Config {
-    // 可配置为 tesseract 可执行路径
-    public static String TESSERACT_PATH = "tesseract";
+public final class Config {
+    // tesseract 可执行路径与识别语言
+    public final String tesseractPath;
+    public final String tesseractLang;
+
+    // 外部 AI 服务的 HTTP endpoint
+    public final String aiHttpEndpoint;
+
+    // HTTP 服务配置（用于 n8n 接入）；端口 0 表示由系统分配
+    public final int serverPort;
+    // 若不为空，请求需包含 Header: X-API-Key: <apiKey>
+    public final String apiKey;
+    // 请求处理线程池大小
+    public final int serverThreads;
+    // 同时处理的 /process 请求上限，超出返回 503
+    public final int maxConcurrentRequests;
+
+    // 分割参数：量化步长；后处理是否填充孔洞、平滑迭代次数
+    public final int quantizeStep;
+    // 可用时使用 Vector API 量化内核（见 QuantizeKernel）
+    public final boolean simd;
+    public final boolean fillHoles;
+    public final int smoothIterations;
+    // 像素数不小于该值的图片改用堆外标签缓冲（0 表示关闭）；scratchDir 非空时缓冲映射到该目录下的临时文件，否则用直接内存
+    public final long offHeapPixels;
+    public final String scratchDir;
+    // 轮廓简化容差（像素），负数表示不提取轮廓
+    public final double contourTolerance;
+
+    // 缓存预算（字节），供需要缓存中间结果的模块使用
+    public final long cacheBudgetBytes;
+
+    // 拉取远程图片的超时
+    public final int connectTimeoutMs;
+    public final int readTimeoutMs;
+
+    // 导出编码：PNG deflate 级别（fast 用于 HTTP 响应，archive 用于 GUI 导出 / 留存），图片格式 png|qoi
+    public final int pngLevelFast;
+    public final int pngLevelArchive;
+    public final String exportImageFormat;
+
+    // 导出根目录与服务端留存格式（dir：目录 + 单文件；zip：每次导出一个 ZIP 文件）
+    public final String outputDir;
+    public final String outputFormat;
+
+    private Config(Properties p) {
+        this.tesseractPath = str(p, "tesseract.path", "tesseract");
+        this.tesseractLang = str(p, "tesseract.lang", "chi_sim");
+        this.aiHttpEndpoint = str(p, "ai.http.endpoint", "");
+        this.serverPort = intVal(p, "server.port", 8080, 0, 65535);
+        this.apiKey = str(p, "server.apiKey", "");
+        this.serverThreads = intVal(p, "server.threads", 4, 1, 1024);
+        this.maxConcurrentRequests = intVal(p, "server.maxConcurrent", 8, 1, 100_000);
+        this.quantizeStep = intVal(p, "segment.quantizeStep", 32, 1, 256);
+        this.simd = Boolean.parseBoolean(str(p, "segment.simd", "true"));
+        this.fillHoles = Boolean.parseBoolean(str(p, "segment.fillHoles", "true"));
+        this.smoothIterations = intVal(p, "segment.smoothIterations", 0, 0, 16);
+        this.offHeapPixels = longVal(p, "segment.offHeapPixels", 100_000_000L, 0, Long.MAX_VALUE);
+        this.scratchDir = str(p, "segment.scratchDir", "");
+        this.contourTolerance = doubleVal(p, "contour.tolerance", 1.0);
+        this.cacheBudgetBytes = longVal(p, "cache.budgetBytes", 256L * 1024 * 1024, 0, Long.MAX_VALUE);
+        this.connectTimeoutMs = intVal(p, "http.connectTimeoutMs", 5000, 0, Integer.MAX_VALUE);
+        this.readTimeoutMs = intVal(p, "http.readTimeoutMs", 10000, 0, Integer.MAX_VALUE);
+        this.pngLevelFast = intVal(p, "export.pngLevel.fast", 1, 0, 9);
+        this.pngLevelArchive = intVal(p, "export.pngLevel.archive", 9, 0, 9);
+        this.exportImageFormat = choice(p, "export.imageFormat", "png", "png", "qoi");
+        this.outputDir = str(p, "output.dir", "output_maps");
+        this.outputFormat = choice(p, "output.format", "dir", "dir", "zip");
+    }
+
+    /** 所有已知键，用于从环境变量与系统属性中提取覆盖值 */
+    private static final String[] KEYS = {
+            "tesseract.path", "tesseract.lang", "ai.http.endpoint",
+            "server.port", "server.apiKey", "server.threads", "server.maxConcurrent",
+            "segment.quantizeStep", "segment.simd", "segment.fillHoles", "segment.smoothIterations",
+            "segment.offHeapPixels", "segment.scratchDir", "contour.tolerance", "cache.budgetBytes",
+            "http.connectTimeoutMs", "http.readTimeoutMs",
+            "export.pngLevel.fast", "export.pngLevel.archive", "export.imageFormat",
+            "output.dir", "output.format"
+    };
+
+    private static volatile Config current = initial();
+    private static final List<Consumer<Config>> listeners = new CopyOnWriteArrayList<>();
+    private static Thread watcher;
+
+    /** 当前配置快照（无锁） */
+    public static Config get() {
+        return current;
+    }
+
+    /** 注册配置变更监听器（热加载后在 watcher 线程回调） */
+    public static void addListener(Consumer<Config> listener) {
+        listeners.add(listener);
+    }
+
+    /** 重新加载配置并通知监听器；加载失败时保留旧快照 */
+    public static synchronized Config reload() {
+        Config next;
+        try {
+            next = load();
+        } catch (RuntimeException ex) {
+            System.err.println("Config reload failed, keeping previous: " + ex.getMessage());
+            return current;
+        }
+        current = next;
+        for (Consumer<Config> l : listeners) {
+            try { l.accept(next); } catch (RuntimeException ex) { ex.printStackTrace(); }
+        }
+        return next;
+    }
+
+    /** 首次加载；配置有误时不让类初始化失败，打印原因并退回内置默认值（修正后可由热加载生效） */
+    private static Config initial() {
+        try {
+            return load();
+        } catch (RuntimeException ex) {
+            System.err.println("Config load failed, using defaults: " + ex.getMessage());
+            return new Config(new Properties());
+        }
+    }
+
+    /** 配置文件路径 */
+    public static Path configFile() {
+        String f = System.getProperty("maptool.config");
+        if (f == null || f.isEmpty()) f = System.getenv("MAPTOOL_CONFIG");
+        if (f == null || f.isEmpty()) f = "maptool.properties";
+        return Paths.get(f).toAbsolutePath();
+    }
+
+    /**
+     * 启动后台守护线程监听配置文件所在目录，文件变化时自动 {@link #reload()}。
+     * 重复调用无副作用。
+     */
+    public static synchronized void startWatching() {
+        if (watcher != null) return;
+        Path file = configFile();
+        Path dir = file.getParent();
+        if (dir == null || !Files.isDirectory(dir)) return;
+        watcher = new Thread(() -> {
+            try (WatchService ws = dir.getFileSystem().newWatchService()) {
+                dir.register(ws, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+                while (!Thread.currentThread().isInterrupted()) {
+                    WatchKey key = ws.take();
+                    boolean changed = false;
+                    for (WatchEvent<?> ev : key.pollEvents()) {
+                        Object ctx = ev.context();
+                        if (ctx instanceof Path && file.getFileName().equals(ctx)) changed = true;
+                    }
+                    key.reset();
+                    if (changed) {
+                        Config before = current;
+                        if (reload() != before) System.out.println("Config reloaded from " + file);
+                    }
+                }
+            } catch (InterruptedException ignored) {
+                Thread.currentThread().interrupt();
+            } catch (IOException ex) {
+                System.err.println("Config watcher stopped: " + ex.getMessage());
+            }
+        }, "config-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    private static Config load() {
+        Properties p = new Properties();
+        Path file = configFile();
+        if (Files.isRegularFile(file)) {
+            try (InputStream in = Files.newInputStream(file)) {
+                p.load(in);
+            } catch (IOException ex) {
+                throw new IllegalStateException("Cannot read " + file + ": " + ex.getMessage(), ex);
+            }
+        }
+        Map<String, String> env = System.getenv();
+        for (String k : KEYS) {
+            String ev = env.get("MAPTOOL_" + k.replace('.', '_').toUpperCase(Locale.ROOT));
+            if (ev != null) p.setProperty(k, ev);
+            String sv = System.getProperty("maptool." + k);
+            if (sv != null) p.setProperty(k, sv);
+        }
+        return new Config(p);
+    }
+
+    private static String str(Properties p, String key, String def) {
+        String v = p.getProperty(key);
+        return v == null ? def : v.trim();
+    }
+
+    /** 取值须为 allowed 之一（不区分大小写），返回小写形式 */
+    private static String choice(Properties p, String key, String def, String... allowed) {
+        String v = str(p, key, def).toLowerCase(Locale.ROOT);
+        for (String a : allowed) {
+            if (a.equals(v)) return v;
+        }
+        throw new IllegalArgumentException(key + " must be one of " + String.join("|", allowed) + ": " + v);
+    }
+
+    private static double doubleVal(Properties p, String key, double def) {
+        String v = p.getProperty(key);
+        if (v == null || v.trim().isEmpty()) return def;
+        try {
+            return Double.parseDouble(v.trim());
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("Invalid number for " + key + ": " + v);
+        }
+    }
 
-    // 可配置为外部 AI 服务的 HTTP endpoint
-    public static String AI_HTTP_ENDPOINT = "";
+    private static int intVal(Properties p, String key, int def, int min, int max) {
+        return (int) longVal(p, key, def, min, max);
+    }
 
-    // HTTP 服务配置（用于 n8n 接入）
-    public static int SERVER_PORT = 8080;
-    // 若不为空，请求需包含 Header: X-API-Key: <API_KEY>
-    public static String API_KEY = "";
+    private static long longVal(Properties p, String key, long def, long min, long max) {
+        String v = p.getProperty(key);
+        if (v == null || v.trim().isEmpty()) return def;
+        long n;
+        try {
+            n = Long.parseLong(v.trim());
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("Invalid number for " + key + ": " + v);
+        }
+        if (n < min || n > max) throw new IllegalArgumentException(key + " out of range [" + min + ", " + max + "]: " + n);
+        return n;
+    }
 }
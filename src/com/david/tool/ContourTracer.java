@@ -0,0 +1,249 @@
+package com.david.tool;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 由区域掩码提取矢量轮廓：marching squares 追踪所有闭合边界，再用 Douglas-Peucker 按容差简化。
+ * <p>
+ * 单元格以 2×2 像素中心为角点；在每个单元格内，从“由外到内”的交叉边沿顺时针找到第一条“由内到外”的交叉边，
+ * 连成一段。该规则旋转不变，因此所有外环同向、孔洞反向；鞍点（对角）按 4 连通处理，与分割阶段的连通定义一致。
+ * 每个单元格至多被访问常数次，追踪为 O(bounds 面积)。
+ */
+public class ContourTracer {
+    // 单元格边：上、右、下、左（顺时针）
+    private static final int T = 0, R = 1, B = 2, L = 3;
+
+    /** 为所有区域生成轮廓（写入 {@link Region#contour}） */
+    public static void traceAll(List<Region> regions, double tolerance) {
+        traceAll(regions, tolerance, SegmentProgress.NONE);
+    }
+
+    /** 逐区域提取并报告进度（占整体进度的 70%–100%）；线程被中断时抛出 CancellationException */
+    public static void traceAll(List<Region> regions, double tolerance, SegmentProgress progress) {
+        for (int i = 0; i < regions.size(); i++) {
+            Region r = regions.get(i);
+            SegmentProgress.checkCancelled();
+            progress.update("contour", ImageProcessor.P_CONTOUR + (1 - ImageProcessor.P_CONTOUR) * i / regions.size());
+            if (r.mask == null) continue;
+            Rectangle b = r.bounds != null ? r.bounds : new Rectangle(0, 0, r.mask.getWidth(), r.mask.getHeight());
+            r.contour = trace(r.mask, b.x, b.y, tolerance);
+        }
+    }
+
+    /**
+     * @param mask      掩码（非黑即实）
+     * @param offsetX   掩码左上角在原图中的位置
+     * @param tolerance Douglas-Peucker 容差（像素），0 表示只去除共线点
+     */
+    public static RegionContour trace(BufferedImage mask, int offsetX, int offsetY, double tolerance) {
+        int w = mask.getWidth();
+        int h = mask.getHeight();
+        boolean[] in = readMask(mask);
+
+        // 单元格 (cx, cy)，cx ∈ [-1, w-1]，cy ∈ [-1, h-1]；gw × gh 个
+        int gw = w + 1, gh = h + 1;
+        byte[] visited = new byte[gw * gh];
+        List<float[]> rings = new ArrayList<>();
+        float[] buf = new float[256];
+
+        for (int cy = -1; cy < h; cy++) {
+            for (int cx = -1; cx < w; cx++) {
+                int crossings = crossings(in, w, h, cx, cy);
+                if (crossings == 0) continue;
+                for (int e = 0; e < 4; e++) {
+                    // 只从未访问过的“由外到内”边出发
+                    if ((crossings & (1 << e)) == 0) continue;
+                    int cell = (cx + 1) + (cy + 1) * gw;
+                    if ((visited[cell] & (1 << e)) != 0) continue;
+                    int n = 0;
+                    int x = cx, y = cy, edge = e;
+                    do {
+                        int c = (x + 1) + (y + 1) * gw;
+                        visited[c] |= (byte) (1 << edge);
+                        if (2 * n + 2 > buf.length) buf = Arrays.copyOf(buf, buf.length * 2);
+                        // 边中点（像素中心坐标 + 0.5 → 原图连续坐标）
+                        buf[2 * n] = offsetX + x + 0.5f + (edge == R ? 1f : edge == L ? 0f : 0.5f);
+                        buf[2 * n + 1] = offsetY + y + 0.5f + (edge == B ? 1f : edge == T ? 0f : 0.5f);
+                        n++;
+                        int cr = crossings(in, w, h, x, y);
+                        int out = edge;
+                        do { out = (out + 1) & 3; } while ((cr & (16 << out)) == 0);
+                        // 穿过 out 边进入相邻单元格，在其中为相对的边
+                        switch (out) {
+                            case T: y--; break;
+                            case R: x++; break;
+                            case B: y++; break;
+                            default: x--; break;
+                        }
+                        edge = (out + 2) & 3;
+                    } while (x != cx || y != cy || edge != e);
+                    float[] ring = simplify(buf, n, tolerance);
+                    if (ring.length >= 6) rings.add(ring);
+                }
+            }
+        }
+        return assemble(rings);
+    }
+
+    /**
+     * 返回单元格的交叉边位掩码：低 4 位为“由外到内”边（顺时针方向看），高 4 位为“由内到外”边。
+     */
+    private static int crossings(boolean[] in, int w, int h, int cx, int cy) {
+        boolean tl = at(in, w, h, cx, cy), tr = at(in, w, h, cx + 1, cy);
+        boolean br = at(in, w, h, cx + 1, cy + 1), bl = at(in, w, h, cx, cy + 1);
+        int m = 0;
+        m |= edgeBits(tl, tr, T);
+        m |= edgeBits(tr, br, R);
+        m |= edgeBits(br, bl, B);
+        m |= edgeBits(bl, tl, L);
+        return m;
+    }
+
+    private static int edgeBits(boolean from, boolean to, int e) {
+        if (from == to) return 0;
+        return to ? (1 << e) : (16 << e);
+    }
+
+    private static boolean at(boolean[] in, int w, int h, int x, int y) {
+        return x >= 0 && y >= 0 && x < w && y < h && in[y * w + x];
+    }
+
+    private static boolean[] readMask(BufferedImage mask) {
+        int w = mask.getWidth(), h = mask.getHeight();
+        boolean[] in = new boolean[w * h];
+        if (mask.getColorModel() == ExportEncoder.MASK_COLOR_MODEL) {
+            Raster raster = mask.getRaster();
+            int[] row = new int[w];
+            for (int y = 0; y < h; y++) {
+                raster.getSamples(0, y, w, 1, 0, row);
+                for (int x = 0; x < w; x++) in[y * w + x] = row[x] != 0;
+            }
+        } else {
+            int[] row = new int[w];
+            for (int y = 0; y < h; y++) {
+                mask.getRGB(0, y, w, 1, row, 0, w);
+                for (int x = 0; x < w; x++) in[y * w + x] = (row[x] & 0x00ffffff) != 0;
+            }
+        }
+        return in;
+    }
+
+    /**
+     * 闭合环的 Douglas-Peucker 简化：以首点与距其最远点为锚点拆成两条折线分别简化（显式栈，避免深递归）。
+     */
+    static float[] simplify(float[] pts, int n, double tolerance) {
+        if (n < 4) return Arrays.copyOf(pts, 2 * n);
+        int far = 0;
+        double best = -1;
+        for (int i = 1; i < n; i++) {
+            double dx = pts[2 * i] - pts[0], dy = pts[2 * i + 1] - pts[1];
+            double d = dx * dx + dy * dy;
+            if (d > best) { best = d; far = i; }
+        }
+        boolean[] keep = new boolean[n + 1];
+        keep[0] = keep[far] = keep[n] = true;
+        double tol = Math.max(tolerance, 1e-3);
+        int[] stack = new int[64];
+        int sp = 0;
+        stack[sp++] = 0; stack[sp++] = far;
+        stack[sp++] = far; stack[sp++] = n;
+        while (sp > 0) {
+            int b = stack[--sp], a = stack[--sp];
+            if (b - a < 2) continue;
+            int ia = 2 * a, ib = 2 * (b % n);
+            double ax = pts[ia], ay = pts[ia + 1], bx = pts[ib], by = pts[ib + 1];
+            double dx = bx - ax, dy = by - ay;
+            double len = Math.hypot(dx, dy);
+            int idx = -1;
+            double dmax = tol;
+            for (int i = a + 1; i < b; i++) {
+                double px = pts[2 * i] - ax, py = pts[2 * i + 1] - ay;
+                double d = len < 1e-9 ? Math.hypot(px, py) : Math.abs(px * dy - py * dx) / len;
+                if (d > dmax) { dmax = d; idx = i; }
+            }
+            if (idx >= 0) {
+                keep[idx] = true;
+                if (sp + 4 > stack.length) stack = Arrays.copyOf(stack, stack.length * 2);
+                stack[sp++] = a; stack[sp++] = idx;
+                stack[sp++] = idx; stack[sp++] = b;
+            }
+        }
+        int m = 0;
+        for (int i = 0; i < n; i++) if (keep[i]) m++;
+        float[] out = new float[2 * m];
+        int j = 0;
+        for (int i = 0; i < n; i++) {
+            if (!keep[i]) continue;
+            out[j++] = pts[2 * i];
+            out[j++] = pts[2 * i + 1];
+        }
+        return out;
+    }
+
+    /** 按有向面积区分外环与孔洞（面积最大的环必为外环，以其符号为准），并为孔洞找到包含它的最小外环 */
+    private static RegionContour assemble(List<float[]> rings) {
+        int n = rings.size();
+        double[] area = new double[n];
+        int largest = -1;
+        for (int r = 0; r < n; r++) {
+            area[r] = signedArea(rings.get(r));
+            if (largest < 0 || Math.abs(area[r]) > Math.abs(area[largest])) largest = r;
+        }
+        int[] parent = new int[n];
+        Arrays.fill(parent, -1);
+        if (largest >= 0) {
+            double outerSign = Math.signum(area[largest]);
+            for (int r = 0; r < n; r++) {
+                if (Math.signum(area[r]) == outerSign) continue;
+                float[] hole = rings.get(r);
+                int bestOuter = -1;
+                for (int o = 0; o < n; o++) {
+                    if (Math.signum(area[o]) != outerSign) continue;
+                    if (!contains(rings.get(o), hole[0], hole[1])) continue;
+                    if (bestOuter < 0 || Math.abs(area[o]) < Math.abs(area[bestOuter])) bestOuter = o;
+                }
+                parent[r] = bestOuter >= 0 ? bestOuter : largest;
+            }
+        }
+        int total = 0;
+        for (float[] ring : rings) total += ring.length;
+        float[] xy = new float[total];
+        int[] start = new int[n + 1];
+        int pos = 0;
+        for (int r = 0; r < n; r++) {
+            float[] ring = rings.get(r);
+            System.arraycopy(ring, 0, xy, pos, ring.length);
+            start[r] = pos / 2;
+            pos += ring.length;
+        }
+        start[n] = pos / 2;
+        return new RegionContour(xy, start, parent);
+    }
+
+    private static double signedArea(float[] ring) {
+        int n = ring.length / 2;
+        double s = 0;
+        for (int i = 0, j = n - 1; i < n; j = i++) {
+            s += (double) ring[2 * j] * ring[2 * i + 1] - (double) ring[2 * i] * ring[2 * j + 1];
+        }
+        return s / 2;
+    }
+
+    private static boolean contains(float[] ring, float x, float y) {
+        int n = ring.length / 2;
+        boolean c = false;
+        for (int i = 0, j = n - 1; i < n; j = i++) {
+            float yi = ring[2 * i + 1], yj = ring[2 * j + 1];
+            if ((yi > y) != (yj > y)) {
+                float xi = ring[2 * i], xj = ring[2 * j];
+                if (x < (xj - xi) * (y - yi) / (yj - yi) + xi) c = !c;
+            }
+        }
+        return c;
+    }
+}
@@ -0,0 +1,44 @@
+package com.david.tool;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * 目录输出：每个条目一个文件（与早期 output_maps/&lt;id&gt;/images、masks 布局一致）。
+ * 目录通过 {@link Files#createDirectory} 原子创建，若 id 冲突直接失败而不是覆盖他人的输出。
+ */
+public class DirectoryOutputSink implements OutputSink {
+    private final Path dir;
+
+    public DirectoryOutputSink(File root, String id) throws IOException {
+        Path r = root.toPath();
+        Files.createDirectories(r);
+        this.dir = Files.createDirectory(r.resolve(id));
+    }
+
+    public Path getDir() {
+        return dir;
+    }
+
+    @Override
+    public OutputStream open(String path) throws IOException {
+        Path p = dir.resolve(path).normalize();
+        if (!p.startsWith(dir)) throw new IOException("Entry escapes output directory: " + path);
+        Files.createDirectories(p.getParent());
+        return new BufferedOutputStream(Files.newOutputStream(p), 64 * 1024);
+    }
+
+    @Override
+    public String location() {
+        return dir.toAbsolutePath().toString();
+    }
+
+    @Override
+    public void close() {
+        // 每个条目独立关闭，目录本身无需释放
+    }
+}
@@ -11,17 +11,18 @@ import java.util.UUID;
 
 /**
  * 简易的 AI 占位实现：
- * 1) 尝试使用系统已安装的 tesseract（需在 PATH 中或在 Config 中配置）做 OCR；
+ * 1) 尝试使用系统已安装的 tesseract（需在 PATH 中或通过 Config 的 tesseract.path 配置）做 OCR；
  * 2) 若没有 tesseract，则返回基于随机 UUID 的占位名称（用户可手动修改或替换实现）。
  */
 public class DummyAIClient implements AIClient {
     @Override
     public String identifyLabel(BufferedImage regionImage) throws Exception {
         // 尝试使用 tesseract（如果可用）
+        Config cfg = Config.get();
         try {
             File tmp = File.createTempFile("region_", ".png");
             ImageIO.write(regionImage, "png", tmp);
-            ProcessBuilder pb = new ProcessBuilder("tesseract", tmp.getAbsolutePath(), "stdout", "-l", "chi_sim");
+            ProcessBuilder pb = new ProcessBuilder(cfg.tesseractPath, tmp.getAbsolutePath(), "stdout", "-l", cfg.tesseractLang);
             pb.redirectErrorStream(true);
             Process p = pb.start();
             InputStream in = p.getInputStream();
@@ -0,0 +1,153 @@
+package com.david.tool;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.awt.image.WritableRaster;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Locale;
+
+/**
+ * 导出图片编码层：按产物类型选择像素格式，按使用场景选择压缩级别。
+ * <ul>
+ *   <li>掩码（MASK）：1-bit 调色板 PNG（透明 / 白）</li>
+ *   <li>区域图与原图（CROP / ORIGINAL）：颜色数 ≤ 256 时转为调色板 PNG，否则保持 ARGB</li>
+ *   <li>格式 {@code qoi}：内部消费方可用 QOI，编码速度远快于 deflate</li>
+ * </ul>
+ * 压缩级别为 deflate 0..9：HTTP 响应用 {@link #forResponse}（偏速度），GUI / 归档用 {@link #forArchive}（偏体积）。
+ * PNG 写入使用内存缓存流，避免 ImageIO 默认的临时文件缓存。
+ */
+public class ExportEncoder {
+    public enum Artifact { ORIGINAL, CROP, MASK }
+
+    /** 1-bit 掩码调色板：0 = 全透明，1 = 不透明白 */
+    public static final IndexColorModel MASK_COLOR_MODEL = new IndexColorModel(1, 2,
+            new byte[]{0, (byte) 0xff}, new byte[]{0, (byte) 0xff}, new byte[]{0, (byte) 0xff}, new byte[]{0, (byte) 0xff});
+
+    private final int level;
+    private final String format;
+
+    public ExportEncoder(int level, String format) {
+        if (level < 0 || level > 9) throw new IllegalArgumentException("deflate level must be 0..9: " + level);
+        String f = format.toLowerCase(Locale.ROOT);
+        if (!f.equals("png") && !f.equals("qoi")) throw new IllegalArgumentException("Unsupported image format: " + format);
+        this.level = level;
+        this.format = f;
+    }
+
+    public static ExportEncoder forResponse(Config cfg) {
+        return new ExportEncoder(cfg.pngLevelFast, cfg.exportImageFormat);
+    }
+
+    public static ExportEncoder forArchive(Config cfg) {
+        return new ExportEncoder(cfg.pngLevelArchive, cfg.exportImageFormat);
+    }
+
+    /** 文件扩展名（不含点） */
+    public String extension() {
+        return format;
+    }
+
+    public void encode(BufferedImage img, Artifact kind, OutputStream out) throws IOException {
+        if (format.equals("qoi")) {
+            QoiEncoder.encode(img, out);
+            return;
+        }
+        BufferedImage prepared = kind == Artifact.MASK ? toBinaryMask(img) : toPaletteIfFewColors(img);
+        writePng(prepared, out);
+    }
+
+    private void writePng(BufferedImage img, OutputStream out) throws IOException {
+        ImageWriter w = ImageIO.getImageWritersByFormatName("png").next();
+        try (ImageOutputStream ios = new MemoryCacheImageOutputStream(out)) {
+            ImageWriteParam p = w.getDefaultWriteParam();
+            p.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            // JDK PNG writer: deflate level = 9 × (1 - quality)
+            p.setCompressionQuality(1f - level / 9f);
+            w.setOutput(ios);
+            w.write(null, new IIOImage(img, null, null), p);
+        } finally {
+            w.dispose();
+        }
+    }
+
+    /** 已是 1-bit 调色板则直接返回，否则按“非黑即实”转换 */
+    static BufferedImage toBinaryMask(BufferedImage mask) {
+        if (mask.getColorModel() == MASK_COLOR_MODEL) return mask;
+        int w = mask.getWidth();
+        int h = mask.getHeight();
+        BufferedImage out = new BufferedImage(w, h, BufferedImage.TYPE_BYTE_BINARY, MASK_COLOR_MODEL);
+        WritableRaster raster = out.getRaster();
+        int[] row = new int[w];
+        int[] bits = new int[w];
+        for (int y = 0; y < h; y++) {
+            mask.getRGB(0, y, w, 1, row, 0, w);
+            for (int x = 0; x < w; x++) bits[x] = (row[x] & 0x00ffffff) != 0 ? 1 : 0;
+            raster.setSamples(0, y, w, 1, 0, bits);
+        }
+        return out;
+    }
+
+    /** 颜色数 ≤ 256 时转为最小位深的调色板图像；超过则原样返回（发现第 257 种颜色即停止统计） */
+    static BufferedImage toPaletteIfFewColors(BufferedImage img) {
+        if (img.getColorModel() instanceof IndexColorModel) return img;
+        int w = img.getWidth();
+        int h = img.getHeight();
+        // 开放寻址的小哈希表：颜色 -> 调色板下标
+        int[] keys = new int[1024];
+        int[] idx = new int[1024];
+        boolean[] used = new boolean[1024];
+        int[] palette = new int[256];
+        int n = 0;
+        int[] row = new int[w];
+        for (int y = 0; y < h; y++) {
+            img.getRGB(0, y, w, 1, row, 0, w);
+            for (int x = 0; x < w; x++) {
+                int c = row[x];
+                if ((c >>> 24) == 0) c = 0; // 全透明统一为一种颜色
+                int slot = (c * 0x9E3779B9) >>> 22;
+                while (used[slot] && keys[slot] != c) slot = (slot + 1) & 1023;
+                if (!used[slot]) {
+                    if (n == 256) return img;
+                    used[slot] = true;
+                    keys[slot] = c;
+                    idx[slot] = n;
+                    palette[n++] = c;
+                }
+            }
+        }
+        int bitsPerPixel = n <= 2 ? 1 : n <= 4 ? 2 : n <= 16 ? 4 : 8;
+        byte[] r = new byte[n], g = new byte[n], b = new byte[n], a = new byte[n];
+        for (int i = 0; i < n; i++) {
+            int c = palette[i];
+            a[i] = (byte) (c >>> 24);
+            r[i] = (byte) (c >> 16);
+            g[i] = (byte) (c >> 8);
+            b[i] = (byte) c;
+        }
+        IndexColorModel cm = new IndexColorModel(bitsPerPixel, n, r, g, b, a);
+        BufferedImage out = bitsPerPixel == 8
+                ? new BufferedImage(w, h, BufferedImage.TYPE_BYTE_INDEXED, cm)
+                : new BufferedImage(w, h, BufferedImage.TYPE_BYTE_BINARY, cm);
+        WritableRaster raster = out.getRaster();
+        int[] samples = new int[w];
+        for (int y = 0; y < h; y++) {
+            img.getRGB(0, y, w, 1, row, 0, w);
+            for (int x = 0; x < w; x++) {
+                int c = row[x];
+                if ((c >>> 24) == 0) c = 0;
+                int slot = (c * 0x9E3779B9) >>> 22;
+                while (keys[slot] != c || !used[slot]) slot = (slot + 1) & 1023;
+                samples[x] = idx[slot];
+            }
+            raster.setSamples(0, y, w, 1, 0, samples);
+        }
+        return out;
+    }
+}
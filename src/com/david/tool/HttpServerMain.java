@@ -11,12 +11,14 @@ import java.io.*;
 import java.net.HttpURLConnection;
 import java.net.InetSocketAddress;
 import java.net.URL;
+import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
-import java.text.SimpleDateFormat;
 import java.util.Base64;
-import java.util.Date;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * 简易 HTTP 服务，暴露给 n8n 使用：
@@ -25,13 +27,108 @@ import java.util.Locale;
  */
 public class HttpServerMain {
     public static void main(String[] args) throws Exception {
-        int port = Config.SERVER_PORT;
-        HttpServer server = HttpServer.create(new InetSocketAddress(port), 0);
+        boolean train = args.length > 0 && args[0].equals("--train");
+        if (train) {
+            // 训练运行的输出写到临时目录，不污染正式 output.dir
+            System.setProperty("maptool.output.dir", java.nio.file.Files.createTempDirectory("maptool_train").toString());
+            System.setProperty("maptool.server.port", "0");
+            Config.reload();
+        }
+        Config cfg = Config.get();
+        HttpServer server = HttpServer.create(new InetSocketAddress(cfg.serverPort), 0);
         server.createContext("/health", new HealthHandler());
         server.createContext("/process", new ProcessHandler());
-        server.setExecutor(java.util.concurrent.Executors.newFixedThreadPool(4));
-        System.out.println("n8n HTTP service started on port " + port);
+        ThreadPoolExecutor pool = (ThreadPoolExecutor) Executors.newFixedThreadPool(cfg.serverThreads);
+        server.setExecutor(pool);
         server.start();
+        int port = server.getAddress().getPort();
+        if (train) {
+            try {
+                train(port, cfg);
+            } finally {
+                server.stop(0);
+                pool.shutdown();
+            }
+            System.out.println("Training run finished");
+            return;
+        }
+        // 热加载：线程池大小随配置变化（端口变化需重启）
+        Config.addListener(c -> resizePool(pool, c.serverThreads));
+        Config.startWatching();
+        System.out.println("n8n HTTP service started on port " + port);
+    }
+
+    /**
+     * 训练运行（用于生成 AppCDS 归档）：向自身发送覆盖主要路径的请求——健康检查、JSON/base64 导出、
+     * ZIP 流式导出、带 baseId 的增量导出——使 HTTP 服务、ImageIO PNG 读写、分割与导出相关的类全部被加载。
+     * 由 build_server_cds.sh 在 {@code -XX:DumpLoadedClassList} 下运行，再用 {@code -Xshare:dump} 生成静态归档，见 README。
+     */
+    static void train(int port, Config cfg) throws IOException {
+        BufferedImage img = trainingMap(1024, 768, 1);
+        String base = "http://127.0.0.1:" + port;
+        trainRequest(base + "/health", null, null, cfg);
+        String json = trainRequest(base + "/process", "application/json",
+                "{\"imageBase64\":\"" + Base64.getEncoder().encodeToString(png(img)) + "\",\"runAI\":\"false\"}", cfg);
+        trainRequest(base + "/process?format=zip", "application/json",
+                "{\"imageBase64\":\"" + Base64.getEncoder().encodeToString(png(img)) + "\",\"runAI\":\"false\"}", cfg);
+        String id = ProcessHandler.extractJsonString(json, "id");
+        BufferedImage edited = trainingMap(1024, 768, 1);
+        java.awt.Graphics2D g = edited.createGraphics();
+        g.setColor(java.awt.Color.ORANGE);
+        g.fillRect(100, 100, 120, 90);
+        g.dispose();
+        trainRequest(base + "/process", "application/json",
+                "{\"imageBase64\":\"" + Base64.getEncoder().encodeToString(png(edited)) + "\",\"runAI\":\"false\",\"baseId\":\"" + id + "\"}", cfg);
+    }
+
+    /** 合成的训练 / 基准用地图：若干不透明色块 */
+    static BufferedImage trainingMap(int w, int h, long seed) {
+        BufferedImage img = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+        java.awt.Graphics2D g = img.createGraphics();
+        java.util.Random rnd = new java.util.Random(seed);
+        for (int i = 0; i < 40; i++) {
+            g.setColor(new java.awt.Color(rnd.nextInt(8) * 32, rnd.nextInt(8) * 32, rnd.nextInt(8) * 32));
+            g.fillOval(rnd.nextInt(w), rnd.nextInt(h), 60 + rnd.nextInt(w / 3), 60 + rnd.nextInt(h / 3));
+        }
+        g.dispose();
+        return img;
+    }
+
+    static byte[] png(BufferedImage img) throws IOException {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        ImageIO.write(img, "png", bout);
+        return bout.toByteArray();
+    }
+
+    private static String trainRequest(String url, String contentType, String body, Config cfg) throws IOException {
+        HttpURLConnection c = (HttpURLConnection) new URL(url).openConnection();
+        if (!cfg.apiKey.isEmpty()) c.setRequestProperty("X-API-Key", cfg.apiKey);
+        if (body != null) {
+            c.setRequestMethod("POST");
+            c.setDoOutput(true);
+            c.setRequestProperty("Content-Type", contentType);
+            try (OutputStream os = c.getOutputStream()) {
+                os.write(body.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        int code = c.getResponseCode();
+        byte[] resp;
+        try (InputStream in = code < 400 ? c.getInputStream() : c.getErrorStream()) {
+            resp = in == null ? new byte[0] : ProcessHandler.readAll(in);
+        }
+        if (code != 200) throw new IOException("Training request " + url + " failed: HTTP " + code);
+        return new String(resp, StandardCharsets.UTF_8);
+    }
+
+    private static void resizePool(ThreadPoolExecutor pool, int size) {
+        // 扩容先调 max 再调 core，缩容反之，避免 core > max 抛异常
+        if (size > pool.getMaximumPoolSize()) {
+            pool.setMaximumPoolSize(size);
+            pool.setCorePoolSize(size);
+        } else {
+            pool.setCorePoolSize(size);
+            pool.setMaximumPoolSize(size);
+        }
     }
 
     static class HealthHandler implements HttpHandler {
@@ -44,27 +141,51 @@ public class HttpServerMain {
     }
 
     static class ProcessHandler implements HttpHandler {
+        private final AtomicInteger inFlight = new AtomicInteger();
+        // 按导出 id 缓存分割中间结果，支持带 baseId 的增量提交
+        private final IncrementalSegmenter incremental = new IncrementalSegmenter();
+
         @Override
         public void handle(HttpExchange exchange) throws IOException {
             if (!exchange.getRequestMethod().equalsIgnoreCase("POST")) {
                 sendJson(exchange, 405, jsonErr("Method Not Allowed"));
                 return;
             }
+            // 本次请求使用同一份配置快照
+            Config cfg = Config.get();
 
-            // 简单鉴权：若 Config.API_KEY 不为空，则要求头部 X-API-Key 匹配
+            // 简单鉴权：若配置了 apiKey，则要求头部 X-API-Key 匹配
             Headers reqh = exchange.getRequestHeaders();
             String apiKey = reqh.getFirst("X-API-Key");
-            if (Config.API_KEY != null && !Config.API_KEY.isEmpty()) {
-                if (apiKey == null || !apiKey.equals(Config.API_KEY)) {
+            if (!cfg.apiKey.isEmpty()) {
+                if (apiKey == null || !apiKey.equals(cfg.apiKey)) {
                     sendJson(exchange, 401, jsonErr("Unauthorized"));
                     return;
                 }
             }
 
+            // 并发上限（可热调整）
+            if (inFlight.incrementAndGet() > cfg.maxConcurrentRequests) {
+                inFlight.decrementAndGet();
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                sendJson(exchange, 503, jsonErr("Server busy"));
+                return;
+            }
+            try {
+                process(exchange, cfg);
+            } finally {
+                inFlight.decrementAndGet();
+            }
+        }
+
+        private void process(HttpExchange exchange, Config cfg) throws IOException {
+            Headers reqh = exchange.getRequestHeaders();
+
             String contentType = reqh.getFirst("Content-Type");
             byte[] body = readAll(exchange.getRequestBody());
             BufferedImage img = null;
             boolean runAI = true;
+            String baseId = null;
 
             try {
                 if (contentType != null && contentType.toLowerCase(Locale.ROOT).contains("application/json")) {
@@ -72,11 +193,12 @@ public class HttpServerMain {
                     String imageUrl = extractJsonString(s, "imageUrl");
                     String imageBase64 = extractJsonString(s, "imageBase64");
                     String runAIStr = extractJsonString(s, "runAI");
+                    baseId = extractJsonString(s, "baseId");
                     if (runAIStr != null) {
                         runAI = runAIStr.equalsIgnoreCase("true") || runAIStr.equals("1");
                     }
                     if (imageUrl != null && !imageUrl.isEmpty()) {
-                        img = fetchImageFromUrl(imageUrl);
+                        img = fetchImageFromUrl(imageUrl, cfg);
                     } else if (imageBase64 != null && !imageBase64.isEmpty()) {
                         byte[] bytes = Base64.getDecoder().decode(imageBase64);
                         img = ImageIO.read(new ByteArrayInputStream(bytes));
@@ -103,48 +225,80 @@ public class HttpServerMain {
                 return;
             }
 
+            // 响应头发出后（ZIP 流式响应）状态码已无法更改，出错时只能中断连接
+            boolean headersSent = false;
             try {
-                List<Region> regions = ImageProcessor.segmentByColor(img, 32);
+                String id = OutputIds.newId("n8n_");
+                // 达到 segment.offHeapPixels 的超大图走 ImageProcessor.segment 的堆外分割：不做增量、不进缓存（缓存要保留两份逐像素标签数组）
+                IncrementalSegmenter.Result result;
+                long pixels = (long) img.getWidth() * img.getHeight();
+                if (cfg.offHeapPixels > 0 && pixels >= cfg.offHeapPixels) {
+                    result = new IncrementalSegmenter.Result(ImageProcessor.segment(img, cfg.quantizeStep), null);
+                } else {
+                    RegionPostProcessor post = RegionPostProcessor.fromConfig(cfg, img.getWidth(), img.getHeight());
+                    result = incremental.segment(id, baseId, img, cfg.quantizeStep, post, cfg.contourTolerance);
+                }
+                Segmentation seg = result.segmentation;
+                List<Region> regions = seg.regions;
                 if (runAI) {
+                    // 增量模式只识别新增 / 变化的区域，其余沿用旧名称
                     AIClient ai = new DummyAIClient();
-                    for (Region r : regions) {
-                        try { r.name = ai.identifyLabel(r.image); } catch (Exception ignored) {}
+                    for (Region r : result.changedRegions()) {
+                        try { r.name = ai.identifyLabel(r.image()); } catch (Exception ignored) {}
+                    }
+                }
+                // 导出：?format=zip 或 Accept: application/zip 时直接把 ZIP 流写回响应，不落盘；增量结果只含 delta.json 与变化区域
+                boolean delta = result.isDelta();
+                if (wantsZip(exchange)) {
+                    exchange.getResponseHeaders().set("Content-Type", "application/zip");
+                    exchange.getResponseHeaders().set("Content-Disposition", "attachment; filename=\"" + id + ".zip\"");
+                    exchange.sendResponseHeaders(200, 0); // chunked
+                    headersSent = true;
+                    try (OutputSink sink = new ZipOutputSink(exchange.getResponseBody(), "response:" + id)) {
+                        if (delta) MapExporter.exportDelta(result, sink, id, ExportEncoder.forResponse(cfg));
+                        else MapExporter.export(img, regions, seg.graph, sink, id, ExportEncoder.forResponse(cfg));
                     }
+                    return;
                 }
-                // 导出
-                String stamp = new SimpleDateFormat("yyyyMMdd_HHmmss").format(new Date());
-                File outDir = new File("output_maps/n8n_" + stamp);
-                File imagesDir = new File(outDir, "images");
-                File masksDir = new File(outDir, "masks");
-                imagesDir.mkdirs(); masksDir.mkdirs();
-                ImageIO.write(img, "png", new File(imagesDir, "original.png"));
-
-                StringBuilder json = new StringBuilder();
-                json.append("{\n");
-                json.append(String.format("  \"generatedAt\": \"%s\",\n", stamp));
-                json.append(String.format("  \"outputDir\": \"%s\",\n", escape(outDir.getAbsolutePath())));
-                json.append("  \"regions\": [\n");
-                for (int i = 0; i < regions.size(); i++) {
-                    Region r = regions.get(i);
-                    String imgName = String.format("region_%02d.png", i);
-                    String maskName = String.format("mask_%02d.png", i);
-                    ImageIO.write(r.image, "png", new File(imagesDir, imgName));
-                    ImageIO.write(r.mask, "png", new File(masksDir, maskName));
-                    json.append("    {");
-                    json.append(String.format("\"id\": %d, \"name\": \"%s\", \"centroid\": [%d, %d], \"image\": \"images/%s\", \"mask\": \"masks/%s\", \"pixels\": %d", i, r.name == null ? "" : escape(r.name), (int)r.centroidX, (int)r.centroidY, imgName, maskName, r.pixelCount));
-                    json.append("}");
-                    if (i < regions.size() - 1) json.append(",\n");
-                    else json.append("\n");
+                String json;
+                try (OutputSink sink = OutputSink.forConfig(cfg, id)) {
+                    json = delta
+                            ? MapExporter.exportDelta(result, sink, id, ExportEncoder.forResponse(cfg))
+                            : MapExporter.export(img, regions, seg.graph, sink, id, ExportEncoder.forResponse(cfg));
                 }
-                json.append("  ]\n}");
-
-                sendJson(exchange, 200, json.toString());
+                sendJson(exchange, 200, json);
             } catch (Exception ex) {
                 ex.printStackTrace();
+                if (headersSent) {
+                    exchange.close();
+                    return;
+                }
                 sendJson(exchange, 500, jsonErr("Processing failed: " + ex.getMessage()));
             }
         }
 
+        private static boolean wantsZip(HttpExchange exchange) {
+            if ("zip".equalsIgnoreCase(queryParam(exchange, "format"))) return true;
+            String accept = exchange.getRequestHeaders().getFirst("Accept");
+            return accept != null && accept.toLowerCase(Locale.ROOT).contains("application/zip");
+        }
+
+        /** 查询参数的值（URL 解码后）；不存在时返回 null，重复出现时取第一个，编码非法的参数忽略 */
+        private static String queryParam(HttpExchange exchange, String name) {
+            String q = exchange.getRequestURI().getRawQuery();
+            if (q == null) return null;
+            for (String pair : q.split("&")) {
+                int eq = pair.indexOf('=');
+                try {
+                    String key = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), StandardCharsets.UTF_8);
+                    if (key.equals(name)) return eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+                } catch (IllegalArgumentException ignored) {
+                    // 非法的 % 转义
+                }
+            }
+            return null;
+        }
+
         private static byte[] readAll(InputStream in) throws IOException {
             ByteArrayOutputStream bout = new ByteArrayOutputStream();
             byte[] buf = new byte[8192];
@@ -153,11 +307,11 @@ public class HttpServerMain {
             return bout.toByteArray();
         }
 
-        private static BufferedImage fetchImageFromUrl(String urlStr) throws IOException {
+        private static BufferedImage fetchImageFromUrl(String urlStr, Config cfg) throws IOException {
             URL url = new URL(urlStr);
             HttpURLConnection c = (HttpURLConnection) url.openConnection();
-            c.setConnectTimeout(5000);
-            c.setReadTimeout(10000);
+            c.setConnectTimeout(cfg.connectTimeoutMs);
+            c.setReadTimeout(cfg.readTimeoutMs);
             c.setRequestProperty("User-Agent", "MapTool/1.0");
             try (InputStream in = c.getInputStream()) {
                 return ImageIO.read(in);
@@ -172,7 +326,7 @@ public class HttpServerMain {
         }
 
         private static String jsonErr(String message) {
-            return "{\"error\": \"" + escape(message) + "\"}";
+            return "{\"error\": \"" + MapExporter.escape(message) + "\"}";
         }
 
         // 极其简陋的 JSON 提取（仅用于 MVP）
@@ -198,9 +352,5 @@ public class HttpServerMain {
             }
             return null;
         }
-
-        private static String escape(String s) {
-            return s.replace("\\", "\\\\").replace("\"", "\\\"");
-        }
     }
 }
@@ -2,7 +2,10 @@ package com.david.tool;
 
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.WritableRaster;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -10,82 +13,275 @@ import java.util.Map;
 /**
  * 简易颜色分割（量化颜色并按颜色聚合）实现。用于从彩色区域地图中分出各个国家/地区的区域块。
  * 注意：该实现为 MVP，适用于颜色区分明显的地图。可替换为语义分割模型以提高质量。
+ * <p>
+ * 流程：量化得到标签数组（{@link LabelImage}）→ 后处理（{@link RegionPostProcessor}）→ 生成 {@link Region} 与 {@link RegionGraph}。
  */
 public class ImageProcessor {
 
+    /** 使用配置中的后处理与轮廓参数 */
     public static List<Region> segmentByColor(BufferedImage img, int quantizeStep) {
+        return segment(img, quantizeStep).regions;
+    }
+
+    /**
+     * @param post 后处理器；为 null 时沿用旧行为：像素数低于阈值的颜色桶直接丢弃
+     */
+    public static List<Region> segmentByColor(BufferedImage img, int quantizeStep, RegionPostProcessor post) {
+        return segment(img, quantizeStep, post).regions;
+    }
+
+    /** 分割并返回区域与邻接图，使用配置中的后处理参数；contour.tolerance &gt;= 0 时同时提取矢量轮廓 */
+    public static Segmentation segment(BufferedImage img, int quantizeStep) {
+        return segment(img, quantizeStep, SegmentProgress.NONE);
+    }
+
+    /**
+     * 同 {@link #segment(BufferedImage, int)}，并报告进度；工作线程被中断时抛出 {@link java.util.concurrent.CancellationException}
+     */
+    public static Segmentation segment(BufferedImage img, int quantizeStep, SegmentProgress progress) {
+        Config cfg = Config.get();
+        RegionPostProcessor post = RegionPostProcessor.fromConfig(cfg, img.getWidth(), img.getHeight());
+        Segmentation seg;
+        long pixels = (long) img.getWidth() * img.getHeight();
+        if (cfg.offHeapPixels > 0 && pixels >= cfg.offHeapPixels) {
+            System.err.println("Off-heap segmentation for " + pixels + " px (segment.offHeapPixels=" + cfg.offHeapPixels
+                    + "): only small color buckets are removed; island merge, hole filling and smoothing are skipped");
+            seg = OffHeapSegmenter.segment(img, quantizeStep, post.minRegionPixels, cfg, progress);
+        } else {
+            seg = segment(img, quantizeStep, post, progress);
+        }
+        if (cfg.contourTolerance >= 0) ContourTracer.traceAll(seg.regions, cfg.contourTolerance, progress);
+        progress.update("done", 1.0);
+        return seg;
+    }
+
+    public static Segmentation segment(BufferedImage img, int quantizeStep, RegionPostProcessor post) {
+        return segment(img, quantizeStep, post, SegmentProgress.NONE);
+    }
+
+    // 各阶段在整体进度中的起点：量化 0%，后处理 20%，生成区域 45%，轮廓 70%
+    static final double P_POST = 0.2, P_BUILD = 0.45, P_CONTOUR = 0.7;
+
+    static Segmentation segment(BufferedImage img, int quantizeStep, RegionPostProcessor post, SegmentProgress progress) {
+        progress.update("quantize", 0);
+        LabelImage li = quantize(img, quantizeStep);
+        SegmentProgress.checkCancelled();
+        progress.update("postprocess", P_POST);
+        if (post != null) {
+            post.process(li);
+        } else {
+            dropSmallLabels(li, Math.max(100, (img.getWidth() * img.getHeight()) / 10000));
+        }
+        SegmentProgress.checkCancelled();
+        progress.update("build", P_BUILD);
+        Segmentation seg = build(img, li);
+        progress.update("contour", P_CONTOUR);
+        return seg;
+    }
+
+    /** 按量化颜色为每个像素分配标签（首次出现顺序），透明像素为 -1 */
+    public static LabelImage quantize(BufferedImage img, int quantizeStep) {
         int w = img.getWidth();
         int h = img.getHeight();
-        Map<Integer, RegionAccumulator> acc = new HashMap<>();
+        int[] labels = new int[w * h];
+        Palette palette = new Palette();
+        quantizeRect(img, quantizeStep, labels, palette, 0, 0, w, h);
+        return palette.toLabelImage(w, h, labels);
+    }
 
-        for (int y = 0; y < h; y++) {
-            for (int x = 0; x < w; x++) {
-                int rgb = img.getRGB(x, y);
-                int a = (rgb >> 24) & 0xff;
-                if (a < 10) continue; // 透明跳过
-                int r = (rgb >> 16) & 0xff;
-                int g = (rgb >> 8) & 0xff;
-                int b = rgb & 0xff;
-                int qr = (r / quantizeStep) * quantizeStep;
-                int qg = (g / quantizeStep) * quantizeStep;
-                int qb = (b / quantizeStep) * quantizeStep;
-                int key = (qr << 16) | (qg << 8) | qb;
-                RegionAccumulator aacc = acc.computeIfAbsent(key, k -> new RegionAccumulator(key));
-                aacc.addPixel(x, y);
+    /** 量化图像中的一个矩形区域，写入 labels 对应位置；新颜色追加到 palette 末尾 */
+    static void quantizeRect(BufferedImage img, int quantizeStep, int[] labels, Palette palette, int x0, int y0, int x1, int y1) {
+        int w = img.getWidth();
+        int rw = x1 - x0;
+        int[] data = intArgbData(img);
+        int[] row = data == null ? new int[rw] : null;
+        int[] keys = new int[rw];
+        QuantizeKernel kernel = QuantizeKernel.get();
+        int lastKey = -1, lastLabel = -1;
+
+        for (int y = y0; y < y1; y++) {
+            if ((y & 255) == 0) SegmentProgress.checkCancelled();
+            if (data != null) {
+                kernel.quantizeRow(data, y * w + x0, keys, 0, rw, quantizeStep);
+            } else {
+                img.getRGB(x0, y, rw, 1, row, 0, rw);
+                kernel.quantizeRow(row, 0, keys, 0, rw, quantizeStep);
+            }
+            int base = y * w + x0;
+            for (int x = 0; x < rw; x++) {
+                int key = keys[x];
+                if (key == QuantizeKernel.TRANSPARENT) { labels[base + x] = -1; continue; } // 透明跳过
+                // 相邻像素多为同色，先比对上一个 key 省去哈希查找
+                if (key != lastKey) {
+                    lastKey = key;
+                    lastLabel = palette.labelOf(key);
+                }
+                labels[base + x] = lastLabel;
             }
         }
+    }
 
-        List<Region> regions = new ArrayList<>();
-        int minPixels = Math.max(100, (w * h) / 10000); // 动态阈值，避免噪点
-        for (RegionAccumulator aacc : acc.values()) {
-            if (aacc.count < minPixels) continue;
-            Region r = aacc.toRegion(img);
-            regions.add(r);
+    /** TYPE_INT_ARGB 且像素紧密排列时返回底层数组（不拷贝，只读使用），否则返回 null */
+    static int[] intArgbData(BufferedImage img) {
+        if (img.getType() != BufferedImage.TYPE_INT_ARGB) return null;
+        WritableRaster raster = img.getRaster();
+        if (!(raster.getDataBuffer() instanceof DataBufferInt)
+                || raster.getSampleModelTranslateX() != 0 || raster.getSampleModelTranslateY() != 0) return null;
+        int[] data = ((DataBufferInt) raster.getDataBuffer()).getData();
+        return data.length == img.getWidth() * img.getHeight() ? data : null;
+    }
+
+    /** 量化颜色 -> 标签 的映射，标签按首次出现顺序分配 */
+    static class Palette {
+        private final Map<Integer, Integer> keyToLabel;
+        private int[] colors;
+        private int size;
+
+        Palette() {
+            this(new HashMap<>(), new int[16], 0);
+        }
+
+        private Palette(Map<Integer, Integer> keyToLabel, int[] colors, int size) {
+            this.keyToLabel = keyToLabel;
+            this.colors = colors;
+            this.size = size;
+        }
+
+        int labelOf(int key) {
+            Integer l = keyToLabel.get(key);
+            if (l == null) {
+                l = size++;
+                keyToLabel.put(key, l);
+                if (l == colors.length) colors = Arrays.copyOf(colors, colors.length * 2);
+                colors[l] = key;
+            }
+            return l;
+        }
+
+        int size() {
+            return size;
+        }
+
+        Palette copy() {
+            return new Palette(new HashMap<>(keyToLabel), colors.clone(), size);
+        }
+
+        LabelImage toLabelImage(int w, int h, int[] labels) {
+            return new LabelImage(w, h, labels, Arrays.copyOf(colors, size), size);
         }
-        return regions;
     }
 
-    static class RegionAccumulator {
-        int color;
-        int count = 0;
-        long sumX = 0, sumY = 0;
-        java.util.List<Point> pixels = new java.util.ArrayList<>();
+    static void dropSmallLabels(LabelImage li, int minPixels) {
+        long[] counts = li.counts();
+        int[] lab = li.labels;
+        for (int i = 0; i < lab.length; i++) {
+            int l = lab[i];
+            if (l >= 0 && counts[l] < minPixels) lab[i] = -1;
+        }
+    }
 
-        RegionAccumulator(int color) { this.color = color; }
+    /**
+     * 由标签数组生成区域（每个非空标签一个 Region，按标签顺序）。
+     * 统计质心 / 包围盒的同一遍扫描中，比较右侧与下方像素累计邻接边界，得到 {@link RegionGraph}。
+     */
+    public static Segmentation build(BufferedImage src, LabelImage li) {
+        return build(src, li, null);
+    }
 
-        void addPixel(int x, int y) {
-            count++;
-            sumX += x; sumY += y;
-            pixels.add(new Point(x, y));
+    /**
+     * @param reuse 按标签索引的已有区域；非 null 的项直接沿用（名称、掩码、轮廓等均保留），
+     *              调用方需保证该标签的像素集合与像素内容均未变化
+     */
+    static Segmentation build(BufferedImage src, LabelImage li, Region[] reuse) {
+        int w = li.width, h = li.height, n = li.labelCount;
+        int[] lab = li.labels;
+        long[] count = new long[n], sumX = new long[n], sumY = new long[n];
+        int[] minX = new int[n], minY = new int[n], maxX = new int[n], maxY = new int[n];
+        Arrays.fill(minX, Integer.MAX_VALUE);
+        Arrays.fill(minY, Integer.MAX_VALUE);
+        RegionGraph.Builder edges = new RegionGraph.Builder();
+        for (int y = 0; y < h; y++) {
+            if ((y & 255) == 0) SegmentProgress.checkCancelled();
+            int base = y * w;
+            boolean hasBelow = y < h - 1;
+            for (int x = 0; x < w; x++) {
+                int l = lab[base + x];
+                if (l < 0) continue;
+                if (x < w - 1) {
+                    int r = lab[base + x + 1];
+                    if (r >= 0 && r != l) edges.addBorder(l, r);
+                }
+                if (hasBelow) {
+                    int d = lab[base + w + x];
+                    if (d >= 0 && d != l) edges.addBorder(l, d);
+                }
+                count[l]++;
+                sumX[l] += x; sumY[l] += y;
+                if (x < minX[l]) minX[l] = x;
+                if (x > maxX[l]) maxX[l] = x;
+                if (y < minY[l]) minY[l] = y;
+                if (y > maxY[l]) maxY[l] = y;
+            }
         }
 
-        Region toRegion(BufferedImage src) {
-            int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, maxX = 0, maxY = 0;
-            for (Point p : pixels) {
-                if (p.x < minX) minX = p.x;
-                if (p.y < minY) minY = p.y;
-                if (p.x > maxX) maxX = p.x;
-                if (p.y > maxY) maxY = p.y;
+        Region[] byLabel = new Region[n];
+        int[] labelToRegion = new int[n];
+        List<Region> regions = createRegions(li, count, sumX, sumY, minX, minY, maxX, maxY, reuse, byLabel, labelToRegion, null);
+        WritableRaster[] maskRaster = new WritableRaster[n];
+        for (int l = 0; l < n; l++) {
+            if (byLabel[l] != null) maskRaster[l] = byLabel[l].mask.getRaster();
+        }
+
+        int[] row = new int[w];
+        for (int y = 0; y < h; y++) {
+            if ((y & 255) == 0) SegmentProgress.checkCancelled();
+            src.getRGB(0, y, w, 1, row, 0, w);
+            int base = y * w;
+            for (int x = 0; x < w; x++) {
+                int l = lab[base + x];
+                if (l < 0 || byLabel[l] == null) continue;
+                int mx = x - minX[l];
+                int my = y - minY[l];
+                maskRaster[l].setSample(mx, my, 0, 1);
+                byLabel[l].image.setRGB(mx, my, row[x]);
             }
-            int w = maxX - minX + 1;
-            int h = maxY - minY + 1;
-            BufferedImage mask = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
-            BufferedImage img = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
-            for (Point p : pixels) {
-                int mx = p.x - minX;
-                int my = p.y - minY;
-                mask.setRGB(mx, my, 0xffffffff);
-                img.setRGB(mx, my, src.getRGB(p.x, p.y));
+        }
+        return new Segmentation(regions, edges.build(labelToRegion, regions.size()), li);
+    }
+
+    /**
+     * 按标签统计量创建区域（按标签顺序，跳过空标签）。需要填充像素的新区域记入 byLabel，沿用的区域不记入。
+     * lazySource 非 null 时不分配裁剪图，改由 {@link Region#image()} 从该图按需截取。
+     */
+    static List<Region> createRegions(LabelImage li, long[] count, long[] sumX, long[] sumY,
+                                      int[] minX, int[] minY, int[] maxX, int[] maxY,
+                                      Region[] reuse, Region[] byLabel, int[] labelToRegion, BufferedImage lazySource) {
+        List<Region> regions = new ArrayList<>();
+        for (int l = 0; l < li.labelCount; l++) {
+            labelToRegion[l] = -1;
+            if (count[l] == 0) continue;
+            labelToRegion[l] = regions.size();
+            if (reuse != null && l < reuse.length && reuse[l] != null) {
+                regions.add(reuse[l]);
+                continue;
             }
+            int rw = maxX[l] - minX[l] + 1;
+            int rh = maxY[l] - minY[l] + 1;
             Region r = new Region();
-            r.pixelCount = count;
-            r.centroidX = (double) sumX / count;
-            r.centroidY = (double) sumY / count;
-            r.color = color;
-            r.mask = mask;
-            r.image = img;
+            r.pixelCount = count[l];
+            r.centroidX = (double) sumX[l] / count[l];
+            r.centroidY = (double) sumY[l] / count[l];
+            r.color = li.colors[l];
+            r.label = l;
+            r.bounds = new Rectangle(minX[l], minY[l], rw, rh);
+            // 掩码直接用 1-bit 调色板（透明 / 白），内存为 ARGB 的 1/32
+            r.mask = new BufferedImage(rw, rh, BufferedImage.TYPE_BYTE_BINARY, ExportEncoder.MASK_COLOR_MODEL);
+            if (lazySource != null) r.source = lazySource;
+            else r.image = new BufferedImage(rw, rh, BufferedImage.TYPE_INT_ARGB);
             r.name = "";
-            return r;
+            byLabel[l] = r;
+            regions.add(r);
         }
+        return regions;
     }
 }
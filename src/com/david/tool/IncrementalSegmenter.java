@@ -0,0 +1,260 @@
+package com.david.tool;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 增量分割：缓存每次分割的中间结果（按导出 id），当同一张地图的修改版带着 baseId 再次提交时，
+ * 只对内容变化的图块重新量化，并只为受影响的区域重新生成掩码 / 图片 / 轮廓（以及 OCR、导出），
+ * 其余区域连同名称直接沿用。
+ * <p>
+ * 流程：
+ * <ol>
+ *   <li>按 {@link #TILE}×{@link #TILE} 图块计算哈希，与缓存比对得到变化图块</li>
+ *   <li>复用缓存的量化标签，仅重新量化变化图块；颜色表沿用旧表并追加新颜色，因此未变区域的标签保持稳定</li>
+ *   <li>后处理在整张标签数组上重跑（线性，且合并 / 填洞会跨越图块边界，只有全局重跑才与完整分割结果一致）</li>
+ *   <li>受影响区域 = 最终标签发生变化的像素所涉及的标签 ∪ 变化图块及其一圈相邻图块内出现的标签；其余区域对象直接复用</li>
+ * </ol>
+ * 缓存为 LRU，按字节计量（两份逐像素标签数组、图块哈希、颜色表、区域掩码与裁剪图），总量受 {@code cache.budgetBytes} 约束：
+ * 每次读写时读取预算（可热调整，调小后下次访问即淘汰到预算以内），单个条目超出预算时不缓存，预算为 0 时关闭缓存。
+ */
+public class IncrementalSegmenter {
+    public static final int TILE = 64;
+
+    private final LinkedHashMap<String, Entry> cache = new LinkedHashMap<>(16, 0.75f, true);
+    private long usedBytes = 0;
+
+    private static class Entry {
+        int width, height, quantizeStep;
+        long[] tileHash;
+        int[] rawLabels;      // 后处理前的量化标签
+        ImageProcessor.Palette palette;
+        int[] finalLabels;    // 后处理后的标签
+        Region[] byLabel;
+        long bytes;
+    }
+
+    /** 一次（可能为增量的）分割结果 */
+    public static class Result {
+        public final Segmentation segmentation;
+        /** 增量时为基准 id，完整分割时为 null */
+        public final String baseId;
+        public final List<Region> added = new ArrayList<>();
+        public final List<Region> updated = new ArrayList<>();
+        public final List<Integer> removedLabels = new ArrayList<>();
+        public int unchanged;
+        public int changedTiles;
+        public int totalTiles;
+
+        Result(Segmentation segmentation, String baseId) {
+            this.segmentation = segmentation;
+            this.baseId = baseId;
+        }
+
+        public boolean isDelta() {
+            return baseId != null;
+        }
+
+        /** 需要重新识别名称 / 导出的区域 */
+        public List<Region> changedRegions() {
+            if (!isDelta()) return segmentation.regions;
+            List<Region> l = new ArrayList<>(added);
+            l.addAll(updated);
+            return l;
+        }
+    }
+
+    /**
+     * 分割并以 id 缓存结果。baseId 命中缓存且尺寸、量化步长一致时走增量路径，否则完整分割。
+     *
+     * @param post             后处理器，null 表示旧的丢弃小桶行为
+     * @param contourTolerance 轮廓容差，负数表示不提取
+     */
+    public Result segment(String id, String baseId, BufferedImage img, int quantizeStep, RegionPostProcessor post, double contourTolerance) {
+        int w = img.getWidth(), h = img.getHeight();
+        int tilesX = (w + TILE - 1) / TILE, tilesY = (h + TILE - 1) / TILE;
+        long[] tileHash = hashTiles(img, tilesX, tilesY);
+
+        Entry base = baseId == null ? null : lookup(baseId);
+        if (base != null && (base.width != w || base.height != h || base.quantizeStep != quantizeStep)) base = null;
+
+        Entry next = new Entry();
+        next.width = w;
+        next.height = h;
+        next.quantizeStep = quantizeStep;
+        next.tileHash = tileHash;
+
+        Result result;
+        if (base == null) {
+            LabelImage li = ImageProcessor.quantize(img, quantizeStep);
+            next.rawLabels = li.labels.clone();
+            next.palette = paletteOf(li);
+            postProcess(li, post, w, h);
+            Segmentation seg = ImageProcessor.build(img, li);
+            if (contourTolerance >= 0) ContourTracer.traceAll(seg.regions, contourTolerance);
+            result = new Result(seg, null);
+            result.totalTiles = result.changedTiles = tilesX * tilesY;
+            next.finalLabels = li.labels;
+        } else {
+            boolean[] changed = new boolean[tilesX * tilesY];
+            int nChanged = 0;
+            int[] raw = base.rawLabels.clone();
+            ImageProcessor.Palette palette = base.palette.copy();
+            for (int t = 0; t < changed.length; t++) {
+                if (tileHash[t] == base.tileHash[t]) continue;
+                changed[t] = true;
+                nChanged++;
+                int tx = t % tilesX, ty = t / tilesX;
+                ImageProcessor.quantizeRect(img, quantizeStep, raw, palette,
+                        tx * TILE, ty * TILE, Math.min(w, (tx + 1) * TILE), Math.min(h, (ty + 1) * TILE));
+            }
+            next.rawLabels = raw;
+            next.palette = palette;
+            LabelImage li = palette.toLabelImage(w, h, raw.clone());
+            postProcess(li, post, w, h);
+            next.finalLabels = li.labels;
+
+            boolean[] affected = affectedLabels(base.finalLabels, li, changed, tilesX, tilesY);
+            Region[] reuse = new Region[li.labelCount];
+            for (int l = 0; l < li.labelCount && l < base.byLabel.length; l++) {
+                if (!affected[l]) reuse[l] = base.byLabel[l];
+            }
+            Segmentation seg = ImageProcessor.build(img, li, reuse);
+            result = new Result(seg, baseId);
+            result.totalTiles = changed.length;
+            result.changedTiles = nChanged;
+            boolean[] present = new boolean[li.labelCount];
+            for (Region r : seg.regions) {
+                present[r.label] = true;
+                Region old = r.label < base.byLabel.length ? base.byLabel[r.label] : null;
+                if (old == r) {
+                    result.unchanged++;
+                } else if (old != null) {
+                    r.name = old.name; // 先沿用旧名称，调用方可重新识别
+                    result.updated.add(r);
+                } else {
+                    result.added.add(r);
+                }
+            }
+            for (int l = 0; l < base.byLabel.length; l++) {
+                if (base.byLabel[l] != null && (l >= present.length || !present[l])) result.removedLabels.add(l);
+            }
+            if (contourTolerance >= 0) ContourTracer.traceAll(result.changedRegions(), contourTolerance);
+        }
+
+        next.byLabel = new Region[result.segmentation.labels.labelCount];
+        for (Region r : result.segmentation.regions) next.byLabel[r.label] = r;
+        store(id, next);
+        return result;
+    }
+
+    private static void postProcess(LabelImage li, RegionPostProcessor post, int w, int h) {
+        if (post != null) post.process(li);
+        else ImageProcessor.dropSmallLabels(li, Math.max(100, (w * h) / 10000));
+    }
+
+    private static ImageProcessor.Palette paletteOf(LabelImage li) {
+        ImageProcessor.Palette p = new ImageProcessor.Palette();
+        for (int l = 0; l < li.labelCount; l++) p.labelOf(li.colors[l]);
+        return p;
+    }
+
+    private static boolean[] affectedLabels(int[] oldFinal, LabelImage li, boolean[] changed, int tilesX, int tilesY) {
+        int w = li.width, h = li.height;
+        int[] lab = li.labels;
+        boolean[] affected = new boolean[li.labelCount];
+        for (int i = 0; i < lab.length; i++) {
+            if (lab[i] != oldFinal[i]) {
+                if (lab[i] >= 0) affected[lab[i]] = true;
+                if (oldFinal[i] >= 0 && oldFinal[i] < affected.length) affected[oldFinal[i]] = true;
+            }
+        }
+        // 变化图块膨胀一圈：其中出现的区域像素内容可能变化，或边界受后处理影响
+        boolean[] dirty = new boolean[changed.length];
+        for (int t = 0; t < changed.length; t++) {
+            if (!changed[t]) continue;
+            int tx = t % tilesX, ty = t / tilesX;
+            for (int dy = -1; dy <= 1; dy++) {
+                for (int dx = -1; dx <= 1; dx++) {
+                    int nx = tx + dx, ny = ty + dy;
+                    if (nx >= 0 && ny >= 0 && nx < tilesX && ny < tilesY) dirty[ny * tilesX + nx] = true;
+                }
+            }
+        }
+        for (int t = 0; t < dirty.length; t++) {
+            if (!dirty[t]) continue;
+            int tx = t % tilesX, ty = t / tilesX;
+            int x1 = Math.min(w, (tx + 1) * TILE), y1 = Math.min(h, (ty + 1) * TILE);
+            for (int y = ty * TILE; y < y1; y++) {
+                for (int i = y * w + tx * TILE, e = y * w + x1; i < e; i++) {
+                    if (lab[i] >= 0) affected[lab[i]] = true;
+                    if (oldFinal[i] >= 0 && oldFinal[i] < affected.length) affected[oldFinal[i]] = true;
+                }
+            }
+        }
+        return affected;
+    }
+
+    /** 图块内容哈希（FNV-1a over ARGB ints） */
+    static long[] hashTiles(BufferedImage img, int tilesX, int tilesY) {
+        int w = img.getWidth(), h = img.getHeight();
+        long[] hash = new long[tilesX * tilesY];
+        java.util.Arrays.fill(hash, 0xcbf29ce484222325L);
+        int[] row = new int[w];
+        for (int y = 0; y < h; y++) {
+            img.getRGB(0, y, w, 1, row, 0, w);
+            int tbase = (y / TILE) * tilesX;
+            for (int x = 0; x < w; x++) {
+                int t = tbase + x / TILE;
+                hash[t] = (hash[t] ^ row[x]) * 0x100000001b3L;
+            }
+        }
+        return hash;
+    }
+
+    private synchronized Entry lookup(String id) {
+        trim(Config.get().cacheBudgetBytes, null);
+        return cache.get(id);
+    }
+
+    private synchronized void store(String id, Entry e) {
+        e.bytes = entryBytes(e);
+        long budget = Config.get().cacheBudgetBytes;
+        if (e.bytes > budget) {
+            trim(budget, null);
+            return;
+        }
+        Entry old = cache.put(id, e);
+        if (old != null) usedBytes -= old.bytes;
+        usedBytes += e.bytes;
+        trim(budget, id);
+    }
+
+    /** 从最久未用的条目开始淘汰，直到总量不超过 budget（keep 不淘汰） */
+    private void trim(long budget, String keep) {
+        Iterator<Map.Entry<String, Entry>> it = cache.entrySet().iterator();
+        while (usedBytes > budget && it.hasNext()) {
+            Map.Entry<String, Entry> oldest = it.next();
+            if (oldest.getKey().equals(keep)) continue;
+            usedBytes -= oldest.getValue().bytes;
+            it.remove();
+        }
+    }
+
+    /** 条目占用的堆字节（估算）；与相邻条目共用的区域对象重复计入，偏保守 */
+    private static long entryBytes(Entry e) {
+        long bytes = 8L * e.tileHash.length + 4L * e.rawLabels.length + 4L * e.finalLabels.length
+                + 64L * e.palette.size() + 8L * e.byLabel.length;
+        for (Region r : e.byLabel) {
+            if (r == null || r.bounds == null) continue;
+            long px = (long) r.bounds.width * r.bounds.height;
+            bytes += px / 8;
+            if (r.image != null) bytes += px * 4;
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,167 @@
+package com.david.tool;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 堆外标签缓冲区：按 long 下标访问的 int 数组，可超过 Java 数组 2^31 的长度上限。
+ * <p>
+ * 两种后端：
+ * - {@link #allocateDirect(long)}：直接内存（受 {@code -XX:MaxDirectMemorySize} 限制）
+ * - {@link #mapScratch(long, Path)}：映射到临时文件，由操作系统分页，容量只受磁盘限制；文件在关闭时删除
+ * <p>
+ * 内部按 2^28 个 int（1 GB）分块。生命周期是显式的：{@link #close()} 立即释放直接内存 / 解除映射，
+ * 不依赖 GC；关闭后再访问会抛出 {@link IllegalStateException}。非线程安全。
+ */
+public final class LabelBuffer implements Closeable {
+    private static final int CHUNK_SHIFT = 28;
+    private static final int CHUNK_INTS = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_INTS - 1;
+
+    private final long length;
+    private ByteBuffer[] bytes;
+    private IntBuffer[] ints;
+    private final FileChannel channel;
+
+    private LabelBuffer(long length, ByteBuffer[] bytes, FileChannel channel) {
+        this.length = length;
+        this.bytes = bytes;
+        this.channel = channel;
+        this.ints = new IntBuffer[bytes.length];
+        for (int i = 0; i < bytes.length; i++) {
+            ints[i] = bytes[i].order(ByteOrder.nativeOrder()).asIntBuffer();
+        }
+    }
+
+    /** 分配直接内存缓冲区（初始全为 0） */
+    public static LabelBuffer allocateDirect(long length) {
+        ByteBuffer[] chunks = new ByteBuffer[chunkCount(length)];
+        try {
+            for (int i = 0; i < chunks.length; i++) {
+                chunks[i] = ByteBuffer.allocateDirect(chunkInts(length, i) * 4);
+            }
+        } catch (OutOfMemoryError ex) {
+            for (ByteBuffer b : chunks) free(b);
+            throw ex;
+        }
+        return new LabelBuffer(length, chunks, null);
+    }
+
+    /** 在 dir 下创建临时文件并映射（初始全为 0）；文件在 {@link #close()} 时删除 */
+    public static LabelBuffer mapScratch(long length, Path dir) throws IOException {
+        Files.createDirectories(dir);
+        Path file = Files.createTempFile(dir, "labels_", ".bin");
+        FileChannel ch = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.DELETE_ON_CLOSE);
+        ByteBuffer[] chunks = new ByteBuffer[chunkCount(length)];
+        try {
+            for (int i = 0; i < chunks.length; i++) {
+                chunks[i] = ch.map(FileChannel.MapMode.READ_WRITE, ((long) i << CHUNK_SHIFT) * 4, chunkInts(length, i) * 4L);
+            }
+        } catch (IOException | RuntimeException ex) {
+            for (ByteBuffer b : chunks) free(b);
+            ch.close();
+            throw ex;
+        }
+        return new LabelBuffer(length, chunks, ch);
+    }
+
+    public long length() {
+        return length;
+    }
+
+    public int get(long i) {
+        return chunks()[(int) (i >>> CHUNK_SHIFT)].get((int) (i & CHUNK_MASK));
+    }
+
+    public void set(long i, int v) {
+        chunks()[(int) (i >>> CHUNK_SHIFT)].put((int) (i & CHUNK_MASK), v);
+    }
+
+    /** 批量读取 [off, off + n) 到 dst[dstOff..]，可跨块 */
+    public void read(long off, int[] dst, int dstOff, int n) {
+        IntBuffer[] c = chunks();
+        while (n > 0) {
+            int ci = (int) (off >>> CHUNK_SHIFT), pos = (int) (off & CHUNK_MASK);
+            int len = Math.min(n, CHUNK_INTS - pos);
+            c[ci].get(pos, dst, dstOff, len);
+            off += len; dstOff += len; n -= len;
+        }
+    }
+
+    /** 批量写入 src[srcOff..] 到 [off, off + n)，可跨块 */
+    public void write(long off, int[] src, int srcOff, int n) {
+        IntBuffer[] c = chunks();
+        while (n > 0) {
+            int ci = (int) (off >>> CHUNK_SHIFT), pos = (int) (off & CHUNK_MASK);
+            int len = Math.min(n, CHUNK_INTS - pos);
+            c[ci].put(pos, src, srcOff, len);
+            off += len; srcOff += len; n -= len;
+        }
+    }
+
+    /** 释放直接内存 / 解除映射并删除临时文件；重复调用无副作用 */
+    @Override
+    public void close() throws IOException {
+        if (ints == null) return;
+        ByteBuffer[] b = bytes;
+        ints = null;
+        bytes = null;
+        for (ByteBuffer x : b) free(x);
+        if (channel != null) channel.close();
+    }
+
+    private IntBuffer[] chunks() {
+        IntBuffer[] c = ints;
+        if (c == null) throw new IllegalStateException("LabelBuffer closed");
+        return c;
+    }
+
+    private static int chunkCount(long length) {
+        if (length < 0) throw new IllegalArgumentException("length < 0: " + length);
+        return (int) ((length + CHUNK_INTS - 1) >>> CHUNK_SHIFT);
+    }
+
+    private static int chunkInts(long length, int chunk) {
+        return (int) Math.min(CHUNK_INTS, length - ((long) chunk << CHUNK_SHIFT));
+    }
+
+    // sun.misc.Unsafe#invokeCleaner：立即释放直接 / 映射缓冲区；不可用时退回由 GC 回收
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER;
+
+    static {
+        Object u = null;
+        Method m = null;
+        try {
+            Class<?> c = Class.forName("sun.misc.Unsafe");
+            Field f = c.getDeclaredField("theUnsafe");
+            f.setAccessible(true);
+            u = f.get(null);
+            m = c.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            u = null;
+            m = null;
+        }
+        UNSAFE = u;
+        INVOKE_CLEANER = m;
+    }
+
+    private static void free(ByteBuffer b) {
+        if (b == null || INVOKE_CLEANER == null) return;
+        try {
+            INVOKE_CLEANER.invoke(UNSAFE, b);
+        } catch (ReflectiveOperationException | RuntimeException ignored) {
+            // 交给 GC
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.david.tool;
+
+/**
+ * 分割中间结果：每个像素一个标签（颜色桶下标），-1 表示透明 / 无归属。
+ * 后处理、邻接图、轮廓提取等阶段都直接在该数组上工作，最后再统一生成 {@link Region}。
+ */
+public class LabelImage {
+    public final int width;
+    public final int height;
+    /** 行优先，labels[y * width + x] */
+    public final int[] labels;
+    /** 标签 -> 量化颜色（0xRRGGBB） */
+    public final int[] colors;
+    public final int labelCount;
+
+    public LabelImage(int width, int height, int[] labels, int[] colors, int labelCount) {
+        this.width = width;
+        this.height = height;
+        this.labels = labels;
+        this.colors = colors;
+        this.labelCount = labelCount;
+    }
+
+    /** 统计每个标签当前的像素数 */
+    public long[] counts() {
+        long[] c = new long[labelCount];
+        for (int l : labels) {
+            if (l >= 0) c[l]++;
+        }
+        return c;
+    }
+}
@@ -12,12 +12,15 @@ import java.awt.event.ActionListener;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
-import java.text.SimpleDateFormat;
-import java.util.Date;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
 
 /**
  * 简单的 GUI：接收图片拖拽，调用 ImageProcessor 做分割，显示结果并导出到 output_maps
+ * <p>
+ * 读图、预览缩放、分割、AI 识别与导出都在 {@link SwingWorker} 中执行，EDT 只负责更新界面；
+ * regions / graph / currentImage 只在 EDT 上赋值。拖入新图片会取消尚未完成的分割任务。
  */
 public class Main {
     public static void main(String[] args) {
@@ -25,10 +28,15 @@ public class Main {
     }
 
     static class MainFrame extends JFrame {
-        private final JLabel imageLabel = new JLabel("请把地图图片拖拽到此处", SwingConstants.CENTER);
+        private final MapViewer viewer = new MapViewer("请把地图图片拖拽到此处");
         private BufferedImage currentImage;
         private java.util.List<Region> regions;
+        private RegionGraph graph;
         private final DefaultListModel<String> regionListModel = new DefaultListModel<>();
+        private final JProgressBar progressBar = new JProgressBar(0, 100);
+        private final JButton btnCancel = new JButton("取消");
+        // 当前分割任务；只在 EDT 上读写
+        private SegmentTask currentTask;
 
         public MainFrame() {
             setTitle("Map → GameMap Tool");
@@ -36,14 +44,23 @@ public class Main {
             setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
             setLayout(new BorderLayout());
 
-            imageLabel.setBackground(Color.DARK_GRAY);
-            imageLabel.setOpaque(true);
-            add(new JScrollPane(imageLabel), BorderLayout.CENTER);
+            add(viewer, BorderLayout.CENTER);
 
             JPanel right = new JPanel(new BorderLayout());
             JList<String> regionList = new JList<>(regionListModel);
             right.add(new JLabel("检测到的区域（可通过 AI 填充名称）"), BorderLayout.NORTH);
             right.add(new JScrollPane(regionList), BorderLayout.CENTER);
+            // 列表与查看器联动：列表选中 -> 高亮并居中；点击地图 -> 选中列表项
+            regionList.addListSelectionListener(e -> {
+                if (e.getValueIsAdjusting()) return;
+                int i = regionList.getSelectedIndex();
+                viewer.setSelected(i);
+                viewer.centerOn(i);
+            });
+            viewer.setOnClick(i -> {
+                if (i < 0) regionList.clearSelection();
+                else regionList.setSelectedIndex(i);
+            });
 
             JPanel bottom = new JPanel();
             JButton btnExport = new JButton("导出地图包");
@@ -54,8 +71,16 @@ public class Main {
 
             add(right, BorderLayout.EAST);
 
+            JPanel status = new JPanel(new BorderLayout());
+            progressBar.setStringPainted(true);
+            progressBar.setString("就绪");
+            btnCancel.setEnabled(false);
+            status.add(progressBar, BorderLayout.CENTER);
+            status.add(btnCancel, BorderLayout.EAST);
+            add(status, BorderLayout.SOUTH);
+
             // 拖拽支持
-            new DropTarget(imageLabel, new DropTargetAdapter() {
+            new DropTarget(viewer, new DropTargetAdapter() {
                 @Override
                 public void drop(DropTargetDropEvent dtde) {
                     try {
@@ -76,26 +101,109 @@ public class Main {
 
             btnExport.addActionListener(e -> exportMap());
             btnRunAI.addActionListener(e -> runAINameDetection());
+            btnCancel.addActionListener(e -> cancelCurrentTask());
         }
 
         private void loadImage(File f) {
-            try {
-                BufferedImage img = ImageIO.read(f);
+            cancelCurrentTask();
+            currentImage = null;
+            regions = null;
+            graph = null;
+            refreshRegionList();
+            viewer.setMessage("正在加载 " + f.getName() + " …");
+
+            SegmentTask task = new SegmentTask(f);
+            currentTask = task;
+            task.addPropertyChangeListener(ev -> {
+                if (task != currentTask) return;
+                if ("progress".equals(ev.getPropertyName())) {
+                    progressBar.setValue(task.getProgress());
+                    progressBar.setString(stageName(task.stage) + " " + task.getProgress() + "%");
+                }
+            });
+            progressBar.setValue(0);
+            progressBar.setString("读取图片");
+            btnCancel.setEnabled(true);
+            task.execute();
+        }
+
+        private void cancelCurrentTask() {
+            if (currentTask == null) return;
+            currentTask.cancel(true);
+            currentTask = null;
+            progressBar.setValue(0);
+            progressBar.setString("已取消");
+            btnCancel.setEnabled(false);
+        }
+
+        private static String stageName(String stage) {
+            switch (stage) {
+                case "quantize": return "量化";
+                case "postprocess": return "后处理";
+                case "build": return "生成区域";
+                case "contour": return "提取轮廓";
+                case "done": return "完成";
+                default: return stage;
+            }
+        }
+
+        /**
+         * 后台任务：读图 → 构建显示金字塔（publish 给 EDT 显示）→ 分割。取消通过线程中断传递给分割引擎。
+         */
+        private class SegmentTask extends SwingWorker<Segmentation, TilePyramid> {
+            private final File file;
+            private BufferedImage image;
+            private volatile String stage = "quantize";
+
+            SegmentTask(File file) {
+                this.file = file;
+            }
+
+            @Override
+            protected Segmentation doInBackground() throws Exception {
+                BufferedImage img = ImageIO.read(file);
                 if (img == null) throw new IOException("无法识别该图片格式");
-                currentImage = img;
-                imageLabel.setIcon(new ImageIcon(img.getScaledInstance(-1, 600, Image.SCALE_SMOOTH)));
-                imageLabel.setText(null);
-                // 分割
-                new Thread(() -> {
-                    regions = ImageProcessor.segmentByColor(currentImage, 32);
-                    SwingUtilities.invokeLater(() -> refreshRegionList());
-                }).start();
-            } catch (Exception ex) {
-                showError(ex);
+                image = img;
+                SegmentProgress.checkCancelled();
+                publish(TilePyramid.build(img));
+                return ImageProcessor.segment(img, Config.get().quantizeStep, (st, fraction) -> {
+                    stage = st;
+                    setProgress((int) Math.round(fraction * 100));
+                });
+            }
+
+            @Override
+            protected void process(List<TilePyramid> pyramids) {
+                if (this != currentTask) return;
+                viewer.setPyramid(pyramids.get(pyramids.size() - 1));
+            }
+
+            @Override
+            protected void done() {
+                if (this != currentTask || isCancelled()) return;
+                currentTask = null;
+                btnCancel.setEnabled(false);
+                try {
+                    Segmentation seg = get();
+                    currentImage = image;
+                    graph = seg.graph;
+                    regions = seg.regions;
+                    viewer.setRegions(regions);
+                    progressBar.setValue(100);
+                    progressBar.setString("完成：" + regions.size() + " 个区域");
+                    refreshRegionList();
+                } catch (InterruptedException | CancellationException ex) {
+                    progressBar.setString("已取消");
+                } catch (ExecutionException ex) {
+                    progressBar.setString("失败");
+                    viewer.setMessage("加载失败：" + file.getName());
+                    showError(ex.getCause() instanceof Exception ? (Exception) ex.getCause() : ex);
+                }
             }
         }
 
         private void refreshRegionList() {
+            viewer.repaint();
             regionListModel.clear();
             if (regions == null) return;
             for (int i = 0; i < regions.size(); i++) {
@@ -105,57 +213,67 @@ public class Main {
         }
 
         private void runAINameDetection() {
-            if (regions == null || regions.isEmpty()) return;
-            new Thread(() -> {
-                AIClient ai = new DummyAIClient();
-                for (Region r : regions) {
+            List<Region> rs = regions;
+            if (rs == null || rs.isEmpty()) return;
+            // 后台只收集识别结果，r.name 在 EDT 上（done）赋值，避免与列表/视图渲染并发读写
+            new SwingWorker<String[], Void>() {
+                @Override
+                protected String[] doInBackground() {
+                    AIClient ai = new DummyAIClient();
+                    String[] names = new String[rs.size()];
+                    for (int i = 0; i < names.length; i++) {
+                        if (isCancelled()) break;
+                        try {
+                            String label = ai.identifyLabel(rs.get(i).image());
+                            if (label != null && !label.trim().isEmpty()) names[i] = label.trim();
+                        } catch (Exception e) {
+                            // 忽略单个错误
+                        }
+                    }
+                    return names;
+                }
+
+                @Override
+                protected void done() {
                     try {
-                        String label = ai.identifyLabel(r.image);
-                        if (label != null && !label.trim().isEmpty()) r.name = label.trim();
-                    } catch (Exception e) {
-                        // 忽略单个错误
+                        String[] names = get();
+                        for (int i = 0; i < names.length; i++) {
+                            if (names[i] != null) rs.get(i).name = names[i];
+                        }
+                    } catch (InterruptedException | CancellationException ex) {
+                        return;
+                    } catch (ExecutionException ex) {
+                        showError(ex.getCause() instanceof Exception ? (Exception) ex.getCause() : ex);
                     }
+                    refreshRegionList();
                 }
-                SwingUtilities.invokeLater(this::refreshRegionList);
-            }).start();
+            }.execute();
         }
 
         private void exportMap() {
-            if (currentImage == null || regions == null) return;
-            try {
-                String stamp = new SimpleDateFormat("yyyyMMdd_HHmmss").format(new Date());
-                File outDir = new File("output_maps/map_" + stamp);
-                File imagesDir = new File(outDir, "images");
-                File masksDir = new File(outDir, "masks");
-                imagesDir.mkdirs(); masksDir.mkdirs();
-                ImageIO.write(currentImage, "png", new File(imagesDir, "original.png"));
-
-                StringBuilder json = new StringBuilder();
-                json.append("{\n");
-                json.append(String.format("  \"generatedAt\": \"%s\",\n", stamp));
-                json.append("  \"regions\": [\n");
-                for (int i = 0; i < regions.size(); i++) {
-                    Region r = regions.get(i);
-                    String imgName = String.format("region_%02d.png", i);
-                    String maskName = String.format("mask_%02d.png", i);
-                    ImageIO.write(r.image, "png", new File(imagesDir, imgName));
-                    ImageIO.write(r.mask, "png", new File(masksDir, maskName));
-                    json.append("    {");
-                    json.append(String.format("\"id\": %d, \"name\": \"%s\", \"centroid\": [%d, %d], \"image\": \"images/%s\", \"mask\": \"masks/%s\", \"pixels\": %d", i, r.name == null ? "" : escape(r.name), (int)r.centroidX, (int)r.centroidY, imgName, maskName, r.pixelCount));
-                    json.append("}");
-                    if (i < regions.size() - 1) json.append(",\n");
-                    else json.append("\n");
+            BufferedImage img = currentImage;
+            List<Region> rs = regions;
+            RegionGraph g = graph;
+            if (img == null || rs == null) return;
+            new SwingWorker<String, Void>() {
+                @Override
+                protected String doInBackground() throws Exception {
+                    String id = OutputIds.newId("map_");
+                    try (OutputSink sink = new DirectoryOutputSink(new File(Config.get().outputDir), id)) {
+                        MapExporter.export(img, rs, g, sink, id, ExportEncoder.forArchive(Config.get()));
+                        return sink.location();
+                    }
                 }
-                json.append("  ]\n}");
-                java.nio.file.Files.writeString(new File(outDir, "regions.json").toPath(), json.toString());
-                JOptionPane.showMessageDialog(this, "导出完成：" + outDir.getAbsolutePath());
-            } catch (Exception ex) {
-                showError(ex);
-            }
-        }
 
-        private String escape(String s) {
-            return s.replace("\\", "\\\\").replace("\"", "\\\"");
+                @Override
+                protected void done() {
+                    try {
+                        JOptionPane.showMessageDialog(MainFrame.this, "导出完成：" + get());
+                    } catch (InterruptedException | ExecutionException ex) {
+                        showError(ex.getCause() instanceof Exception ? (Exception) ex.getCause() : ex);
+                    }
+                }
+            }.execute();
         }
 
         private void showError(Exception ex) {
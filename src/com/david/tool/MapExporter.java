@@ -0,0 +1,165 @@
+package com.david.tool;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * 地图包导出：把原图、区域图片、掩码与 regions.json 写入任意 {@link OutputSink}。
+ * GUI 与 HTTP 服务共用此实现，保证输出格式一致。
+ */
+public class MapExporter {
+
+    /** 以归档配置（高压缩）导出 */
+    public static String export(BufferedImage original, List<Region> regions, OutputSink sink, String id) throws IOException {
+        return export(original, regions, null, sink, id, ExportEncoder.forArchive(Config.get()));
+    }
+
+    public static String export(BufferedImage original, List<Region> regions, OutputSink sink, String id, ExportEncoder encoder) throws IOException {
+        return export(original, regions, null, sink, id, encoder);
+    }
+
+    /**
+     * 导出并返回 regions.json 内容。
+     *
+     * @param graph   区域邻接图，可为 null
+     * @param id      本次导出的唯一 id（见 {@link OutputIds}）
+     * @param encoder 图片编码策略（压缩级别与格式）
+     */
+    public static String export(BufferedImage original, List<Region> regions, RegionGraph graph, OutputSink sink, String id, ExportEncoder encoder) throws IOException {
+        String ext = encoder.extension();
+        writeImage(sink, "images/original." + ext, original, ExportEncoder.Artifact.ORIGINAL, encoder);
+
+        StringBuilder json = new StringBuilder();
+        json.append("{\n");
+        json.append(String.format("  \"id\": \"%s\",\n", escape(id)));
+        json.append(String.format("  \"generatedAt\": \"%s\",\n", new SimpleDateFormat("yyyyMMdd_HHmmss").format(new Date())));
+        json.append(String.format("  \"outputDir\": \"%s\",\n", escape(sink.location())));
+        json.append(String.format("  \"width\": %d, \"height\": %d,\n", original.getWidth(), original.getHeight()));
+        json.append("  \"package\": \"regions.mpk\",\n");
+        json.append("  \"regions\": [\n");
+        for (int i = 0; i < regions.size(); i++) {
+            Region r = regions.get(i);
+            String imgName = String.format("region_%02d.%s", i, ext);
+            String maskName = String.format("mask_%02d.%s", i, ext);
+            writeImage(sink, "images/" + imgName, r.image(), ExportEncoder.Artifact.CROP, encoder);
+            writeImage(sink, "masks/" + maskName, r.mask, ExportEncoder.Artifact.MASK, encoder);
+            json.append("    {");
+            json.append(String.format("\"id\": %d, \"name\": \"%s\", \"centroid\": [%d, %d], \"image\": \"images/%s\", \"mask\": \"masks/%s\", \"pixels\": %d", i, r.name == null ? "" : escape(r.name), (int) r.centroidX, (int) r.centroidY, imgName, maskName, r.pixelCount));
+            json.append(", \"label\": ").append(r.label);
+            if (r.bounds != null) {
+                json.append(String.format(", \"bounds\": [%d, %d, %d, %d]", r.bounds.x, r.bounds.y, r.bounds.width, r.bounds.height));
+            }
+            if (r.contour != null) appendContour(json, r.contour);
+            json.append("}");
+            if (i < regions.size() - 1) json.append(",\n");
+            else json.append("\n");
+        }
+        json.append("  ]");
+        if (graph != null) {
+            // 邻接边：[a, b, 共享边界长度]
+            json.append(",\n  \"adjacency\": [");
+            for (int e = 0; e < graph.edgeCount(); e++) {
+                if (e > 0) json.append(", ");
+                json.append('[').append(graph.edgeA(e)).append(", ").append(graph.edgeB(e)).append(", ").append(graph.edgeLength(e)).append(']');
+            }
+            json.append("]");
+        }
+        json.append("\n}");
+        // 二进制地图包：元数据 + RLE 掩码，供游戏端 mmap 快速加载
+        try (OutputStream os = sink.open("regions.mpk")) {
+            MapPackageWriter.write(original.getWidth(), original.getHeight(), regions, graph, os);
+        }
+        String s = json.toString();
+        sink.write("regions.json", s.getBytes(StandardCharsets.UTF_8));
+        return s;
+    }
+
+    /**
+     * 增量导出：只写入新增 / 变化区域的图片与掩码（文件名按稳定的 label 命名），以及 delta.json。
+     * 未变化的区域由调用方从 baseId 对应的地图包中沿用。
+     */
+    public static String exportDelta(IncrementalSegmenter.Result result, OutputSink sink, String id, ExportEncoder encoder) throws IOException {
+        String ext = encoder.extension();
+        StringBuilder json = new StringBuilder();
+        json.append("{\n");
+        json.append(String.format("  \"id\": \"%s\",\n", escape(id)));
+        json.append(String.format("  \"baseId\": \"%s\",\n", escape(result.baseId)));
+        json.append(String.format("  \"generatedAt\": \"%s\",\n", new SimpleDateFormat("yyyyMMdd_HHmmss").format(new Date())));
+        json.append(String.format("  \"outputDir\": \"%s\",\n", escape(sink.location())));
+        json.append(String.format("  \"changedTiles\": %d, \"totalTiles\": %d, \"unchanged\": %d,\n", result.changedTiles, result.totalTiles, result.unchanged));
+        appendDeltaRegions(json, "added", result.added, sink, encoder, ext);
+        json.append(",\n");
+        appendDeltaRegions(json, "updated", result.updated, sink, encoder, ext);
+        json.append(",\n  \"removed\": ").append(result.removedLabels);
+        RegionGraph graph = result.segmentation.graph;
+        json.append(",\n  \"adjacency\": [");
+        List<Region> all = result.segmentation.regions;
+        for (int e = 0; e < graph.edgeCount(); e++) {
+            if (e > 0) json.append(", ");
+            // 增量模式下邻接图以 label 表示端点
+            json.append('[').append(all.get(graph.edgeA(e)).label).append(", ").append(all.get(graph.edgeB(e)).label).append(", ").append(graph.edgeLength(e)).append(']');
+        }
+        json.append("]\n}");
+        String s = json.toString();
+        sink.write("delta.json", s.getBytes(StandardCharsets.UTF_8));
+        return s;
+    }
+
+    private static void appendDeltaRegions(StringBuilder json, String key, List<Region> regions, OutputSink sink, ExportEncoder encoder, String ext) throws IOException {
+        json.append("  \"").append(key).append("\": [");
+        for (int i = 0; i < regions.size(); i++) {
+            Region r = regions.get(i);
+            String imgName = String.format("region_l%d.%s", r.label, ext);
+            String maskName = String.format("mask_l%d.%s", r.label, ext);
+            writeImage(sink, "images/" + imgName, r.image(), ExportEncoder.Artifact.CROP, encoder);
+            writeImage(sink, "masks/" + maskName, r.mask, ExportEncoder.Artifact.MASK, encoder);
+            json.append(i == 0 ? "\n    {" : ",\n    {");
+            json.append(String.format("\"label\": %d, \"name\": \"%s\", \"centroid\": [%d, %d], \"image\": \"images/%s\", \"mask\": \"masks/%s\", \"pixels\": %d", r.label, r.name == null ? "" : escape(r.name), (int) r.centroidX, (int) r.centroidY, imgName, maskName, r.pixelCount));
+            json.append(String.format(", \"bounds\": [%d, %d, %d, %d]", r.bounds.x, r.bounds.y, r.bounds.width, r.bounds.height));
+            if (r.contour != null) appendContour(json, r.contour);
+            json.append("}");
+        }
+        json.append(regions.isEmpty() ? "]" : "\n  ]");
+    }
+
+    /** 轮廓：rings 为扁平坐标数组 [x0, y0, x1, y1, ...]，ringParent 为 -1（外环）或所属外环下标 */
+    private static void appendContour(StringBuilder json, RegionContour c) {
+        json.append(", \"contour\": {\"rings\": [");
+        for (int r = 0; r < c.ringCount(); r++) {
+            if (r > 0) json.append(", ");
+            json.append('[');
+            for (int i = 2 * c.ringStart[r]; i < 2 * c.ringStart[r + 1]; i++) {
+                if (i > 2 * c.ringStart[r]) json.append(',');
+                appendCoord(json, c.xy[i]);
+            }
+            json.append(']');
+        }
+        json.append("], \"ringParent\": [");
+        for (int r = 0; r < c.ringCount(); r++) {
+            if (r > 0) json.append(',');
+            json.append(c.ringParent[r]);
+        }
+        json.append("]}");
+    }
+
+    /** 坐标均为 0.5 的整数倍，整数不带小数部分以压缩体积 */
+    private static void appendCoord(StringBuilder json, float v) {
+        if (v == (int) v) json.append((int) v);
+        else json.append(v);
+    }
+
+    private static void writeImage(OutputSink sink, String path, BufferedImage img, ExportEncoder.Artifact kind, ExportEncoder encoder) throws IOException {
+        try (OutputStream os = sink.open(path)) {
+            encoder.encode(img, kind, os);
+        }
+    }
+
+    public static String escape(String s) {
+        return s.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+}
@@ -0,0 +1,180 @@
+package com.david.tool;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.WritableRaster;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 二进制地图包（.mpk）读取器：通过 {@link FileChannel#map} 映射整个文件，
+ * 区域元数据按需从映射缓冲区读取，掩码以只读切片返回，不做整体拷贝或 PNG 解码。
+ * 格式见 {@link MapPackageWriter}。
+ */
+public class MapPackageReader implements Closeable {
+    private final FileChannel channel;
+    private final MappedByteBuffer buf;
+    private final int width;
+    private final int height;
+    private final int regionCount;
+    private final int stringsOffset;
+    private final int masksOffset;
+    private final int headerSize;
+    private final int graphOffset;
+
+    /** 游程回调：在原图坐标系中，第 y 行从 x 开始的 length 个像素属于该区域 */
+    public interface RunConsumer {
+        void accept(int x, int y, int length);
+    }
+
+    public MapPackageReader(Path file) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        long size = channel.size();
+        if (size > Integer.MAX_VALUE) throw new IOException("Map package too large: " + size);
+        this.buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        if (size < MapPackageWriter.HEADER_SIZE || buf.getInt(0) != MapPackageWriter.MAGIC) {
+            channel.close();
+            throw new IOException("Not a map package: " + file);
+        }
+        int version = buf.getShort(4);
+        if (version != 1 && version != MapPackageWriter.VERSION) {
+            channel.close();
+            throw new IOException("Unsupported map package version: " + version);
+        }
+        this.width = buf.getInt(8);
+        this.height = buf.getInt(12);
+        this.regionCount = buf.getInt(16);
+        this.stringsOffset = (int) buf.getLong(24);
+        this.masksOffset = (int) buf.getLong(32);
+        this.headerSize = version == 1 ? MapPackageWriter.HEADER_SIZE_V1 : MapPackageWriter.HEADER_SIZE;
+        this.graphOffset = version == 1 ? 0 : (int) buf.getLong(40);
+    }
+
+    public int getWidth() { return width; }
+
+    public int getHeight() { return height; }
+
+    public int getRegionCount() { return regionCount; }
+
+    private int rec(int i) {
+        if (i < 0 || i >= regionCount) throw new IndexOutOfBoundsException("region " + i);
+        return headerSize + i * MapPackageWriter.RECORD_SIZE;
+    }
+
+    public float centroidX(int i) { return buf.getFloat(rec(i)); }
+
+    public float centroidY(int i) { return buf.getFloat(rec(i) + 4); }
+
+    public Rectangle bounds(int i) {
+        int r = rec(i);
+        return new Rectangle(buf.getInt(r + 8), buf.getInt(r + 12), buf.getInt(r + 16), buf.getInt(r + 20));
+    }
+
+    public long pixelCount(int i) { return buf.getLong(rec(i) + 24); }
+
+    public int color(int i) { return buf.getInt(rec(i) + 32); }
+
+    public String name(int i) {
+        int r = rec(i);
+        int off = stringsOffset + buf.getInt(r + 36);
+        int len = buf.getInt(r + 40);
+        byte[] b = new byte[len];
+        buf.duplicate().position(off).get(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    /** 区域 RLE 掩码的只读切片（与映射缓冲区共享内存） */
+    public ByteBuffer maskData(int i) {
+        int r = rec(i);
+        int off = masksOffset + (int) buf.getLong(r + 44);
+        int len = buf.getInt(r + 52);
+        return buf.duplicate().position(off).limit(off + len).slice().asReadOnlyBuffer();
+    }
+
+    /** 遍历区域的“实”游程（跨行的游程会按行拆开） */
+    public void forEachRun(int i, RunConsumer consumer) {
+        Rectangle b = bounds(i);
+        ByteBuffer data = maskData(i);
+        long total = (long) b.width * b.height;
+        long pos = 0;
+        boolean on = false;
+        while (data.hasRemaining() && pos < total) {
+            long run = readVarint(data);
+            if (on) {
+                long p = pos, left = run;
+                while (left > 0) {
+                    int y = (int) (p / b.width);
+                    int x = (int) (p % b.width);
+                    int len = (int) Math.min(left, b.width - x);
+                    consumer.accept(b.x + x, b.y + y, len);
+                    p += len;
+                    left -= len;
+                }
+            }
+            pos += run;
+            on = !on;
+        }
+    }
+
+    /** 是否包含邻接图 */
+    public boolean hasGraph() { return graphOffset != 0; }
+
+    public int edgeCount() { return graphOffset == 0 ? 0 : buf.getInt(graphOffset); }
+
+    public int edgeA(int e) { return buf.getInt(edge(e)); }
+
+    public int edgeB(int e) { return buf.getInt(edge(e) + 4); }
+
+    public int edgeLength(int e) { return buf.getInt(edge(e) + 8); }
+
+    private int edge(int e) {
+        if (e < 0 || e >= edgeCount()) throw new IndexOutOfBoundsException("edge " + e);
+        return graphOffset + 4 + e * 12;
+    }
+
+    /** 把邻接图读入内存（构建 CSR 索引以便按区域查询邻居） */
+    public RegionGraph readGraph() {
+        int m = edgeCount();
+        int[] a = new int[m], b = new int[m], len = new int[m];
+        for (int e = 0; e < m; e++) {
+            a[e] = edgeA(e);
+            b[e] = edgeB(e);
+            len[e] = edgeLength(e);
+        }
+        return new RegionGraph(regionCount, a, b, len);
+    }
+
+    /** 按需解码为 1-bit 掩码图像（尺寸为 bounds） */
+    public BufferedImage decodeMask(int i) {
+        Rectangle b = bounds(i);
+        BufferedImage img = new BufferedImage(b.width, b.height, BufferedImage.TYPE_BYTE_BINARY);
+        WritableRaster raster = img.getRaster();
+        forEachRun(i, (x, y, len) -> {
+            for (int k = 0; k < len; k++) raster.setSample(x - b.x + k, y - b.y, 0, 1);
+        });
+        return img;
+    }
+
+    static long readVarint(ByteBuffer in) {
+        long v = 0;
+        int shift = 0;
+        while (true) {
+            int b = in.get() & 0xff;
+            v |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return v;
+            shift += 7;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        // 映射缓冲区在 GC 时释放；关闭后不应再访问
+        channel.close();
+    }
+}
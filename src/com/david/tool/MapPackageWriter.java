@@ -0,0 +1,143 @@
+package com.david.tool;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * 二进制地图包（.mpk）写入器。单个连续文件，适合用 {@link MapPackageReader} 通过 mmap 直接读取。
+ * <p>
+ * 布局（大端序）：
+ * <pre>
+ * Header (48 bytes；version 1 为 40 bytes，无 graphOffset)
+ *   int   magic = 'MPK1'
+ *   short version
+ *   short reserved
+ *   int   imageWidth, imageHeight
+ *   int   regionCount
+ *   int   reserved
+ *   long  stringsOffset   名称区起始
+ *   long  masksOffset     掩码区起始
+ *   long  graphOffset     邻接图起始，0 表示无
+ * Region table (regionCount × 56 bytes)
+ *   float centroidX, centroidY
+ *   int   boundsX, boundsY, boundsW, boundsH
+ *   long  pixelCount
+ *   int   color
+ *   int   nameOffset, nameLength    相对名称区，UTF-8
+ *   long  maskOffset                相对掩码区
+ *   int   maskLength
+ * Strings（UTF-8 拼接）
+ * Masks（每个区域一段 RLE：在 bounds 内按行优先展开，交替记录 空/实 游程长度，从“空”开始，unsigned varint 编码）
+ * Graph（可选）
+ *   int   edgeCount
+ *   edgeCount × (int a, int b, int borderLength)，a &lt; b
+ * </pre>
+ */
+public class MapPackageWriter {
+    static final int MAGIC = 0x4D504B31; // "MPK1"
+    static final short VERSION = 2;
+    static final int HEADER_SIZE_V1 = 40;
+    static final int HEADER_SIZE = 48;
+    static final int RECORD_SIZE = 56;
+
+    public static void write(int imageWidth, int imageHeight, List<Region> regions, OutputStream out) throws IOException {
+        write(imageWidth, imageHeight, regions, null, out);
+    }
+
+    public static void write(int imageWidth, int imageHeight, List<Region> regions, RegionGraph graph, OutputStream out) throws IOException {
+        int n = regions.size();
+        ByteArrayOutputStream strings = new ByteArrayOutputStream();
+        ByteArrayOutputStream masks = new ByteArrayOutputStream();
+        int[] nameOff = new int[n], nameLen = new int[n], maskLen = new int[n];
+        long[] maskOff = new long[n];
+        for (int i = 0; i < n; i++) {
+            Region r = regions.get(i);
+            byte[] name = (r.name == null ? "" : r.name).getBytes(StandardCharsets.UTF_8);
+            nameOff[i] = strings.size();
+            nameLen[i] = name.length;
+            strings.write(name);
+            maskOff[i] = masks.size();
+            encodeMask(r.mask, masks);
+            maskLen[i] = (int) (masks.size() - maskOff[i]);
+        }
+
+        long stringsOffset = HEADER_SIZE + (long) n * RECORD_SIZE;
+        long masksOffset = stringsOffset + strings.size();
+        long graphOffset = graph == null ? 0 : masksOffset + masks.size();
+
+        DataOutputStream d = new DataOutputStream(out);
+        d.writeInt(MAGIC);
+        d.writeShort(VERSION);
+        d.writeShort(0);
+        d.writeInt(imageWidth);
+        d.writeInt(imageHeight);
+        d.writeInt(n);
+        d.writeInt(0);
+        d.writeLong(stringsOffset);
+        d.writeLong(masksOffset);
+        d.writeLong(graphOffset);
+        for (int i = 0; i < n; i++) {
+            Region r = regions.get(i);
+            Rectangle b = r.bounds != null ? r.bounds : new Rectangle(0, 0, r.mask.getWidth(), r.mask.getHeight());
+            d.writeFloat((float) r.centroidX);
+            d.writeFloat((float) r.centroidY);
+            d.writeInt(b.x);
+            d.writeInt(b.y);
+            d.writeInt(b.width);
+            d.writeInt(b.height);
+            d.writeLong(r.pixelCount);
+            d.writeInt(r.color);
+            d.writeInt(nameOff[i]);
+            d.writeInt(nameLen[i]);
+            d.writeLong(maskOff[i]);
+            d.writeInt(maskLen[i]);
+        }
+        strings.writeTo(d);
+        masks.writeTo(d);
+        if (graph != null) {
+            d.writeInt(graph.edgeCount());
+            for (int e = 0; e < graph.edgeCount(); e++) {
+                d.writeInt(graph.edgeA(e));
+                d.writeInt(graph.edgeB(e));
+                d.writeInt(graph.edgeLength(e));
+            }
+        }
+        d.flush();
+    }
+
+    /** 掩码中非黑色（RGB != 0）的像素视为“实”，兼容 ARGB 掩码与 1-bit 掩码 */
+    static void encodeMask(BufferedImage mask, ByteArrayOutputStream out) {
+        int w = mask.getWidth();
+        int h = mask.getHeight();
+        int[] row = new int[w];
+        boolean on = false;
+        long run = 0;
+        for (int y = 0; y < h; y++) {
+            mask.getRGB(0, y, w, 1, row, 0, w);
+            for (int x = 0; x < w; x++) {
+                boolean px = (row[x] & 0x00ffffff) != 0;
+                if (px != on) {
+                    writeVarint(out, run);
+                    run = 0;
+                    on = px;
+                }
+                run++;
+            }
+        }
+        writeVarint(out, run);
+    }
+
+    static void writeVarint(ByteArrayOutputStream out, long v) {
+        while ((v & ~0x7FL) != 0) {
+            out.write((int) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.write((int) v);
+    }
+}
@@ -0,0 +1,363 @@
+package com.david.tool;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+import java.awt.geom.AffineTransform;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+/**
+ * 可缩放的区域查看器：底图来自 {@link TilePyramid}，每次只绘制视口（裁剪区）内的瓦片；
+ * 叠加区域轮廓（{@link RegionContour}，无轮廓时退化为包围盒）与名称，悬停 / 点击通过网格空间索引命中区域。
+ * <p>
+ * 拖动平移，滚轮以光标为中心缩放，双击适应窗口。
+ */
+public class MapViewer extends JComponent {
+    private static final long serialVersionUID = 1L;
+
+    private static final Color BACKGROUND = Color.DARK_GRAY;
+    private static final Color OUTLINE = new Color(255, 255, 255, 170);
+    private static final Color HOVER_FILL = new Color(255, 220, 0, 90);
+    private static final Color SELECT_FILL = new Color(0, 180, 255, 110);
+    private static final Font NAME_FONT = new Font(Font.SANS_SERIF, Font.BOLD, 12);
+
+    private TilePyramid pyramid;
+    private List<Region> regions = new ArrayList<>();
+    private Shape[] outlines = new Shape[0];
+    private GridIndex index;
+    private String message;
+
+    // 视图变换：屏幕 = 原图 * scale + offset
+    private double scale = 1, offsetX, offsetY;
+    private boolean fitPending;
+    private int hovered = -1, selected = -1;
+    private IntConsumer onClick;
+
+    public MapViewer(String message) {
+        this.message = message;
+        setOpaque(true);
+        setToolTipText("");
+        MouseAdapter mouse = new MouseAdapter() {
+            private Point last;
+
+            @Override
+            public void mousePressed(MouseEvent e) {
+                last = e.getPoint();
+            }
+
+            @Override
+            public void mouseDragged(MouseEvent e) {
+                if (last == null) return;
+                offsetX += e.getX() - last.x;
+                offsetY += e.getY() - last.y;
+                last = e.getPoint();
+                repaint();
+            }
+
+            @Override
+            public void mouseMoved(MouseEvent e) {
+                int h = hitTest(e.getX(), e.getY());
+                if (h != hovered) {
+                    repaintRegion(hovered);
+                    hovered = h;
+                    repaintRegion(hovered);
+                }
+            }
+
+            @Override
+            public void mouseExited(MouseEvent e) {
+                repaintRegion(hovered);
+                hovered = -1;
+            }
+
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                if (e.getClickCount() == 2) {
+                    fit();
+                    return;
+                }
+                int h = hitTest(e.getX(), e.getY());
+                setSelected(h);
+                if (onClick != null) onClick.accept(h);
+            }
+
+            @Override
+            public void mouseWheelMoved(MouseWheelEvent e) {
+                if (pyramid == null) return;
+                double f = Math.pow(1.25, -e.getPreciseWheelRotation());
+                double ns = Math.max(minScale() / 2, Math.min(16, scale * f));
+                // 以光标为不动点缩放
+                offsetX = e.getX() - (e.getX() - offsetX) * ns / scale;
+                offsetY = e.getY() - (e.getY() - offsetY) * ns / scale;
+                scale = ns;
+                repaint();
+            }
+        };
+        addMouseListener(mouse);
+        addMouseMotionListener(mouse);
+        addMouseWheelListener(mouse);
+    }
+
+    /** 显示新底图（区域清空），并在下次布局后适应窗口 */
+    public void setPyramid(TilePyramid p) {
+        pyramid = p;
+        setRegions(null);
+        message = null;
+        fitPending = true;
+        repaint();
+    }
+
+    /** 清空底图并显示提示文字 */
+    public void setMessage(String msg) {
+        pyramid = null;
+        setRegions(null);
+        message = msg;
+        repaint();
+    }
+
+    public void setRegions(List<Region> rs) {
+        regions = rs == null ? new ArrayList<>() : rs;
+        outlines = new Shape[regions.size()];
+        hovered = selected = -1;
+        index = pyramid == null ? null : new GridIndex(regions, pyramid.width(), pyramid.height());
+        repaint();
+    }
+
+    /** 点击区域时回调区域下标（空白处为 -1） */
+    public void setOnClick(IntConsumer onClick) {
+        this.onClick = onClick;
+    }
+
+    public void setSelected(int i) {
+        if (i == selected) return;
+        repaintRegion(selected);
+        selected = i >= 0 && i < regions.size() ? i : -1;
+        repaintRegion(selected);
+    }
+
+    /** 把区域移到视口中心（不改变缩放） */
+    public void centerOn(int i) {
+        if (i < 0 || i >= regions.size()) return;
+        Region r = regions.get(i);
+        offsetX = getWidth() / 2.0 - r.centroidX * scale;
+        offsetY = getHeight() / 2.0 - r.centroidY * scale;
+        repaint();
+    }
+
+    public void fit() {
+        if (pyramid == null || getWidth() == 0) return;
+        scale = minScale();
+        offsetX = (getWidth() - pyramid.width() * scale) / 2;
+        offsetY = (getHeight() - pyramid.height() * scale) / 2;
+        repaint();
+    }
+
+    private double minScale() {
+        return Math.min((double) getWidth() / pyramid.width(), (double) getHeight() / pyramid.height());
+    }
+
+    @Override
+    public String getToolTipText(MouseEvent e) {
+        int h = hitTest(e.getX(), e.getY());
+        if (h < 0) return null;
+        Region r = regions.get(h);
+        String name = r.name == null || r.name.isEmpty() ? "(未命名)" : r.name;
+        return String.format("%02d: %s, pixels=%d", h, name, r.pixelCount);
+    }
+
+    /** 屏幕坐标处的区域下标：网格索引取候选，再用包围盒与掩码精确判断 */
+    int hitTest(int sx, int sy) {
+        if (index == null) return -1;
+        int x = (int) Math.floor((sx - offsetX) / scale), y = (int) Math.floor((sy - offsetY) / scale);
+        for (int i : index.candidates(x, y)) {
+            Region r = regions.get(i);
+            Rectangle b = r.bounds;
+            if (b == null || !b.contains(x, y) || r.mask == null) continue;
+            if (r.mask.getRaster().getSample(x - b.x, y - b.y, 0) != 0) return i;
+        }
+        return -1;
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        Graphics2D g2 = (Graphics2D) g.create();
+        try {
+            Rectangle clip = g2.getClipBounds();
+            if (clip == null) clip = new Rectangle(0, 0, getWidth(), getHeight());
+            g2.setColor(BACKGROUND);
+            g2.fill(clip);
+            if (pyramid == null) {
+                if (message != null) {
+                    g2.setColor(Color.LIGHT_GRAY);
+                    FontMetrics fm = g2.getFontMetrics();
+                    g2.drawString(message, (getWidth() - fm.stringWidth(message)) / 2, getHeight() / 2);
+                }
+                return;
+            }
+            if (fitPending && getWidth() > 0) {
+                fitPending = false;
+                fit();
+                clip = new Rectangle(0, 0, getWidth(), getHeight());
+            }
+            paintTiles(g2, clip);
+            paintOverlays(g2, clip);
+        } finally {
+            g2.dispose();
+        }
+    }
+
+    private void paintTiles(Graphics2D g2, Rectangle clip) {
+        int level = pyramid.levelFor(scale);
+        double ls = (double) pyramid.width() / pyramid.levelWidth(level); // 层像素 -> 原图像素（约 2^level）
+        double lsY = (double) pyramid.height() / pyramid.levelHeight(level);
+        double px = scale * ls, py = scale * lsY; // 层像素 -> 屏幕像素
+        int lw = pyramid.levelWidth(level), lh = pyramid.levelHeight(level);
+        int tx0 = Math.max(0, (int) Math.floor((clip.x - offsetX) / px / TilePyramid.TILE));
+        int ty0 = Math.max(0, (int) Math.floor((clip.y - offsetY) / py / TilePyramid.TILE));
+        int tx1 = Math.min((lw - 1) / TilePyramid.TILE, (int) Math.floor((clip.x + clip.width - offsetX) / px / TilePyramid.TILE));
+        int ty1 = Math.min((lh - 1) / TilePyramid.TILE, (int) Math.floor((clip.y + clip.height - offsetY) / py / TilePyramid.TILE));
+        g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, px < 1.5
+                ? RenderingHints.VALUE_INTERPOLATION_BILINEAR : RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+        for (int ty = ty0; ty <= ty1; ty++) {
+            int y0 = TilePyramid.TILE * ty, y1 = Math.min(lh, y0 + TilePyramid.TILE);
+            // 相邻瓦片的边界取同一取整结果，避免接缝
+            int sy0 = (int) Math.round(offsetY + y0 * py), sy1 = (int) Math.round(offsetY + y1 * py);
+            for (int tx = tx0; tx <= tx1; tx++) {
+                int x0 = TilePyramid.TILE * tx, x1 = Math.min(lw, x0 + TilePyramid.TILE);
+                int sx0 = (int) Math.round(offsetX + x0 * px), sx1 = (int) Math.round(offsetX + x1 * px);
+                Image t = pyramid.tile(level, tx, ty);
+                g2.drawImage(t, sx0, sy0, sx1, sy1, 0, 0, x1 - x0, y1 - y0, null);
+            }
+        }
+    }
+
+    private void paintOverlays(Graphics2D g2, Rectangle clip) {
+        if (regions.isEmpty()) return;
+        // 可见范围（原图坐标）内的区域
+        int ix0 = (int) Math.floor((clip.x - offsetX) / scale), iy0 = (int) Math.floor((clip.y - offsetY) / scale);
+        int ix1 = (int) Math.ceil((clip.x + clip.width - offsetX) / scale), iy1 = (int) Math.ceil((clip.y + clip.height - offsetY) / scale);
+        List<Integer> visible = index.query(ix0, iy0, ix1, iy1);
+
+        AffineTransform saved = g2.getTransform();
+        g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g2.translate(offsetX, offsetY);
+        g2.scale(scale, scale);
+        g2.setStroke(new BasicStroke((float) (1.5 / scale)));
+        for (int i : visible) {
+            Shape s = outline(i);
+            if (i == selected || i == hovered) {
+                g2.setColor(i == selected ? SELECT_FILL : HOVER_FILL);
+                g2.fill(s);
+            }
+            g2.setColor(OUTLINE);
+            g2.draw(s);
+        }
+        g2.setTransform(saved);
+
+        // 名称：只标注屏幕上足够大的区域
+        g2.setFont(NAME_FONT);
+        FontMetrics fm = g2.getFontMetrics();
+        for (int i : visible) {
+            Region r = regions.get(i);
+            if (r.name == null || r.name.isEmpty() || r.bounds == null) continue;
+            int tw = fm.stringWidth(r.name);
+            if (r.bounds.width * scale < tw + 8 || r.bounds.height * scale < fm.getHeight()) continue;
+            int sx = (int) (offsetX + r.centroidX * scale) - tw / 2, sy = (int) (offsetY + r.centroidY * scale) + fm.getAscent() / 2;
+            g2.setColor(Color.BLACK);
+            g2.drawString(r.name, sx + 1, sy + 1);
+            g2.setColor(Color.WHITE);
+            g2.drawString(r.name, sx, sy);
+        }
+    }
+
+    private Shape outline(int i) {
+        Shape s = outlines[i];
+        if (s == null) {
+            Region r = regions.get(i);
+            if (r.contour != null) s = r.contour.toPath();
+            else s = r.bounds != null ? r.bounds : new Rectangle();
+            outlines[i] = s;
+        }
+        return s;
+    }
+
+    private void repaintRegion(int i) {
+        if (i < 0 || i >= regions.size() || regions.get(i).bounds == null) return;
+        Rectangle b = regions.get(i).bounds;
+        int x = (int) Math.floor(offsetX + b.x * scale) - 2, y = (int) Math.floor(offsetY + b.y * scale) - 2;
+        int w = (int) Math.ceil(b.width * scale) + 4, h = (int) Math.ceil(b.height * scale) + 4;
+        repaint(x, y, w, h);
+    }
+
+    /**
+     * 区域包围盒的均匀网格索引：每个格子记录与之相交的区域下标。
+     */
+    static class GridIndex {
+        private static final int CELL = 128;
+        private final int cols, rows;
+        private final int[][] cells;
+        private final int regionCount;
+
+        GridIndex(List<Region> regions, int width, int height) {
+            cols = Math.max(1, (width + CELL - 1) / CELL);
+            rows = Math.max(1, (height + CELL - 1) / CELL);
+            regionCount = regions.size();
+            // 两遍：先计数再填充，每个格子一个紧凑数组
+            int[] counts = new int[cols * rows];
+            cells = new int[cols * rows][];
+            for (int pass = 0; pass < 2; pass++) {
+                for (int i = 0; i < regions.size(); i++) {
+                    Rectangle b = regions.get(i).bounds;
+                    if (b == null) continue;
+                    int cx0 = clamp(b.x / CELL, cols), cx1 = clamp((b.x + b.width - 1) / CELL, cols);
+                    int cy0 = clamp(b.y / CELL, rows), cy1 = clamp((b.y + b.height - 1) / CELL, rows);
+                    for (int cy = cy0; cy <= cy1; cy++) {
+                        for (int cx = cx0; cx <= cx1; cx++) {
+                            int c = cy * cols + cx;
+                            if (pass == 0) counts[c]++;
+                            else cells[c][--counts[c]] = i;
+                        }
+                    }
+                }
+                if (pass == 0) {
+                    for (int c = 0; c < counts.length; c++) cells[c] = new int[counts[c]];
+                }
+            }
+        }
+
+        private static int clamp(int v, int n) {
+            return Math.max(0, Math.min(n - 1, v));
+        }
+
+        private static final int[] NONE = new int[0];
+
+        int[] candidates(int x, int y) {
+            if (x < 0 || y < 0 || x >= cols * CELL || y >= rows * CELL) return NONE;
+            return cells[(y / CELL) * cols + x / CELL];
+        }
+
+        /** 与矩形（原图坐标）相交的格子中的区域，去重后按下标升序 */
+        List<Integer> query(int x0, int y0, int x1, int y1) {
+            int cx0 = clamp(Math.floorDiv(x0, CELL), cols), cx1 = clamp(Math.floorDiv(x1, CELL), cols);
+            int cy0 = clamp(Math.floorDiv(y0, CELL), rows), cy1 = clamp(Math.floorDiv(y1, CELL), rows);
+            boolean[] seen = new boolean[regionCount];
+            List<Integer> out = new ArrayList<>();
+            for (int cy = cy0; cy <= cy1; cy++) {
+                for (int cx = cx0; cx <= cx1; cx++) {
+                    for (int i : cells[cy * cols + cx]) {
+                        if (!seen[i]) {
+                            seen[i] = true;
+                            out.add(i);
+                        }
+                    }
+                }
+            }
+            out.sort(null);
+            return out;
+        }
+    }
+}
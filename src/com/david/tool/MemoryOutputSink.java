@@ -0,0 +1,47 @@
+package com.david.tool;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 内存输出：条目保存在 Map 中（按写入顺序），用于测试或需要二次处理的调用方。
+ */
+public class MemoryOutputSink implements OutputSink {
+    private final Map<String, byte[]> entries = new LinkedHashMap<>();
+    private final String id;
+
+    public MemoryOutputSink(String id) {
+        this.id = id;
+    }
+
+    @Override
+    public OutputStream open(String path) {
+        return new ByteArrayOutputStream() {
+            @Override
+            public void close() throws IOException {
+                entries.put(path, toByteArray());
+            }
+        };
+    }
+
+    public byte[] get(String path) {
+        return entries.get(path);
+    }
+
+    public Map<String, byte[]> entries() {
+        return Collections.unmodifiableMap(entries);
+    }
+
+    @Override
+    public String location() {
+        return "memory:" + id;
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,156 @@
+package com.david.tool;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.WritableRaster;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 超大地图（上亿像素）的分割模式：逐像素标签存放在堆外 {@link LabelBuffer} 中，不占堆，也不受单个数组 2^31 元素的限制。
+ * <p>
+ * 仍在堆上的部分：
+ * <ul>
+ *   <li>源 {@link BufferedImage}：由调用方整图解码，本身就在堆上（每像素 3–4 字节），且其像素数组同样受 2^31 元素上限约束</li>
+ *   <li>每个区域的 1-bit 掩码，按包围盒分配：细长的斜向区域（如沿对角线的国界带）包围盒可能接近整图</li>
+ *   <li>按行的工作缓冲与按标签的统计量</li>
+ * </ul>
+ * 区域裁剪图不预先生成（否则每个区域要按包围盒分配 ARGB 图），{@link Region#image()} 在需要时从源图按掩码截取，不缓存。
+ * <p>
+ * 流程与 {@link ImageProcessor#segment(BufferedImage, int, RegionPostProcessor)} 相同，逐行流式处理：
+ * 量化写入缓冲区 → 统计像素数并剔除小色块 → 统计质心 / 包围盒 / 邻接 → 填充掩码。
+ * 合并 / 填洞 / 平滑需要整图的连通块数组，本模式只做小色块剔除（与不带后处理的精确路径结果一致），
+ * {@link ImageProcessor#segment(BufferedImage, int, SegmentProgress)} 切换到本模式时会打印警告。
+ * 标签缓冲区在返回前释放，结果中的 {@link Segmentation#labels} 只含调色板，{@code labels.labels} 为 null。
+ */
+public class OffHeapSegmenter {
+
+    /**
+     * @param scratchDir 为 null 时使用直接内存，否则在该目录下映射临时文件
+     */
+    public static Segmentation segment(BufferedImage img, int quantizeStep, int minRegionPixels, Path scratchDir) {
+        return segment(img, quantizeStep, minRegionPixels, scratchDir, SegmentProgress.NONE);
+    }
+
+    public static Segmentation segment(BufferedImage img, int quantizeStep, int minRegionPixels, Path scratchDir, SegmentProgress progress) {
+        int w = img.getWidth(), h = img.getHeight();
+        try (LabelBuffer buf = scratchDir == null
+                ? LabelBuffer.allocateDirect((long) w * h)
+                : LabelBuffer.mapScratch((long) w * h, scratchDir)) {
+            return segment(img, quantizeStep, minRegionPixels, buf, progress);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /** 按配置选择后端：segment.scratchDir 为空时用直接内存 */
+    public static Segmentation segment(BufferedImage img, int quantizeStep, int minRegionPixels, Config cfg, SegmentProgress progress) {
+        Path dir = cfg.scratchDir.isEmpty() ? null : Paths.get(cfg.scratchDir);
+        return segment(img, quantizeStep, minRegionPixels, dir, progress);
+    }
+
+    static Segmentation segment(BufferedImage img, int quantizeStep, int minRegionPixels, LabelBuffer buf, SegmentProgress progress) {
+        int w = img.getWidth(), h = img.getHeight();
+        int[] row = new int[w];
+        int[] lab = new int[w];
+
+        // 1) 量化：逐行读像素、分配标签并写入缓冲区
+        ImageProcessor.Palette palette = new ImageProcessor.Palette();
+        long[] count = new long[16];
+        QuantizeKernel kernel = QuantizeKernel.get();
+        int[] keys = new int[w];
+        progress.update("quantize", 0);
+        for (int y = 0; y < h; y++) {
+            if ((y & 255) == 0) {
+                SegmentProgress.checkCancelled();
+                progress.update("quantize", ImageProcessor.P_POST * y / h);
+            }
+            img.getRGB(0, y, w, 1, row, 0, w);
+            kernel.quantizeRow(row, 0, keys, 0, w, quantizeStep);
+            int lastKey = -1, lastLabel = -1;
+            for (int x = 0; x < w; x++) {
+                int key = keys[x];
+                if (key == QuantizeKernel.TRANSPARENT) { lab[x] = -1; continue; }
+                if (key != lastKey) {
+                    lastKey = key;
+                    lastLabel = palette.labelOf(key);
+                    if (lastLabel == count.length) count = Arrays.copyOf(count, count.length * 2);
+                }
+                lab[x] = lastLabel;
+                count[lastLabel]++;
+            }
+            buf.write((long) y * w, lab, 0, w);
+        }
+        LabelImage li = palette.toLabelImage(w, h, null);
+        int n = li.labelCount;
+
+        // 2) 小色块剔除：不改写缓冲区，读取时经 remap 映射为 -1
+        int[] remap = new int[n];
+        for (int l = 0; l < n; l++) remap[l] = count[l] < minRegionPixels ? -1 : l;
+
+        // 3) 统计 + 邻接：同时持有当前行与下一行
+        long[] cnt = new long[n], sumX = new long[n], sumY = new long[n];
+        int[] minX = new int[n], minY = new int[n], maxX = new int[n], maxY = new int[n];
+        Arrays.fill(minX, Integer.MAX_VALUE);
+        Arrays.fill(minY, Integer.MAX_VALUE);
+        RegionGraph.Builder edges = new RegionGraph.Builder();
+        int[] cur = lab, next = new int[w];
+        if (h > 0) readRow(buf, w, 0, remap, cur);
+        progress.update("build", ImageProcessor.P_BUILD);
+        for (int y = 0; y < h; y++) {
+            if ((y & 255) == 0) SegmentProgress.checkCancelled();
+            boolean hasBelow = y < h - 1;
+            if (hasBelow) readRow(buf, w, y + 1, remap, next);
+            for (int x = 0; x < w; x++) {
+                int l = cur[x];
+                if (l < 0) continue;
+                if (x < w - 1) {
+                    int r = cur[x + 1];
+                    if (r >= 0 && r != l) edges.addBorder(l, r);
+                }
+                if (hasBelow) {
+                    int d = next[x];
+                    if (d >= 0 && d != l) edges.addBorder(l, d);
+                }
+                cnt[l]++;
+                sumX[l] += x; sumY[l] += y;
+                if (x < minX[l]) minX[l] = x;
+                if (x > maxX[l]) maxX[l] = x;
+                if (y < minY[l]) minY[l] = y;
+                if (y > maxY[l]) maxY[l] = y;
+            }
+            int[] t = cur; cur = next; next = t;
+        }
+
+        Region[] byLabel = new Region[n];
+        int[] labelToRegion = new int[n];
+        List<Region> regions = ImageProcessor.createRegions(li, cnt, sumX, sumY, minX, minY, maxX, maxY, null, byLabel, labelToRegion, img);
+        WritableRaster[] maskRaster = new WritableRaster[n];
+        for (int l = 0; l < n; l++) {
+            if (byLabel[l] != null) maskRaster[l] = byLabel[l].mask.getRaster();
+        }
+
+        // 4) 填充掩码（裁剪图由 Region.image() 按需截取）
+        for (int y = 0; y < h; y++) {
+            if ((y & 255) == 0) SegmentProgress.checkCancelled();
+            readRow(buf, w, y, remap, lab);
+            for (int x = 0; x < w; x++) {
+                int l = lab[x];
+                if (l >= 0) maskRaster[l].setSample(x - minX[l], y - minY[l], 0, 1);
+            }
+        }
+        progress.update("contour", ImageProcessor.P_CONTOUR);
+        return new Segmentation(regions, edges.build(labelToRegion, regions.size()), li);
+    }
+
+    private static void readRow(LabelBuffer buf, int w, int y, int[] remap, int[] dst) {
+        buf.read((long) y * w, dst, 0, w);
+        for (int x = 0; x < w; x++) {
+            int l = dst[x];
+            if (l >= 0) dst[x] = remap[l];
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.david.tool;
+
+import java.security.SecureRandom;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * 导出任务 id：时间戳 + 随机后缀，例如 {@code n8n_20260203_121212_4f9c2a7e}。
+ * 时间戳便于人工排序查找，随机后缀保证同一秒内的并发请求（包括多个进程写同一共享卷）不会冲突。
+ */
+public final class OutputIds {
+    private static final DateTimeFormatter STAMP = DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss");
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private OutputIds() {}
+
+    public static String newId(String prefix) {
+        return prefix + STAMP.format(LocalDateTime.now()) + "_" + String.format("%08x", RANDOM.nextInt());
+    }
+}
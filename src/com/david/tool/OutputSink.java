@@ -0,0 +1,41 @@
+package com.david.tool;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 地图包输出目标。地图包由若干相对路径（如 {@code images/region_00.png}、{@code regions.json}）组成，
+ * 具体落地方式由实现决定：目录、ZIP 流或内存。
+ * <p>
+ * 同一时间只能打开一个条目：调用方必须先关闭 {@link #open(String)} 返回的流，再打开下一个。
+ */
+public interface OutputSink extends Closeable {
+    /** 打开一个条目用于写入，关闭返回的流即完成该条目 */
+    OutputStream open(String path) throws IOException;
+
+    /** 写入整个条目 */
+    default void write(String path, byte[] data) throws IOException {
+        try (OutputStream os = open(path)) {
+            os.write(data);
+        }
+    }
+
+    /** 输出位置描述（目录路径、文件路径等），用于日志与响应 */
+    String location();
+
+    /** 服务端 / 批处理留存的输出：按配置 output.format 在 output.dir 下写目录或单个 ZIP 文件 */
+    static OutputSink forConfig(Config cfg, String id) throws IOException {
+        if ("zip".equalsIgnoreCase(cfg.outputFormat)) {
+            File root = new File(cfg.outputDir);
+            root.mkdirs();
+            File zipFile = new File(root, id + ".zip");
+            OutputStream os = Files.newOutputStream(zipFile.toPath(), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            return new ZipOutputSink(os, zipFile.getAbsolutePath());
+        }
+        return new DirectoryOutputSink(new File(cfg.outputDir), id);
+    }
+}
@@ -0,0 +1,94 @@
+package com.david.tool;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * QOI（Quite OK Image）编码器，RGBA 4 通道。压缩率略低于 PNG，但编码为单遍线性扫描，
+ * 适合对体积不敏感、对延迟敏感的内部消费方。格式规范见 https://qoiformat.org
+ */
+public class QoiEncoder {
+    private static final int OP_INDEX = 0x00;
+    private static final int OP_DIFF = 0x40;
+    private static final int OP_LUMA = 0x80;
+    private static final int OP_RUN = 0xc0;
+    private static final int OP_RGB = 0xfe;
+    private static final int OP_RGBA = 0xff;
+
+    public static void encode(BufferedImage img, OutputStream os) throws IOException {
+        int w = img.getWidth();
+        int h = img.getHeight();
+        OutputStream out = new BufferedOutputStream(os, 64 * 1024);
+        out.write(new byte[]{'q', 'o', 'i', 'f'});
+        writeInt(out, w);
+        writeInt(out, h);
+        out.write(4); // channels: RGBA
+        out.write(0); // colorspace: sRGB with linear alpha
+
+        int[] index = new int[64];
+        int prev = 0xff000000;
+        int run = 0;
+        int[] row = new int[w];
+        for (int y = 0; y < h; y++) {
+            img.getRGB(0, y, w, 1, row, 0, w);
+            for (int x = 0; x < w; x++) {
+                int px = row[x];
+                if (px == prev) {
+                    run++;
+                    if (run == 62) {
+                        out.write(OP_RUN | (run - 1));
+                        run = 0;
+                    }
+                    continue;
+                }
+                if (run > 0) {
+                    out.write(OP_RUN | (run - 1));
+                    run = 0;
+                }
+                int a = px >>> 24, r = (px >> 16) & 0xff, g = (px >> 8) & 0xff, b = px & 0xff;
+                int hash = (r * 3 + g * 5 + b * 7 + a * 11) & 63;
+                if (index[hash] == px) {
+                    out.write(OP_INDEX | hash);
+                } else {
+                    index[hash] = px;
+                    if (a == (prev >>> 24)) {
+                        int vr = (byte) (r - ((prev >> 16) & 0xff));
+                        int vg = (byte) (g - ((prev >> 8) & 0xff));
+                        int vb = (byte) (b - (prev & 0xff));
+                        int vgr = vr - vg, vgb = vb - vg;
+                        if (vr > -3 && vr < 2 && vg > -3 && vg < 2 && vb > -3 && vb < 2) {
+                            out.write(OP_DIFF | (vr + 2) << 4 | (vg + 2) << 2 | (vb + 2));
+                        } else if (vgr > -9 && vgr < 8 && vg > -33 && vg < 32 && vgb > -9 && vgb < 8) {
+                            out.write(OP_LUMA | (vg + 32));
+                            out.write((vgr + 8) << 4 | (vgb + 8));
+                        } else {
+                            out.write(OP_RGB);
+                            out.write(r);
+                            out.write(g);
+                            out.write(b);
+                        }
+                    } else {
+                        out.write(OP_RGBA);
+                        out.write(r);
+                        out.write(g);
+                        out.write(b);
+                        out.write(a);
+                    }
+                }
+                prev = px;
+            }
+        }
+        if (run > 0) out.write(OP_RUN | (run - 1));
+        out.write(new byte[]{0, 0, 0, 0, 0, 0, 0, 1});
+        out.flush();
+    }
+
+    private static void writeInt(OutputStream out, int v) throws IOException {
+        out.write(v >>> 24);
+        out.write(v >>> 16);
+        out.write(v >>> 8);
+        out.write(v);
+    }
+}
@@ -0,0 +1,65 @@
+package com.david.tool;
+
+/**
+ * 颜色量化内核：把一行 ARGB 像素转换为量化 key（0xRRGGBB，各通道按 quantizeStep 向下取整），透明像素（alpha &lt; 10）输出 -1。
+ * <p>
+ * 默认使用标量实现；若 {@code com.david.tool.simd.VectorQuantizeKernel} 已编译且运行时加载了
+ * {@code jdk.incubator.vector} 模块，并且配置 {@code segment.simd=true}，则使用向量化实现（每次迭代处理 8–16 个像素）。
+ */
+public interface QuantizeKernel {
+    int TRANSPARENT = -1;
+
+    /** 处理 src[srcOff, srcOff + n)，结果写入 dst[dstOff..] */
+    void quantizeRow(int[] src, int srcOff, int[] dst, int dstOff, int n, int quantizeStep);
+
+    String name();
+
+    /** 按当前配置选择内核 */
+    static QuantizeKernel get() {
+        return Config.get().simd && Holder.VECTOR != null ? Holder.VECTOR : SCALAR;
+    }
+
+    QuantizeKernel SCALAR = new QuantizeKernel() {
+        @Override
+        public void quantizeRow(int[] src, int srcOff, int[] dst, int dstOff, int n, int quantizeStep) {
+            for (int i = 0; i < n; i++) {
+                int rgb = src[srcOff + i];
+                if (((rgb >>> 24)) < 10) { dst[dstOff + i] = TRANSPARENT; continue; }
+                int r = (rgb >> 16) & 0xff;
+                int g = (rgb >> 8) & 0xff;
+                int b = rgb & 0xff;
+                dst[dstOff + i] = ((r / quantizeStep) * quantizeStep << 16)
+                        | ((g / quantizeStep) * quantizeStep << 8)
+                        | (b / quantizeStep) * quantizeStep;
+            }
+        }
+
+        @Override
+        public String name() {
+            return "scalar";
+        }
+    };
+
+    /** 延迟探测向量实现：类不存在或模块未加载时为 null */
+    final class Holder {
+        static final QuantizeKernel VECTOR = load();
+
+        private Holder() {
+        }
+
+        private static QuantizeKernel load() {
+            try {
+                Class<?> c = Class.forName("com.david.tool.simd.VectorQuantizeKernel");
+                QuantizeKernel k = (QuantizeKernel) c.getDeclaredConstructor().newInstance();
+                // 自检一次，确保向量实现与标量结果一致（同时触发模块链接）
+                int[] probe = {0xff123456, 0x05ffffff, 0xffffffff, 0x80000000, 0xff7f7f7f, 0x0a010203, 0x09ffffff, 0xffabcdef};
+                int[] a = new int[probe.length], b = new int[probe.length];
+                k.quantizeRow(probe, 0, a, 0, probe.length, 32);
+                SCALAR.quantizeRow(probe, 0, b, 0, probe.length, 32);
+                return java.util.Arrays.equals(a, b) ? k : null;
+            } catch (ReflectiveOperationException | LinkageError | RuntimeException ex) {
+                return null;
+            }
+        }
+    }
+}
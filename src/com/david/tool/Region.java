@@ -1,13 +1,42 @@
 package com.david.tool;
 
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
 
 public class Region {
     public String name;
+    // 分割标签（同一底图的多个版本间保持稳定，用于增量更新）
+    public int label = -1;
     public int color;
     public long pixelCount;
     public double centroidX;
     public double centroidY;
+    // mask / image 在原图中的位置与尺寸
+    public Rectangle bounds;
     public BufferedImage mask;
+    // 区域裁剪图；堆外模式（OffHeapSegmenter）下为 null，由 image() 按需截取
     public BufferedImage image;
+    // 按需截取裁剪图用的原图（仅堆外模式设置）
+    BufferedImage source;
+    // 矢量轮廓（可选，见 ContourTracer）
+    public RegionContour contour;
+
+    /**
+     * 裁剪图（掩码外的像素透明）：已生成时直接返回 {@link #image}，否则按掩码从原图截取一份新图（不缓存，用完即可回收）。
+     */
+    public BufferedImage image() {
+        if (image != null || source == null || mask == null) return image;
+        int w = bounds.width, h = bounds.height;
+        BufferedImage crop = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+        Raster m = mask.getRaster();
+        int[] row = new int[w], bits = new int[w];
+        for (int y = 0; y < h; y++) {
+            source.getRGB(bounds.x, bounds.y + y, w, 1, row, 0, w);
+            m.getSamples(0, y, w, 1, 0, bits);
+            for (int x = 0; x < w; x++) if (bits[x] == 0) row[x] = 0;
+            crop.setRGB(0, y, w, 1, row, 0, w);
+        }
+        return crop;
+    }
 }
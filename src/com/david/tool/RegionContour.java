@@ -0,0 +1,41 @@
+package com.david.tool;
+
+import java.awt.geom.Path2D;
+
+/**
+ * 区域矢量轮廓：若干闭合环（外环与孔洞），坐标为原图像素坐标系（像素 (x, y) 覆盖 [x, x+1) × [y, y+1)）。
+ * <p>
+ * 所有环的顶点依次拼接在 {@link #xy} 中（x0, y0, x1, y1, ...），第 r 个环的顶点下标范围为
+ * [{@link #ringStart}[r], ringStart[r+1])；{@link #ringParent}[r] 为 -1 表示外环，否则为其所属外环下标。
+ */
+public class RegionContour {
+    public final float[] xy;
+    public final int[] ringStart;
+    public final int[] ringParent;
+
+    public RegionContour(float[] xy, int[] ringStart, int[] ringParent) {
+        this.xy = xy;
+        this.ringStart = ringStart;
+        this.ringParent = ringParent;
+    }
+
+    public int ringCount() {
+        return ringParent.length;
+    }
+
+    public int vertexCount() {
+        return xy.length / 2;
+    }
+
+    /** 生成可直接 {@code Graphics2D.fill} 的路径（奇偶填充规则，孔洞自然镂空） */
+    public Path2D toPath() {
+        Path2D.Float p = new Path2D.Float(Path2D.WIND_EVEN_ODD, vertexCount() + ringCount());
+        for (int r = 0; r < ringCount(); r++) {
+            int s = ringStart[r], e = ringStart[r + 1];
+            p.moveTo(xy[2 * s], xy[2 * s + 1]);
+            for (int i = s + 1; i < e; i++) p.lineTo(xy[2 * i], xy[2 * i + 1]);
+            p.closePath();
+        }
+        return p;
+    }
+}
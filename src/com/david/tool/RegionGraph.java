@@ -0,0 +1,154 @@
+package com.david.tool;
+
+import java.util.Arrays;
+
+/**
+ * 区域邻接图：顶点为区域下标（与 regions 列表一致），边权为共享边界长度（4 邻接的像素对数）。
+ * 边以三个并行 int 数组保存（a &lt; b），另建 CSR 索引供按顶点遍历邻居。
+ */
+public class RegionGraph {
+    private final int regionCount;
+    private final int[] edgeA;
+    private final int[] edgeB;
+    private final int[] edgeLen;
+    // CSR：顶点 i 的邻居为 adj[offsets[i] .. offsets[i+1])
+    private final int[] offsets;
+    private final int[] adj;
+    private final int[] adjLen;
+
+    public RegionGraph(int regionCount, int[] edgeA, int[] edgeB, int[] edgeLen) {
+        this.regionCount = regionCount;
+        this.edgeA = edgeA;
+        this.edgeB = edgeB;
+        this.edgeLen = edgeLen;
+        int m = edgeA.length;
+        offsets = new int[regionCount + 1];
+        for (int e = 0; e < m; e++) {
+            offsets[edgeA[e] + 1]++;
+            offsets[edgeB[e] + 1]++;
+        }
+        for (int i = 0; i < regionCount; i++) offsets[i + 1] += offsets[i];
+        adj = new int[2 * m];
+        adjLen = new int[2 * m];
+        int[] fill = Arrays.copyOf(offsets, regionCount);
+        for (int e = 0; e < m; e++) {
+            int a = edgeA[e], b = edgeB[e];
+            adj[fill[a]] = b; adjLen[fill[a]++] = edgeLen[e];
+            adj[fill[b]] = a; adjLen[fill[b]++] = edgeLen[e];
+        }
+    }
+
+    public int regionCount() { return regionCount; }
+
+    public int edgeCount() { return edgeA.length; }
+
+    public int edgeA(int e) { return edgeA[e]; }
+
+    public int edgeB(int e) { return edgeB[e]; }
+
+    public int edgeLength(int e) { return edgeLen[e]; }
+
+    public int degree(int region) { return offsets[region + 1] - offsets[region]; }
+
+    public int neighbor(int region, int k) { return adj[offsets[region] + k]; }
+
+    public int borderLength(int region, int k) { return adjLen[offsets[region] + k]; }
+
+    /** 两区域的共享边界长度，不相邻时为 0 */
+    public int sharedBorder(int a, int b) {
+        for (int j = offsets[a]; j < offsets[a + 1]; j++) {
+            if (adj[j] == b) return adjLen[j];
+        }
+        return 0;
+    }
+
+    /**
+     * 在像素扫描中累计标签对的边界长度。键为 (minLabel &lt;&lt; 32 | maxLabel)，
+     * 使用开放寻址的 long→int 表；沿同一条边界连续出现的相同标签对走快速路径。
+     */
+    public static class Builder {
+        private long[] keys = new long[256];
+        private int[] vals = new int[256];
+        private int size = 0;
+        private long lastKey = -1;
+        private int lastSlot = -1;
+
+        public void addBorder(int la, int lb) {
+            long key = la < lb ? ((long) la << 32) | lb : ((long) lb << 32) | la;
+            if (key == lastKey) { vals[lastSlot]++; return; }
+            int mask = keys.length - 1;
+            int slot = (int) (mix(key) & mask);
+            while (true) {
+                int v = vals[slot];
+                if (v == 0) {
+                    keys[slot] = key;
+                    vals[slot] = 1;
+                    if (++size * 2 > keys.length) { grow(); slot = indexOf(key); }
+                    break;
+                }
+                if (keys[slot] == key) { vals[slot] = v + 1; break; }
+                slot = (slot + 1) & mask;
+            }
+            lastKey = key;
+            lastSlot = slot;
+        }
+
+        /**
+         * @param labelToRegion 标签 -> 区域下标（-1 表示该标签未生成区域）
+         */
+        public RegionGraph build(int[] labelToRegion, int regionCount) {
+            long[] packed = new long[size];
+            int[] len = new int[size];
+            int m = 0;
+            for (int s = 0; s < keys.length; s++) {
+                if (vals[s] == 0) continue;
+                int a = labelToRegion[(int) (keys[s] >>> 32)];
+                int b = labelToRegion[(int) keys[s]];
+                if (a < 0 || b < 0) continue;
+                packed[m] = a < b ? ((long) a << 32) | b : ((long) b << 32) | a;
+                len[m++] = vals[s];
+            }
+            // 按 (a, b) 排序，输出稳定
+            Integer[] order = new Integer[m];
+            for (int i = 0; i < m; i++) order[i] = i;
+            long[] pk = packed;
+            Arrays.sort(order, (x, y) -> Long.compare(pk[x], pk[y]));
+            int[] ea = new int[m], eb = new int[m], el = new int[m];
+            for (int i = 0; i < m; i++) {
+                long k = packed[order[i]];
+                ea[i] = (int) (k >>> 32);
+                eb[i] = (int) k;
+                el[i] = len[order[i]];
+            }
+            return new RegionGraph(regionCount, ea, eb, el);
+        }
+
+        private int indexOf(long key) {
+            int mask = keys.length - 1;
+            int slot = (int) (mix(key) & mask);
+            while (keys[slot] != key || vals[slot] == 0) slot = (slot + 1) & mask;
+            return slot;
+        }
+
+        private void grow() {
+            long[] ok = keys;
+            int[] ov = vals;
+            keys = new long[ok.length * 2];
+            vals = new int[ov.length * 2];
+            int mask = keys.length - 1;
+            for (int s = 0; s < ok.length; s++) {
+                if (ov[s] == 0) continue;
+                int slot = (int) (mix(ok[s]) & mask);
+                while (vals[slot] != 0) slot = (slot + 1) & mask;
+                keys[slot] = ok[s];
+                vals[slot] = ov[s];
+            }
+            lastKey = -1;
+        }
+
+        private static long mix(long k) {
+            k *= 0x9E3779B97F4A7C15L;
+            return k ^ (k >>> 29);
+        }
+    }
+}
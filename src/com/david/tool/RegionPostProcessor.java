@@ -0,0 +1,254 @@
+package com.david.tool;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 区域后处理：在标签数组上依次执行
+ * <ol>
+ *   <li>碎片合并：过小的连通块（或所属颜色桶过小）并入共享边界最长的相邻区域，而不是直接丢弃留下空洞</li>
+ *   <li>孔洞填充：不接触图像边缘、且只被单一区域包围的透明块并入该区域</li>
+ *   <li>边界平滑（可选）：3×3 多数投票，去除锯齿与细线残留</li>
+ * </ol>
+ * 各步骤均为对像素的常数次线性扫描（连通块标记使用并查集，近似线性）。
+ */
+public class RegionPostProcessor {
+    /** 颜色桶总像素低于此值视为噪点桶，其所有连通块都需并入邻居或丢弃 */
+    public int minRegionPixels;
+    /** 连通块低于此值视为碎片（如被河流、边界线切出的小块） */
+    public int minIslandPixels;
+    public boolean fillHoles = true;
+    /** 多数投票平滑迭代次数，0 表示关闭 */
+    public int smoothIterations = 0;
+
+    public RegionPostProcessor(int minRegionPixels, int minIslandPixels) {
+        this.minRegionPixels = minRegionPixels;
+        this.minIslandPixels = minIslandPixels;
+    }
+
+    /** 与早期实现一致的动态阈值：max(100, 总像素 / 10000) */
+    public static RegionPostProcessor defaults(int width, int height) {
+        int minRegion = Math.max(100, (width * height) / 10000);
+        return new RegionPostProcessor(minRegion, Math.max(16, minRegion / 4));
+    }
+
+    public static RegionPostProcessor fromConfig(Config cfg, int width, int height) {
+        RegionPostProcessor p = defaults(width, height);
+        p.fillHoles = cfg.fillHoles;
+        p.smoothIterations = cfg.smoothIterations;
+        return p;
+    }
+
+    public void process(LabelImage li) {
+        mergeAndFill(li);
+        for (int i = 0; i < smoothIterations; i++) {
+            SegmentProgress.checkCancelled();
+            if (!smooth(li)) break;
+        }
+    }
+
+    private void mergeAndFill(LabelImage li) {
+        int w = li.width, h = li.height, n = w * h;
+        int[] lab = li.labels;
+        long[] bucket = li.counts();
+
+        // 1) 4 连通块标记：并查集总以较小下标为根，因此根总是该块在扫描顺序中的第一个像素
+        int[] parent = new int[n];
+        for (int i = 0; i < n; i++) {
+            parent[i] = i;
+            int x = i % w;
+            if (x > 0 && lab[i - 1] == lab[i]) union(parent, i, i - 1);
+            if (i >= w && lab[i - w] == lab[i]) union(parent, i, i - w);
+        }
+        SegmentProgress.checkCancelled();
+        int[] comp = new int[n];
+        int k = 0;
+        for (int i = 0; i < n; i++) {
+            int r = find(parent, i);
+            comp[i] = r == i ? k++ : comp[r];
+        }
+        parent = null;
+
+        SegmentProgress.checkCancelled();
+        int[] compLabel = new int[k];
+        int[] compSize = new int[k];
+        boolean[] touchesBorder = new boolean[k];
+        for (int i = 0; i < n; i++) {
+            int c = comp[i];
+            compLabel[c] = lab[i];
+            compSize[c]++;
+            int x = i % w;
+            if (x == 0 || x == w - 1 || i < w || i >= n - w) touchesBorder[c] = true;
+        }
+
+        boolean[] candidate = new boolean[k];
+        boolean any = false;
+        for (int c = 0; c < k; c++) {
+            int l = compLabel[c];
+            candidate[c] = l >= 0
+                    ? bucket[l] < minRegionPixels || compSize[c] < minIslandPixels
+                    : fillHoles && !touchesBorder[c];
+            any |= candidate[c];
+        }
+        if (!any) return;
+
+        // 2) 只为候选块收集邻接边及共享边界长度：key = (from << 32) | to
+        Map<Long, Integer> edgeMap = new HashMap<>();
+        for (int i = 0; i < n; i++) {
+            int a = comp[i];
+            if ((i % w) < w - 1) addEdge(edgeMap, candidate, a, comp[i + 1]);
+            if (i < n - w) addEdge(edgeMap, candidate, a, comp[i + w]);
+        }
+        SegmentProgress.checkCancelled();
+        long[] keys = new long[edgeMap.size()];
+        int e = 0;
+        for (Long key : edgeMap.keySet()) keys[e++] = key;
+        Arrays.sort(keys);
+        int[] lens = new int[keys.length];
+        for (int j = 0; j < keys.length; j++) lens[j] = edgeMap.get(keys[j]);
+        edgeMap = null;
+        int[] edgeStart = new int[k + 1];
+        for (long key : keys) edgeStart[(int) (key >>> 32) + 1]++;
+        for (int c = 0; c < k; c++) edgeStart[c + 1] += edgeStart[c];
+
+        // 3) 碎片按面积从小到大并入共享边界最长的非透明邻居。
+        //    每个块的边界以链表条目（邻居, 长度）保存，初始为它自己的边；处理 c 时按当前根在 sumByRoot 中汇总
+        //    （touched 记录用到的根，比较后清零），并入 best 时把汇总结果原地写回 c 的条目再接到 best 的链表上，
+        //    因此 best 轮到处理时看到的是已按根合并的边界，不再重扫被吸收块的原始边
+        int[] cparent = new int[k];
+        for (int c = 0; c < k; c++) cparent[c] = c;
+        int[] entNb = new int[keys.length], entLen = lens, entNext = new int[keys.length];
+        int[] head = new int[k], tail = new int[k];
+        for (int c = 0; c < k; c++) {
+            int s0 = edgeStart[c], s1 = edgeStart[c + 1];
+            head[c] = s0 < s1 ? s0 : -1;
+            tail[c] = s1 - 1;
+            for (int j = s0; j < s1; j++) {
+                entNb[j] = (int) keys[j];
+                entNext[j] = j + 1 < s1 ? j + 1 : -1;
+            }
+        }
+        int[] finalLabel = compLabel.clone();
+        // 按 (面积, 下标) 升序，打包成 long 排序
+        int ns = 0;
+        for (int c = 0; c < k; c++) if (candidate[c] && compLabel[c] >= 0) ns++;
+        long[] small = new long[ns];
+        ns = 0;
+        for (int c = 0; c < k; c++) if (candidate[c] && compLabel[c] >= 0) small[ns++] = ((long) compSize[c] << 32) | c;
+        Arrays.sort(small);
+        boolean[] processed = new boolean[k];
+        int[] sumByRoot = new int[k];
+        int[] touched = new int[Math.max(1, keys.length)];
+        for (long packed : small) {
+            int c = (int) packed;
+            processed[c] = true;
+            int nt = 0;
+            for (int j = head[c]; j >= 0; j = entNext[j]) {
+                int root = find(cparent, entNb[j]);
+                if (root == c || finalLabel[root] < 0) continue;
+                if (sumByRoot[root] == 0) touched[nt++] = root;
+                sumByRoot[root] += entLen[j];
+            }
+            // 按根首次出现的顺序比较，平局时取先出现者
+            int best = -1;
+            int bestLen = 0;
+            for (int t = 0; t < nt; t++) {
+                int root = touched[t];
+                if (sumByRoot[root] > bestLen) { bestLen = sumByRoot[root]; best = root; }
+            }
+            if (best >= 0) {
+                cparent[c] = best;
+                compSize[best] += compSize[c];
+                // 只有尚未处理的候选块还会读取边界：把汇总写回 c 的条目（条目数不会增加）并接到 best 之后
+                if (candidate[best] && !processed[best]) {
+                    int j = head[c], last = -1;
+                    for (int t = 0; t < nt; t++) {
+                        int root = touched[t];
+                        if (root == best) continue;
+                        entNb[j] = root;
+                        entLen[j] = sumByRoot[root];
+                        last = j;
+                        j = entNext[j];
+                    }
+                    if (last >= 0) {
+                        entNext[last] = -1;
+                        if (head[best] < 0) head[best] = head[c];
+                        else entNext[tail[best]] = head[c];
+                        tail[best] = last;
+                    }
+                }
+            } else if (bucket[compLabel[c]] < minRegionPixels) {
+                finalLabel[c] = -1; // 孤立的噪点块：与旧实现一致直接丢弃
+            }
+            for (int t = 0; t < nt; t++) sumByRoot[touched[t]] = 0;
+        }
+        for (int c = 0; c < k; c++) {
+            int r = find(cparent, c);
+            if (r != c) finalLabel[c] = finalLabel[r];
+        }
+
+        // 4) 孔洞：邻居（合并后）全部属于同一区域的内部透明块
+        if (fillHoles) {
+            for (int c = 0; c < k; c++) {
+                if (!candidate[c] || compLabel[c] >= 0) continue;
+                int fill = -2;
+                for (int j = edgeStart[c]; j < edgeStart[c + 1]; j++) {
+                    int l = finalLabel[(int) keys[j]];
+                    if (l < 0 || (fill != -2 && fill != l)) { fill = -1; break; }
+                    fill = l;
+                }
+                if (fill >= 0) finalLabel[c] = fill;
+            }
+        }
+
+        for (int i = 0; i < n; i++) lab[i] = finalLabel[comp[i]];
+    }
+
+    private static void addEdge(Map<Long, Integer> edges, boolean[] candidate, int a, int b) {
+        if (a == b) return;
+        if (candidate[a]) edges.merge(((long) a << 32) | b, 1, Integer::sum);
+        if (candidate[b]) edges.merge(((long) b << 32) | a, 1, Integer::sum);
+    }
+
+    /** 3×3 多数投票：8 邻域中有 ≥5 个属于同一非透明区域时改为该区域；返回是否有变化 */
+    private static boolean smooth(LabelImage li) {
+        int w = li.width, h = li.height;
+        int[] src = li.labels.clone();
+        int[] dst = li.labels;
+        boolean changed = false;
+        int[] nb = new int[8];
+        for (int y = 1; y < h - 1; y++) {
+            if ((y & 255) == 0) SegmentProgress.checkCancelled();
+            for (int x = 1; x < w - 1; x++) {
+                int i = y * w + x;
+                nb[0] = src[i - w - 1]; nb[1] = src[i - w]; nb[2] = src[i - w + 1];
+                nb[3] = src[i - 1];                         nb[4] = src[i + 1];
+                nb[5] = src[i + w - 1]; nb[6] = src[i + w]; nb[7] = src[i + w + 1];
+                // 8 个里出现 ≥5 次的值只能有一个，且必然出现在前 4 个位置中
+                for (int a = 0; a < 4; a++) {
+                    int v = nb[a];
+                    if (v < 0 || v == src[i]) continue;
+                    int cnt = 0;
+                    for (int b = 0; b < 8; b++) if (nb[b] == v) cnt++;
+                    if (cnt >= 5) { dst[i] = v; changed = true; break; }
+                }
+            }
+        }
+        return changed;
+    }
+
+    private static int find(int[] parent, int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+
+    private static void union(int[] parent, int a, int b) {
+        int ra = find(parent, a), rb = find(parent, b);
+        if (ra == rb) return;
+        if (ra < rb) parent[rb] = ra; else parent[ra] = rb;
+    }
+}
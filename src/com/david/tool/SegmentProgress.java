@@ -0,0 +1,25 @@
+package com.david.tool;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * 分割进度回调。在执行分割的工作线程上调用，UI 端需自行切回 EDT。
+ * <p>
+ * 取消采用线程中断：各阶段之间及长循环中定期调用 {@link #checkCancelled()}，
+ * 工作线程被中断（如 {@code SwingWorker.cancel(true)}）时抛出 {@link CancellationException}。
+ */
+@FunctionalInterface
+public interface SegmentProgress {
+    /**
+     * @param stage    当前阶段（quantize / postprocess / build / contour）
+     * @param fraction 整体进度 0..1
+     */
+    void update(String stage, double fraction);
+
+    SegmentProgress NONE = (stage, fraction) -> { };
+
+    /** 当前线程已被中断时抛出 {@link CancellationException}（保留中断标志） */
+    static void checkCancelled() {
+        if (Thread.currentThread().isInterrupted()) throw new CancellationException("segmentation cancelled");
+    }
+}
@@ -0,0 +1,19 @@
+package com.david.tool;
+
+import java.util.List;
+
+/**
+ * 一次分割的完整结果：区域列表、区域邻接图，以及生成它们的标签数组。
+ */
+public class Segmentation {
+    public final List<Region> regions;
+    public final RegionGraph graph;
+    /** 堆外模式（{@link OffHeapSegmenter}）下标签缓冲已释放，此时 {@code labels.labels} 为 null */
+    public final LabelImage labels;
+
+    public Segmentation(List<Region> regions, RegionGraph graph, LabelImage labels) {
+        this.regions = regions;
+        this.graph = graph;
+        this.labels = labels;
+    }
+}
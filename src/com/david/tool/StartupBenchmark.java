@@ -0,0 +1,148 @@
+package com.david.tool;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * 冷启动基准：反复启动独立的 {@link HttpServerMain} 进程，测量从进程启动到
+ * 首个 /health 响应、首个 /process 响应（PNG 上传 + 分割 + 导出）的时间，取中位数。
+ * <p>
+ * 用法：{@code java -cp maptool.jar com.david.tool.StartupBenchmark [--runs N] [--archive maptool.jsa] [--jvm "额外 JVM 参数"]}
+ * <p>
+ * 指定 --archive 时依次测量“无归档”和“-XX:SharedArchiveFile=归档”两组，便于对比 AppCDS 的效果。
+ */
+public class StartupBenchmark {
+    public static void main(String[] args) throws Exception {
+        int runs = 5;
+        String archive = null;
+        List<String> extra = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--runs": runs = Integer.parseInt(args[++i]); break;
+                case "--archive": archive = args[++i]; break;
+                case "--jvm": extra.addAll(Arrays.asList(args[++i].trim().split("\\s+"))); break;
+                default: throw new IllegalArgumentException("Unknown argument: " + args[i]);
+            }
+        }
+        byte[] body = HttpServerMain.png(HttpServerMain.trainingMap(1024, 768, 7));
+
+        List<String> baseline = new ArrayList<>(extra);
+        baseline.add("-Xshare:auto");
+        measure("default", baseline, runs, body);
+        if (archive != null) {
+            if (!new File(archive).isFile()) throw new IOException("Archive not found: " + archive);
+            List<String> cds = new ArrayList<>(extra);
+            cds.add("-XX:SharedArchiveFile=" + archive);
+            measure("appcds", cds, runs, body);
+        }
+    }
+
+    private static void measure(String name, List<String> jvmArgs, int runs, byte[] body) throws Exception {
+        long[] health = new long[runs], first = new long[runs];
+        for (int r = 0; r < runs; r++) {
+            long[] t = runOnce(jvmArgs, body);
+            health[r] = t[0];
+            first[r] = t[1];
+        }
+        System.out.printf("%-8s health %5.0f ms   first /process %5.0f ms   (median of %d; all: %s)%n",
+                name, median(health) / 1e6, median(first) / 1e6, runs, toMs(first));
+    }
+
+    /** 启动一个服务进程，返回 {到首个 /health 的纳秒, 到首个 /process 的纳秒} */
+    private static long[] runOnce(List<String> jvmArgs, byte[] body) throws Exception {
+        int port;
+        try (ServerSocket s = new ServerSocket(0)) {
+            port = s.getLocalPort();
+        }
+        File out = Files.createTempDirectory("maptool_bench").toFile();
+        List<String> cmd = new ArrayList<>();
+        cmd.add(ProcessHandle.current().info().command().orElse("java"));
+        cmd.addAll(jvmArgs);
+        cmd.add("-Dmaptool.server.port=" + port);
+        cmd.add("-Dmaptool.output.dir=" + out.getAbsolutePath());
+        cmd.add("-cp");
+        cmd.add(System.getProperty("java.class.path"));
+        cmd.add(HttpServerMain.class.getName());
+
+        long t0 = System.nanoTime();
+        Process p = new ProcessBuilder(cmd).redirectErrorStream(true).redirectOutput(ProcessBuilder.Redirect.DISCARD).start();
+        try {
+            String base = "http://127.0.0.1:" + port;
+            while (true) {
+                if (!p.isAlive()) throw new IOException("Server exited with " + p.exitValue());
+                try {
+                    if (request(base + "/health", null) == 200) break;
+                } catch (ConnectException notYet) {
+                    Thread.sleep(2);
+                }
+            }
+            long health = System.nanoTime() - t0;
+            int code = request(base + "/process", body);
+            if (code != 200) throw new IOException("/process returned HTTP " + code);
+            return new long[]{health, System.nanoTime() - t0};
+        } finally {
+            p.destroy();
+            p.waitFor();
+            deleteTree(out.toPath());
+        }
+    }
+
+    /** 删除每次运行的临时输出目录（服务进程已退出） */
+    private static void deleteTree(Path dir) throws IOException {
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(dir)) {
+            files = walk.sorted(Comparator.reverseOrder()).collect(Collectors.toList());
+        }
+        for (Path f : files) Files.deleteIfExists(f);
+    }
+
+    private static int request(String url, byte[] body) throws IOException {
+        HttpURLConnection c = (HttpURLConnection) new URL(url).openConnection();
+        String key = Config.get().apiKey;
+        if (!key.isEmpty()) c.setRequestProperty("X-API-Key", key);
+        if (body != null) {
+            c.setRequestMethod("POST");
+            c.setDoOutput(true);
+            c.setRequestProperty("Content-Type", "application/json");
+            try (OutputStream os = c.getOutputStream()) {
+                os.write(("{\"imageBase64\":\"" + Base64.getEncoder().encodeToString(body) + "\",\"runAI\":\"false\"}")
+                        .getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        int code = c.getResponseCode();
+        try (InputStream in = code < 400 ? c.getInputStream() : c.getErrorStream()) {
+            if (in != null) in.transferTo(new ByteArrayOutputStream());
+        }
+        return code;
+    }
+
+    private static long median(long[] v) {
+        long[] s = v.clone();
+        Arrays.sort(s);
+        return s[s.length / 2];
+    }
+
+    private static List<String> toMs(long[] v) {
+        List<String> out = new ArrayList<>();
+        for (long x : v) out.add(String.valueOf(x / 1_000_000));
+        return Collections.unmodifiableList(out);
+    }
+}
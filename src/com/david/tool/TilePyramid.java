@@ -0,0 +1,93 @@
+package com.david.tool;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 显示用图像金字塔：第 k 层为原图缩小 2^k 倍（逐层减半的双线性缩放），每层按 {@link #TILE}×{@link #TILE} 切成瓦片。
+ * <p>
+ * 层图在构建时一次生成（后台线程），瓦片在绘制时按需从层图拷出并放入 LRU 缓存，
+ * 因此平移 / 缩放只绘制视口内的少量瓦片，不会在每次变化时缩放整张大图。
+ * 瓦片访问只应在 EDT 上进行。
+ */
+public class TilePyramid {
+    public static final int TILE = 256;
+    private static final int MAX_CACHED_TILES = 512; // 约 128 MB（ARGB）
+
+    private final BufferedImage[] levels;
+    private final Map<Long, BufferedImage> cache = new LinkedHashMap<Long, BufferedImage>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, BufferedImage> e) {
+            return size() > MAX_CACHED_TILES;
+        }
+    };
+
+    private TilePyramid(BufferedImage[] levels) {
+        this.levels = levels;
+    }
+
+    /** 构建金字塔（耗时，应在后台线程调用）；线程被中断时抛出 CancellationException */
+    public static TilePyramid build(BufferedImage src) {
+        java.util.List<BufferedImage> list = new java.util.ArrayList<>();
+        list.add(src);
+        BufferedImage cur = src;
+        while (Math.max(cur.getWidth(), cur.getHeight()) > TILE) {
+            SegmentProgress.checkCancelled();
+            int nw = Math.max(1, (cur.getWidth() + 1) / 2), nh = Math.max(1, (cur.getHeight() + 1) / 2);
+            BufferedImage next = new BufferedImage(nw, nh, BufferedImage.TYPE_INT_ARGB_PRE);
+            Graphics2D g = next.createGraphics();
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.drawImage(cur, 0, 0, nw, nh, null);
+            g.dispose();
+            list.add(next);
+            cur = next;
+        }
+        return new TilePyramid(list.toArray(new BufferedImage[0]));
+    }
+
+    public int width() {
+        return levels[0].getWidth();
+    }
+
+    public int height() {
+        return levels[0].getHeight();
+    }
+
+    public int levelCount() {
+        return levels.length;
+    }
+
+    public int levelWidth(int level) {
+        return levels[level].getWidth();
+    }
+
+    public int levelHeight(int level) {
+        return levels[level].getHeight();
+    }
+
+    /** 显示比例 scale（屏幕像素 / 原图像素）下使用的层：分辨率不低于屏幕所需的最粗一层 */
+    public int levelFor(double scale) {
+        int k = 0;
+        while (k + 1 < levels.length && scale * (1 << (k + 1)) <= 1.0) k++;
+        return k;
+    }
+
+    /** 第 level 层 (tx, ty) 处的瓦片（边缘瓦片可能小于 TILE） */
+    public BufferedImage tile(int level, int tx, int ty) {
+        long key = ((long) level << 48) | ((long) ty << 24) | tx;
+        BufferedImage t = cache.get(key);
+        if (t != null) return t;
+        BufferedImage li = levels[level];
+        int x = tx * TILE, y = ty * TILE;
+        int w = Math.min(TILE, li.getWidth() - x), h = Math.min(TILE, li.getHeight() - y);
+        t = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D g = t.createGraphics();
+        g.setComposite(AlphaComposite.Src);
+        g.drawImage(li, 0, 0, w, h, x, y, x + w, y + h, null);
+        g.dispose();
+        cache.put(key, t);
+        return t;
+    }
+}
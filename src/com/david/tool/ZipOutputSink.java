@@ -0,0 +1,63 @@
+package com.david.tool;
+
+import java.io.BufferedOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * ZIP 流输出：整个地图包写成单个 ZIP，可直接写入 HTTP 响应体或单个文件，避免大量小文件创建。
+ * PNG 本身已压缩，默认对条目使用较快的压缩级别。
+ */
+public class ZipOutputSink implements OutputSink {
+    private final ZipOutputStream zip;
+    private final String location;
+    private boolean entryOpen = false;
+
+    public ZipOutputSink(OutputStream out, String location) {
+        this(out, location, Deflater.BEST_SPEED);
+    }
+
+    public ZipOutputSink(OutputStream out, String location, int level) {
+        this.zip = new ZipOutputStream(new BufferedOutputStream(out, 64 * 1024));
+        this.zip.setLevel(level);
+        this.location = location;
+    }
+
+    @Override
+    public OutputStream open(String path) throws IOException {
+        if (entryOpen) throw new IllegalStateException("Previous entry not closed");
+        zip.putNextEntry(new ZipEntry(path));
+        entryOpen = true;
+        // 关闭条目流只结束当前 entry，不关闭底层 ZIP
+        return new FilterOutputStream(zip) {
+            private boolean closed = false;
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                zip.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                if (closed) return;
+                closed = true;
+                zip.closeEntry();
+                entryOpen = false;
+            }
+        };
+    }
+
+    @Override
+    public String location() {
+        return location;
+    }
+
+    @Override
+    public void close() throws IOException {
+        zip.close();
+    }
+}
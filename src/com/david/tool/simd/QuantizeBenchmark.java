@@ -0,0 +1,59 @@
+package com.david.tool.simd;
+
+import com.david.tool.QuantizeKernel;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * 标量 / 向量量化内核对比基准（仓库没有构建工具，因此用 main 代替 JMH：预热 + 多轮取最好成绩，结果累加防止死代码消除）。
+ * <p>
+ * 用法：{@code java --add-modules jdk.incubator.vector -cp out com.david.tool.simd.QuantizeBenchmark [像素数] [轮数]}
+ * <p>
+ * 运行前先对所有通道值与 step ∈ [1, 256] 做一次穷举校验，保证两个内核结果一致。
+ */
+public class QuantizeBenchmark {
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 4_000_000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        QuantizeKernel vector = new VectorQuantizeKernel();
+        verify(vector);
+
+        // 模拟地图：成段同色 + 少量透明像素
+        Random rnd = new Random(42);
+        int[] src = new int[n];
+        for (int i = 0; i < n; ) {
+            int run = 1 + rnd.nextInt(64);
+            int c = rnd.nextInt(20) == 0 ? rnd.nextInt(10) << 24 : 0xff000000 | rnd.nextInt(0x1000000);
+            for (int k = 0; k < run && i < n; k++) src[i++] = c;
+        }
+        int[] dst = new int[n];
+        for (QuantizeKernel k : new QuantizeKernel[]{QuantizeKernel.SCALAR, vector}) {
+            long best = Long.MAX_VALUE, sink = 0;
+            for (int r = 0; r < rounds + 5; r++) {
+                long t0 = System.nanoTime();
+                k.quantizeRow(src, 0, dst, 0, n, 32);
+                long t = System.nanoTime() - t0;
+                sink += dst[r % n];
+                if (r >= 5) best = Math.min(best, t);
+            }
+            System.out.printf("%-18s %8.2f ms  %7.1f Mpx/s  (sink %d)%n", k.name(), best / 1e6, n * 1e3 / best, sink);
+        }
+    }
+
+    private static void verify(QuantizeKernel vector) {
+        int[] src = new int[256 * 4];
+        for (int v = 0; v < 256; v++) {
+            src[v * 4] = 0xff000000 | v << 16 | (255 - v) << 8 | v;
+            src[v * 4 + 1] = v << 24 | v;
+            src[v * 4 + 2] = 0xff000000 | v << 8;
+            src[v * 4 + 3] = v << 24 | 0xffffff;
+        }
+        int[] a = new int[src.length], b = new int[src.length];
+        for (int step = 1; step <= 256; step++) {
+            vector.quantizeRow(src, 0, a, 0, src.length, step);
+            QuantizeKernel.SCALAR.quantizeRow(src, 0, b, 0, src.length, step);
+            if (!Arrays.equals(a, b)) throw new AssertionError("vector kernel mismatch at step " + step);
+        }
+    }
+}
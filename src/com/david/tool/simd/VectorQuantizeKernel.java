@@ -0,0 +1,41 @@
+package com.david.tool.simd;
+
+import com.david.tool.QuantizeKernel;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * 基于 {@code jdk.incubator.vector} 的量化内核，一次处理 {@link IntVector#SPECIES_PREFERRED} 个像素（AVX2 为 8，AVX-512 为 16）。
+ * <p>
+ * 整数除法没有对应的 SIMD 指令，这里用乘法 + 移位代替：对 v ∈ [0, 255]、step ∈ [1, 256]，
+ * {@code (v * (65536 / step + 1)) >>> 16 == v / step} 恒成立。透明判断用掩码混合，无分支。
+ * <p>
+ * 编译与运行都需要 {@code --add-modules jdk.incubator.vector}，见 README。
+ */
+public class VectorQuantizeKernel implements QuantizeKernel {
+    private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+
+    @Override
+    public void quantizeRow(int[] src, int srcOff, int[] dst, int dstOff, int n, int quantizeStep) {
+        int m = 65536 / quantizeStep + 1;
+        int bound = SPECIES.loopBound(n);
+        int i = 0;
+        for (; i < bound; i += SPECIES.length()) {
+            IntVector p = IntVector.fromArray(SPECIES, src, srcOff + i);
+            IntVector r = p.lanewise(VectorOperators.LSHR, 16).and(0xff).mul(m).lanewise(VectorOperators.LSHR, 16).mul(quantizeStep);
+            IntVector g = p.lanewise(VectorOperators.LSHR, 8).and(0xff).mul(m).lanewise(VectorOperators.LSHR, 16).mul(quantizeStep);
+            IntVector b = p.and(0xff).mul(m).lanewise(VectorOperators.LSHR, 16).mul(quantizeStep);
+            IntVector key = r.lanewise(VectorOperators.LSHL, 16).or(g.lanewise(VectorOperators.LSHL, 8)).or(b);
+            VectorMask<Integer> transparent = p.lanewise(VectorOperators.LSHR, 24).lt(10);
+            key.blend(TRANSPARENT, transparent).intoArray(dst, dstOff + i);
+        }
+        if (i < n) SCALAR.quantizeRow(src, srcOff + i, dst, dstOff + i, n - i, quantizeStep);
+    }
+
+    @Override
+    public String name() {
+        return "vector(" + SPECIES.length() + " lanes)";
+    }
+}